@@ -0,0 +1,44 @@
+#!/bin/bash
+
+set -e
+
+JMH_VERSION=1.37
+MAVEN=https://repo1.maven.org/maven2
+
+if [ "$1" = "clean" ]
+then
+    echo "Cleaning"
+    rm -rf bench/bin bench/lib
+    exit 0
+fi
+
+if [ ! -d bin ]
+then
+    echo "Please run compile.sh"
+    exit 1
+fi
+
+if [ ! -d bench/lib ]
+then
+    echo "Downloading benchmark libraries"
+
+    mkdir bench/lib
+
+    wget -nv -O "bench/lib/jmh-core-$JMH_VERSION.jar" "$MAVEN/org/openjdk/jmh/jmh-core/$JMH_VERSION/jmh-core-$JMH_VERSION.jar"
+    wget -nv -O "bench/lib/jmh-generator-annprocess-$JMH_VERSION.jar" "$MAVEN/org/openjdk/jmh/jmh-generator-annprocess/$JMH_VERSION/jmh-generator-annprocess-$JMH_VERSION.jar"
+    wget -nv -O "bench/lib/jopt-simple-5.0.4.jar" "$MAVEN/net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar"
+    wget -nv -O "bench/lib/commons-math3-3.6.1.jar" "$MAVEN/org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"
+fi
+
+echo "Compiling benchmarks"
+
+rm -rf bench/bin
+mkdir bench/bin
+
+LIBS=`find lib bench/lib -type f | xargs echo | sed "s/ /:/g"`
+
+javac -cp "bin:$LIBS" `find bench/src -name "*.java"` -d bench/bin
+
+echo "Running benchmarks"
+
+java -cp "bench/bin:bin:$LIBS" -Dtextglass.domains=../domains org.openjdk.jmh.Main -prof gc "$@"
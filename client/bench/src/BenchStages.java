@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+
+import textglass.bench.ClientStages;
+
+public class BenchStages implements ClientStages {
+
+  private TextGlassClient client;
+  private Domain domain;
+  private List<String> inputs;
+  private boolean streaming;
+  private boolean compact;
+
+  @Override
+  public void load(String domainPath) throws Exception {
+    String[] files = findFiles(domainPath);
+
+    Main.setVerbose(-1);
+
+    client = loadClient(files);
+
+    domain = client.getLoadedDomain();
+
+    //LOAD THE TEST INPUTS
+
+    inputs = new ArrayList<>();
+
+    JsonNode tests = JsonFile.get(new JsonFile(files[4]).getJsonNode(), "tests");
+
+    for(int i = 0; i < tests.size(); i++) {
+      inputs.add(JsonFile.get(tests.get(i), "input").asText());
+    }
+  }
+
+  @Override
+  public Object loadDomain(String domainPath) throws Exception {
+    Main.setVerbose(-1);
+
+    return loadClient(findFiles(domainPath));
+  }
+
+  @Override
+  public void setLoadStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+
+  @Override
+  public void setCompactPatterns(boolean compact) {
+    this.compact = compact;
+  }
+
+  @Override
+  public void generate(String domainPath, int patterns, int tests) throws Exception {
+    Main.setVerbose(-1);
+
+    new DomainGenerator().setPatternCount(patterns).setTestCount(tests).generate(domainPath);
+  }
+
+  //PATTERN, PATTERN PATCH, ATTRIBUTE, ATTRIBUTE PATCH AND TEST FILES, SAME RULES AS test.sh
+  private static String[] findFiles(String domainPath) throws Exception {
+    File[] files = new File(domainPath).listFiles();
+
+    if(files == null) {
+      throw new Exception("Domain not found: " + domainPath);
+    }
+
+    Arrays.sort(files);
+
+    String pattern = null;
+    String patternPatch = null;
+    String attribute = null;
+    String attributePatch = null;
+    String test = null;
+
+    for(File file : files) {
+      String name = file.getName();
+
+      if(name.contains("pattern")) {
+        if(name.contains("patch")) {
+          patternPatch = file.getPath();
+        } else {
+          pattern = file.getPath();
+        }
+      } else if(name.contains("attribute")) {
+        if(name.contains("patch")) {
+          attributePatch = file.getPath();
+        } else {
+          attribute = file.getPath();
+        }
+      } else if(name.contains("test")) {
+        test = file.getPath();
+      }
+    }
+
+    if(pattern == null || test == null) {
+      throw new Exception("Pattern or test file not found in: " + domainPath);
+    }
+
+    return new String[] {pattern, patternPatch, attribute, attributePatch, test};
+  }
+
+  private TextGlassClient loadClient(String[] files) throws Exception {
+    TextGlassClient loaded = new TextGlassClient();
+
+    loaded.setLoadStreaming(streaming);
+    loaded.setCompactPatterns(compact);
+    loaded.load(files[0], files[1], files[2], files[3]);
+
+    return loaded;
+  }
+
+  @Override
+  public List<String> getInputs() {
+    return inputs;
+  }
+
+  @Override
+  public void setMatcher(String matcher) throws Exception {
+    client.setMatcher(TextGlassClient.Matcher.valueOf(matcher));
+
+    domain = client.getLoadedDomain();
+  }
+
+  @Override
+  public Object classify(String input) throws Exception {
+    return client.classify(input);
+  }
+
+  @Override
+  public void setBatchParallelism(int parallelism) throws Exception {
+    client.setBatchParallelism(parallelism);
+  }
+
+  @Override
+  public void setMetrics(boolean enabled) throws Exception {
+    if(enabled) {
+      client.enableMetrics();
+    } else {
+      client.disableMetrics();
+    }
+  }
+
+  @Override
+  public List<?> classifyAll(List<String> inputs) throws Exception {
+    return client.classifyAll(inputs);
+  }
+
+  @Override
+  public Object transform(String input) throws Exception {
+    return domain.transform(input);
+  }
+
+  @Override
+  public Object tokenize(Object transformed) {
+    return domain.tokenize((String)transformed);
+  }
+
+  @Override
+  public Object lex(String input) throws Exception {
+    return domain.getTokens(input);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object ngram(Object tokens) {
+    return domain.ngram((List<String>)tokens);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object match(Object ngrams) {
+    return domain.lookup((List<String>)ngrams);
+  }
+
+  @Override
+  public Object matchTokens(String input) throws Exception {
+    return domain.getMatchedTokens(input);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object rank(Object matched) {
+    MatchState state = domain.getMatchState();
+
+    try {
+      domain.collectCandidates((List<String>)matched, state);
+
+      return domain.rank(state);
+    } finally {
+      state.clear();
+    }
+  }
+
+  @Override
+  public Object attributes(Object winner, String input) {
+    String patternId = (winner == null ? domain.getDefaultId() : (String)winner);
+
+    if(patternId == null) {
+      return null;
+    }
+
+    return domain.getPatternAttributes(patternId, input);
+  }
+}
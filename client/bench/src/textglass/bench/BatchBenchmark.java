@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package textglass.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//ONE LARGE BATCH: DOMAIN f TEST INPUTS REPLICATED TO lines, CLASSIFIED ONE AT A
+//TIME ON ONE THREAD VERSUS TextGlassClient.classifyAll. THE gc PROFILER SHOWS
+//THE ALLOCATION PER BATCH.
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BatchBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Batch {
+    @Param({"2000000"})
+    public int lines;
+
+    //0 IS THE COMMON POOL
+    @Param({"0"})
+    public int parallelism;
+
+    ClientStages stages;
+    List<String> inputs;
+
+    @Setup
+    public void setup() throws Exception {
+      stages = ClientStages.create("f");
+
+      if(parallelism > 0) {
+        stages.setBatchParallelism(parallelism);
+      }
+
+      List<String> source = stages.getInputs();
+
+      inputs = new ArrayList<>(lines);
+
+      //NEW STRINGS, SO DEDUP CANNOT RELY ON IDENTITY
+
+      for(int i = 0; i < lines; i++) {
+        inputs.add(new String(source.get(i % source.size())));
+      }
+    }
+  }
+
+  @Benchmark
+  public Object classifyLoop(Batch batch) throws Exception {
+    List<Object> results = new ArrayList<>(batch.inputs.size());
+
+    for(String input : batch.inputs) {
+      results.add(batch.stages.classify(input));
+    }
+
+    return results;
+  }
+
+  @Benchmark
+  public Object classifyAll(Batch batch) throws Exception {
+    return batch.stages.classifyAll(batch.inputs);
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package textglass.bench;
+
+import java.util.List;
+
+//JMH REQUIRES A NAMED PACKAGE, THE CLIENT LIVES IN THE DEFAULT PACKAGE.
+//BenchStages (DEFAULT PACKAGE) BRIDGES THE TWO, STAGE RESULTS ARE OPAQUE HERE.
+
+public interface ClientStages {
+
+  public void load(String domainPath) throws Exception;
+
+  //A NEW CLIENT LOADED FROM THE DOMAIN FILES, THIS ONE IS UNCHANGED
+  public Object loadDomain(String domainPath) throws Exception;
+
+  //STREAM THE DOMAIN FILES IN loadDomain INSTEAD OF PARSING THEM WHOLE
+  public void setLoadStreaming(boolean streaming);
+
+  //BUILD THE PATTERNS INTO A PatternStore IN load AND loadDomain
+  public void setCompactPatterns(boolean compact);
+
+  //WRITE A SYNTHETIC DOMAIN WITH DomainGenerator
+  public void generate(String domainPath, int patterns, int tests) throws Exception;
+
+  public List<String> getInputs();
+
+  public void setMatcher(String matcher) throws Exception;
+
+  public Object classify(String input) throws Exception;
+
+  public void setBatchParallelism(int parallelism) throws Exception;
+
+  public void setMetrics(boolean enabled) throws Exception;
+
+  public List<?> classifyAll(List<String> inputs) throws Exception;
+
+  public Object transform(String input) throws Exception;
+
+  public Object tokenize(Object transformed);
+
+  public Object lex(String input) throws Exception;
+
+  public Object ngram(Object tokens);
+
+  public Object match(Object ngrams);
+
+  public Object matchTokens(String input) throws Exception;
+
+  public Object rank(Object matched);
+
+  public Object attributes(Object winner, String input);
+
+  public static ClientStages create(String domain) throws Exception {
+    return open(getDomainPath(domain));
+  }
+
+  public static String getDomainPath(String domain) {
+    String root = System.getProperty("textglass.domains", "../domains");
+
+    return root + "/" + domain;
+  }
+
+  public static ClientStages open(String domainPath) throws Exception {
+    ClientStages stages = newStages();
+
+    stages.load(domainPath);
+
+    return stages;
+  }
+
+  public static ClientStages newStages() throws Exception {
+    return (ClientStages)Class.forName("BenchStages").getDeclaredConstructor().newInstance();
+  }
+}
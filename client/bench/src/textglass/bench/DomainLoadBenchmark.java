@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package textglass.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//DOMAIN LOAD TIME AND PEAK HEAP, JSON TREES AGAINST THE STREAMING LOADER, FOR
+//DOMAIN f AND A GENERATED DOMAIN WITH 100 TIMES ITS PATTERNS
+
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DomainLoadBenchmark {
+
+  //DOMAIN f HAS 4800 PATTERNS
+  private final static int GENERATED_PATTERNS = 480000;
+  private final static int GENERATED_TESTS = 1000;
+
+  @State(Scope.Benchmark)
+  public static class DomainFiles {
+    @Param({"f", "f100"})
+    public String domain;
+
+    @Param({"tree", "stream"})
+    public String loader;
+
+    ClientStages stages;
+    String path;
+    boolean generated;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      stages = ClientStages.newStages();
+      generated = domain.equals("f100");
+
+      if(generated) {
+        path = Files.createTempDirectory("textglass-load").toString();
+
+        stages.generate(path, GENERATED_PATTERNS, GENERATED_TESTS);
+      } else {
+        path = ClientStages.getDomainPath(domain);
+      }
+
+      stages.setLoadStreaming(loader.equals("stream"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      if(!generated) {
+        return;
+      }
+
+      for(File file : new File(path).listFiles()) {
+        file.delete();
+      }
+
+      new File(path).delete();
+    }
+  }
+
+  //HIGHEST HEAP USE DURING THE LOAD, GARBAGE INCLUDED, OVER THE HEAP IN USE
+  //BEFORE IT. EACH POOL PEAKS SEPARATELY, SO THIS IS AN UPPER BOUND
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Heap {
+    public double peakMB;
+
+    private static long reset() {
+      long used = 0;
+
+      for(int i = 0; i < 3; i++) {
+        System.gc();
+      }
+
+      for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if(pool.getType() == MemoryType.HEAP) {
+          pool.resetPeakUsage();
+          used += pool.getUsage().getUsed();
+        }
+      }
+
+      return used;
+    }
+
+    private static long getPeak() {
+      long peak = 0;
+
+      for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if(pool.getType() == MemoryType.HEAP) {
+          peak += pool.getPeakUsage().getUsed();
+        }
+      }
+
+      return peak;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public Object load(DomainFiles domain, Heap heap) throws Exception {
+    long before = Heap.reset();
+
+    Object client = domain.stages.loadDomain(domain.path);
+
+    heap.peakMB = Math.max(0, Heap.getPeak() - before) / (1024.0 * 1024);
+
+    Reference.reachabilityFence(client);
+
+    return client;
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package textglass.bench;
+
+import java.io.File;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//HOW THE CLIENT SCALES WITH THE DOMAIN: LOAD TIME, RETAINED HEAP AND CLASSIFY
+//THROUGHPUT AND LATENCY FOR DomainGenerator DOMAINS OF 10^3 TO 10^6 PATTERNS,
+//WITH Pattern OBJECTS OR A PatternStore. THE LARGEST SIZES NEED TIME AND HEAP,
+//-p patterns=1000,10000 RUNS THE SMALL ONES
+
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DomainScalingBenchmark {
+
+  private final static int TESTS = 10000;
+
+  @State(Scope.Benchmark)
+  public static class Generated {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int patterns;
+
+    @Param({"objects", "compact"})
+    public String store;
+
+    ClientStages stages;
+    String path;
+    String[] inputs;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      path = Files.createTempDirectory("textglass-scaling").toString();
+
+      stages = ClientStages.newStages();
+      stages.setCompactPatterns(store.equals("compact"));
+      stages.generate(path, patterns, TESTS);
+      stages.load(path);
+
+      inputs = stages.getInputs().toArray(new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      for(File file : new File(path).listFiles()) {
+        file.delete();
+      }
+
+      new File(path).delete();
+    }
+  }
+
+  //HEAP STILL IN USE AFTER A GC, WITH AND WITHOUT THE LAST LOADED CLIENT. PER
+  //PATTERN IT INCLUDES THE ATTRIBUTES AND THE MATCHER, THE SAME FOR EITHER store
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Heap {
+    public double retainedMB;
+    public double retainedBytesPerPattern;
+
+    private static long getUsed() {
+      Runtime runtime = Runtime.getRuntime();
+
+      for(int i = 0; i < 3; i++) {
+        System.gc();
+      }
+
+      return runtime.totalMemory() - runtime.freeMemory();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int pos;
+
+    String next(Generated generated) {
+      int i = pos;
+
+      pos = (i + 1 == generated.inputs.length ? 0 : i + 1);
+
+      return generated.inputs[i];
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 2)
+  @Measurement(iterations = 5)
+  public Object load(Generated generated, Heap heap) throws Exception {
+    long before = Heap.getUsed();
+
+    Object client = generated.stages.loadDomain(generated.path);
+
+    long retained = Math.max(0, Heap.getUsed() - before);
+
+    heap.retainedMB = retained / (1024.0 * 1024);
+    heap.retainedBytesPerPattern = (double)retained / generated.patterns;
+
+    Reference.reachabilityFence(client);
+
+    return client;
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  @Warmup(iterations = 3, time = 2)
+  @Measurement(iterations = 5, time = 2)
+  public Object classify(Generated generated, Cursor cursor) throws Exception {
+    return generated.stages.classify(cursor.next(generated));
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package textglass.bench;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//SYNTHETIC DOMAIN WHERE THE POPULAR TOKENS mozilla, linux AND android EACH MAP TO fanout PATTERNS.
+//EVERY INPUT HITS ALL THREE, SO EVERY CLASSIFY SEES AT LEAST fanout CANDIDATES.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FanoutBenchmark {
+
+  private final static String HEADER = "{\"TextGlassSpecVersion\":1.0,\"type\":\"%s\",\"domain\":\"fanout\",\"domainVersion\":\"1.0\",";
+
+  @Param({"1000", "5000"})
+  public int fanout;
+
+  private ClientStages stages;
+  private String[] inputs;
+  private int pos;
+
+  @Setup
+  public void setup() throws Exception {
+    File dir = Files.createTempDirectory("textglass-fanout").toFile();
+
+    dir.deleteOnExit();
+
+    try(Writer patterns = open(dir, "patterns.json"); Writer tests = open(dir, "test.json")) {
+      patterns.write(String.format(HEADER, "pattern"));
+      patterns.write("\"inputParser\":{\"transformers\":[{\"type\":\"LowerCase\"}],");
+      patterns.write("\"tokenSeperators\":[\" \",\"/\",\";\",\"(\",\")\"],\"ngramConcatSize\":1},");
+      patterns.write("\"patternSet\":{\"defaultId\":\"unknown\",\"patterns\":[");
+
+      tests.write(String.format(HEADER, "test"));
+      tests.write("\"tests\":[");
+
+      for(int i = 0; i < fanout; i++) {
+        patterns.write((i > 0 ? "," : "") + "{\"patternId\":\"m" + i + "\",\"rankType\":\"Weak\"," +
+            "\"patternType\":\"SimpleOrderedAnd\",\"patternTokens\":[\"mozilla\",\"android\",\"model" + i + "\"]}");
+        patterns.write(",{\"patternId\":\"l" + i + "\",\"rankType\":\"Weak\",\"rankValue\":" + (i % 100) + "," +
+            "\"patternType\":\"SimpleAnd\",\"patternTokens\":[\"linux\",\"model" + i + "\"]}");
+        patterns.write(",{\"patternId\":\"s" + i + "\",\"rankType\":\"None\"," +
+            "\"patternType\":\"Simple\",\"patternTokens\":[\"mozilla\",\"linux\",\"android\"]}");
+
+        tests.write((i > 0 ? "," : "") + "{\"input\":\"Mozilla/5.0 (Linux; Android 9; Model" +
+            ((i * 7919) % (fanout * 2)) + ") Mobile\"}");
+      }
+
+      patterns.write("]}}");
+      tests.write("]}");
+    }
+
+    stages = ClientStages.open(dir.getPath());
+    inputs = stages.getInputs().toArray(new String[0]);
+    pos = 0;
+  }
+
+  private static Writer open(File dir, String name) throws IOException {
+    File file = new File(dir, name);
+
+    file.deleteOnExit();
+
+    return new FileWriter(file);
+  }
+
+  @Benchmark
+  public Object classify() throws Exception {
+    int i = pos;
+
+    pos = (i + 1 == inputs.length ? 0 : i + 1);
+
+    return stages.classify(inputs[i]);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package textglass.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//TOKEN MATCHING ENGINES: TRANSFORM + TOKENIZE + NGRAM + LOOKUP VERSUS A SINGLE AHO-CORASICK PASS.
+//LONG INPUTS JOIN CONSECUTIVE TEST INPUTS WITH SEPERATORS, LIKE A LONG USER-AGENT.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+  private final static int LONG_PARTS = 16;
+
+  @Param({"f"})
+  public String domain;
+
+  @Param({"Ngram", "AhoCorasick", "RollingHash"})
+  public String matcher;
+
+  @Param({"test", "long"})
+  public String input;
+
+  private ClientStages stages;
+
+  private String[] inputs;
+
+  private int pos;
+
+  @Setup
+  public void setup() throws Exception {
+    stages = ClientStages.create(domain);
+    stages.setMatcher(matcher);
+
+    List<String> testInputs = stages.getInputs();
+
+    if(input.equals("long")) {
+      inputs = new String[testInputs.size()];
+
+      for(int i = 0; i < inputs.length; i++) {
+        StringBuilder builder = new StringBuilder();
+
+        for(int j = 0; j < LONG_PARTS; j++) {
+          builder.append(j > 0 ? "; " : "").append(testInputs.get((i + j) % testInputs.size()));
+        }
+
+        inputs[i] = builder.toString();
+      }
+    } else {
+      inputs = testInputs.toArray(new String[0]);
+    }
+
+    pos = 0;
+  }
+
+  private int next() {
+    int i = pos;
+
+    pos = (i + 1 == inputs.length ? 0 : i + 1);
+
+    return i;
+  }
+
+  @Benchmark
+  public Object matchTokens() throws Exception {
+    return stages.matchTokens(inputs[next()]);
+  }
+
+  @Benchmark
+  public Object classify() throws Exception {
+    return stages.classify(inputs[next()]);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package textglass.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+//CLASSIFY WITH AND WITHOUT PER-STAGE METRICS, THE DIFFERENCE IS THE COST OF RECORDING.
+//WITH METRICS OFF THE ONLY COST SHOULD BE A NULL CHECK.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+
+  @Param({"f"})
+  public String domain;
+
+  @Param({"false", "true"})
+  public boolean metrics;
+
+  private ClientStages stages;
+  private String[] inputs;
+
+  private int pos;
+
+  @Setup
+  public void setup() throws Exception {
+    stages = ClientStages.create(domain);
+    stages.setMetrics(metrics);
+
+    inputs = stages.getInputs().toArray(new String[0]);
+
+    pos = 0;
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    stages.setMetrics(false);
+  }
+
+  @Benchmark
+  public Object classify() throws Exception {
+    int i = pos;
+
+    pos = (i + 1 == inputs.length ? 0 : i + 1);
+
+    return stages.classify(inputs[i]);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package textglass.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+//CLASSIFY THROUGHPUT FROM 1 THREAD UP TO ALL CORES AGAINST ONE SHARED CLIENT.
+//THROUGHPUT SHOULD GROW WITH THE THREAD COUNT UNTIL THE CORES RUN OUT.
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Domain {
+    @Param({"f"})
+    public String domain;
+
+    ClientStages stages;
+    String[] inputs;
+
+    final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void setup() throws Exception {
+      stages = ClientStages.create(domain);
+      inputs = stages.getInputs().toArray(new String[0]);
+    }
+  }
+
+  //EACH THREAD STARTS AT A DIFFERENT INPUT
+  @State(Scope.Thread)
+  public static class Cursor {
+    private int pos = -1;
+
+    String next(Domain domain) {
+      int i = pos;
+
+      if(i < 0) {
+        i = (domain.threads.getAndIncrement() * 977) % domain.inputs.length;
+      }
+
+      pos = (i + 1 == domain.inputs.length ? 0 : i + 1);
+
+      return domain.inputs[i];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Object threads01(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+
+  @Benchmark
+  @Threads(2)
+  public Object threads02(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Object threads04(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+
+  @Benchmark
+  @Threads(8)
+  public Object threads08(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Object threads16(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Object threadsMax(Domain domain, Cursor cursor) throws Exception {
+    return domain.stages.classify(cursor.next(domain));
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package textglass.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+//EACH STAGE OF TextGlassClient.classify, FED WITH THE PRECOMPUTED OUTPUT OF THE PREVIOUS STAGE.
+//match IS THE TOKEN LOOKUP, rank COLLECTS THE CANDIDATES AND PICKS THE WINNER.
+//lex IS THE FUSED INPUT PARSER, transform + tokenize WHEN THE DOMAIN CANNOT BE FUSED.
+//ONE OPERATION IS ONE TEST INPUT, INPUTS ARE CYCLED IN TEST FILE ORDER.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StageBenchmark {
+
+  @Param({"f", "a", "b", "c", "d", "e"})
+  public String domain;
+
+  private ClientStages stages;
+
+  private String[] inputs;
+  private Object[] transformed;
+  private Object[] tokens;
+  private Object[] ngrams;
+  private Object[] matched;
+  private Object[] winners;
+
+  private int pos;
+
+  @Setup
+  public void setup() throws Exception {
+    stages = ClientStages.create(domain);
+
+    List<String> testInputs = stages.getInputs();
+    int size = testInputs.size();
+
+    inputs = testInputs.toArray(new String[size]);
+    transformed = new Object[size];
+    tokens = new Object[size];
+    ngrams = new Object[size];
+    matched = new Object[size];
+    winners = new Object[size];
+
+    for(int i = 0; i < size; i++) {
+      transformed[i] = stages.transform(inputs[i]);
+      tokens[i] = stages.tokenize(transformed[i]);
+      ngrams[i] = stages.ngram(tokens[i]);
+      matched[i] = stages.match(ngrams[i]);
+      winners[i] = stages.rank(matched[i]);
+    }
+
+    pos = 0;
+  }
+
+  private int next() {
+    int i = pos;
+
+    pos = (i + 1 == inputs.length ? 0 : i + 1);
+
+    return i;
+  }
+
+  @Benchmark
+  public Object transform() throws Exception {
+    return stages.transform(inputs[next()]);
+  }
+
+  @Benchmark
+  public Object tokenize() {
+    return stages.tokenize(transformed[next()]);
+  }
+
+  @Benchmark
+  public Object lex() throws Exception {
+    return stages.lex(inputs[next()]);
+  }
+
+  @Benchmark
+  public Object ngram() {
+    return stages.ngram(tokens[next()]);
+  }
+
+  @Benchmark
+  public Object match() {
+    return stages.match(ngrams[next()]);
+  }
+
+  @Benchmark
+  public Object rank() {
+    return stages.rank(matched[next()]);
+  }
+
+  @Benchmark
+  public Object attributes() {
+    int i = next();
+
+    return stages.attributes(winners[i], inputs[i]);
+  }
+}
@@ -0,0 +1,516 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//CLASSIFIES THE USER-AGENT FIELD OF COMBINED FORMAT ACCESS LOGS. THE FILE IS
+//SPLIT INTO LINE ALIGNED SEGMENTS, EACH MAPPED ON ITS OWN SO FILES OVER 2GB
+//WORK. THE UA IS FOUND IN THE MAPPED BYTES AND ONLY THAT SLICE IS DECODED,
+//REPEATED UAs ARE ANSWERED FROM A PER SEGMENT CACHE KEYED ON THE RAW BYTES
+public class AccessLogClassifier {
+
+  private final static int SEGMENT_SIZE = 16 * 1024 * 1024;
+  private final static int SCAN_SIZE = 64 * 1024;
+  private final static int MAX_CACHED = 64 * 1024;
+  private final static int SEGMENTS_PER_WORKER = 2;
+
+  //THE UA IS THE THIRD QUOTED FIELD: "request" "referer" "user-agent"
+  private final static int UA_FIELD = 3;
+
+  private final static String NONE = "null";
+
+  private final TextGlassClient client;
+  private final int workers;
+  private final List<String> attributeKeys;
+
+  //AGGREGATES OF THE LAST RUN
+  private final Map<String, long[]> patternCounts;
+  private final Map<String, Map<String, long[]>> attributeCounts;
+  private long lines;
+  private long malformed;
+  private long bytes;
+  private long time;
+
+  public AccessLogClassifier(TextGlassClient client, int workers, List<String> attributeKeys) throws Exception {
+    if(workers < 1) {
+      throw new Exception("Invalid access log workers: " + workers);
+    }
+
+    this.client = client;
+    this.workers = workers;
+    this.attributeKeys = attributeKeys;
+
+    patternCounts = new HashMap<>();
+    attributeCounts = new HashMap<>();
+
+    for(String key : attributeKeys) {
+      attributeCounts.put(key, new HashMap<String, long[]>());
+    }
+  }
+
+  public void run(String path, OutputStream out) throws Exception {
+    long start = System.nanoTime();
+
+    try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      long[] bounds = getSegments(channel);
+
+      Main.log("Access log: '" + path + "', " + channel.size() + " byte(s), " + (bounds.length - 1) + " segment(s)", 1);
+
+      ExecutorService executor = Executors.newFixedThreadPool(workers);
+      List<Future<Segment>> futures = new ArrayList<>();
+      int segments = bounds.length - 1;
+
+      try {
+        //MERGE AND WRITE IN FILE ORDER, AT MOST workers * SEGMENTS_PER_WORKER ARE
+        //IN FLIGHT AND EACH IS DROPPED ONCE WRITTEN SO HEAP DOES NOT GROW WITH THE LOG
+
+        for(int i = 0; i < segments; i++) {
+          while(futures.size() < segments && futures.size() < i + workers * SEGMENTS_PER_WORKER) {
+            futures.add(submit(executor, channel, bounds, futures.size(), out != null));
+          }
+
+          Segment segment = futures.get(i).get();
+
+          futures.set(i, null);
+
+          merge(segment);
+
+          if(out != null) {
+            out.write(segment.output.toString().getBytes(StandardCharsets.UTF_8));
+          }
+
+          segment.release();
+        }
+      } finally {
+        executor.shutdownNow();
+      }
+
+      bytes = channel.size();
+    }
+
+    if(out != null) {
+      out.flush();
+    }
+
+    time = System.nanoTime() - start;
+  }
+
+  private Future<Segment> submit(ExecutorService executor, FileChannel channel, long[] bounds, int i,
+      boolean output)
+  {
+    final Segment segment = new Segment(channel, bounds[i], bounds[i + 1], output);
+
+    return executor.submit(new Callable<Segment>() {
+      @Override
+      public Segment call() throws Exception {
+        segment.run();
+
+        return segment;
+      }
+    });
+  }
+
+  //SEGMENT BOUNDARIES, EACH ONE JUST AFTER A NEWLINE
+  private static long[] getSegments(FileChannel channel) throws IOException {
+    long size = channel.size();
+    List<Long> bounds = new ArrayList<>();
+    ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE);
+
+    bounds.add(0L);
+
+    long next = SEGMENT_SIZE;
+
+    while(next < size) {
+      long boundary = -1;
+      long pos = next - 1;
+
+      //FIND THE NEXT NEWLINE
+
+      while(boundary < 0 && pos < size) {
+        scan.clear();
+
+        int read = channel.read(scan, pos);
+
+        if(read <= 0) {
+          break;
+        }
+
+        for(int i = 0; i < read; i++) {
+          if(scan.get(i) == '\n') {
+            boundary = pos + i + 1;
+            break;
+          }
+        }
+
+        pos += read;
+      }
+
+      if(boundary < 0 || boundary >= size) {
+        break;
+      }
+
+      if(boundary > bounds.get(bounds.size() - 1)) {
+        bounds.add(boundary);
+      }
+
+      next = Math.max(boundary, next) + SEGMENT_SIZE;
+    }
+
+    bounds.add(size);
+
+    long[] result = new long[bounds.size()];
+
+    for(int i = 0; i < result.length; i++) {
+      result[i] = bounds.get(i);
+    }
+
+    return result;
+  }
+
+  private void merge(Segment segment) {
+    lines += segment.lines;
+    malformed += segment.malformed;
+
+    mergeCounts(patternCounts, segment.patternCounts);
+
+    for(String key : attributeKeys) {
+      mergeCounts(attributeCounts.get(key), segment.attributeCounts.get(key));
+    }
+  }
+
+  private static void mergeCounts(Map<String, long[]> target, Map<String, long[]> source) {
+    for(Map.Entry<String, long[]> entry : source.entrySet()) {
+      long[] count = target.get(entry.getKey());
+
+      if(count == null) {
+        target.put(entry.getKey(), entry.getValue());
+      } else {
+        count[0] += entry.getValue()[0];
+      }
+    }
+  }
+
+  private static void increment(Map<String, long[]> counts, String key) {
+    long[] count = counts.get(key == null ? NONE : key);
+
+    if(count == null) {
+      counts.put(key == null ? NONE : key, new long[] {1});
+    } else {
+      count[0]++;
+    }
+  }
+
+  //ONE MAPPED, LINE ALIGNED PART OF THE FILE
+  private class Segment {
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+
+    private final Map<String, long[]> patternCounts;
+    private final Map<String, Map<String, long[]>> attributeCounts;
+    private long lines;
+    private long malformed;
+
+    private final StringBuilder output;
+
+    //UNESCAPED UA BYTES AND THE RAW BYTES CACHE
+    private byte[] ua;
+    private final Map<SliceKey, Map<String, String>> cache;
+    private final SliceKey probe;
+
+    Segment(FileChannel channel, long start, long end, boolean output) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+
+      patternCounts = new HashMap<>();
+      attributeCounts = new HashMap<>();
+
+      for(String key : attributeKeys) {
+        attributeCounts.put(key, new HashMap<String, long[]>());
+      }
+
+      this.output = (output ? new StringBuilder() : null);
+
+      ua = new byte[512];
+      cache = new HashMap<>();
+      probe = new SliceKey();
+    }
+
+    //DROP THE OUTPUT AND THE CACHE ONCE MERGED AND WRITTEN
+    void release() {
+      if(output != null) {
+        output.setLength(0);
+        output.trimToSize();
+      }
+
+      cache.clear();
+    }
+
+    //LINES AND QUOTES ARE FOUND IN THE MAPPING ITSELF, ONLY THE UA IS COPIED OUT
+    void run() throws Exception {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      int length = buffer.limit();
+      int lineStart = 0;
+
+      for(int i = 0; i < length; i++) {
+        if(buffer.get(i) == '\n') {
+          line(buffer, lineStart, i);
+          lineStart = i + 1;
+        }
+      }
+
+      //LAST LINE WITHOUT A NEWLINE
+
+      if(lineStart < length) {
+        line(buffer, lineStart, length);
+      }
+    }
+
+    private void line(ByteBuffer data, int from, int to) throws Exception {
+      if(to > from && data.get(to - 1) == '\r') {
+        to--;
+      }
+
+      if(to == from) {
+        return;
+      }
+
+      lines++;
+
+      //FIND THE UA FIELD
+
+      int field = 0;
+      int uaLength = -1;
+
+      for(int i = from; i < to; i++) {
+        if(data.get(i) != '"') {
+          continue;
+        }
+
+        field++;
+
+        int close = i + 1;
+
+        while(close < to && data.get(close) != '"') {
+          close += (data.get(close) == '\\' ? 2 : 1);
+        }
+
+        if(close >= to) {
+          break;
+        }
+
+        if(field == UA_FIELD) {
+          uaLength = unescape(data, i + 1, close);
+          break;
+        }
+
+        i = close;
+      }
+
+      if(uaLength < 0) {
+        malformed++;
+
+        if(output != null) {
+          StreamClassifier.appendResult(output, null, null);
+        }
+
+        return;
+      }
+
+      //CLASSIFY, REPEATED UAs COME FROM THE CACHE
+
+      probe.set(ua, uaLength);
+
+      Map<String, String> result = cache.get(probe);
+      String input = null;
+
+      if(result == null && !cache.containsKey(probe)) {
+        input = decode(ua, uaLength);
+        result = client.classify(input);
+
+        if(cache.size() < MAX_CACHED) {
+          cache.put(new SliceKey(Arrays.copyOf(ua, uaLength), uaLength), result);
+        }
+      }
+
+      //AGGREGATE
+
+      increment(patternCounts, (result == null ? null : result.get("patternId")));
+
+      for(String key : attributeKeys) {
+        increment(attributeCounts.get(key), (result == null ? null : result.get(key)));
+      }
+
+      if(output != null) {
+        StreamClassifier.appendResult(output, (input == null ? decode(ua, uaLength) : input), result);
+      }
+    }
+
+    //APACHE ESCAPES \" \\ AND \xHH INSIDE QUOTED FIELDS, THE UNESCAPED UA IS
+    //THE ONLY PART OF THE MAPPING COPIED
+    private int unescape(ByteBuffer data, int from, int to) {
+      if(ua.length < to - from) {
+        ua = new byte[Math.max(to - from, ua.length * 2)];
+      }
+
+      int length = 0;
+
+      for(int i = from; i < to; i++) {
+        byte b = data.get(i);
+
+        if(b == '\\' && i + 1 < to) {
+          byte next = data.get(i + 1);
+
+          if(next == 'x' && i + 3 < to && hex(data.get(i + 2)) >= 0 && hex(data.get(i + 3)) >= 0) {
+            b = (byte)(hex(data.get(i + 2)) * 16 + hex(data.get(i + 3)));
+            i += 3;
+          } else if(next == '"' || next == '\\') {
+            b = next;
+            i++;
+          }
+        }
+
+        ua[length++] = b;
+      }
+
+      return length;
+    }
+  }
+
+  private static int hex(byte b) {
+    if(b >= '0' && b <= '9') {
+      return b - '0';
+    } else if(b >= 'a' && b <= 'f') {
+      return b - 'a' + 10;
+    } else if(b >= 'A' && b <= 'F') {
+      return b - 'A' + 10;
+    }
+
+    return -1;
+  }
+
+  //ASCII IS COPIED STRAIGHT INTO A LATIN-1 STRING, ANYTHING ELSE IS UTF-8
+  private static String decode(byte[] bytes, int length) {
+    for(int i = 0; i < length; i++) {
+      if(bytes[i] < 0) {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+      }
+    }
+
+    return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  //BYTE SLICE CACHE KEY, THE PROBE IS REUSED FOR LOOKUPS
+  private static class SliceKey {
+    private byte[] bytes;
+    private int length;
+    private int hash;
+
+    SliceKey() {
+    }
+
+    SliceKey(byte[] bytes, int length) {
+      set(bytes, length);
+    }
+
+    void set(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+
+      int h = 1;
+
+      for(int i = 0; i < length; i++) {
+        h = 31 * h + bytes[i];
+      }
+
+      hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if(!(o instanceof SliceKey)) {
+        return false;
+      }
+
+      SliceKey other = (SliceKey)o;
+
+      if(other.hash != hash || other.length != length) {
+        return false;
+      }
+
+      for(int i = 0; i < length; i++) {
+        if(other.bytes[i] != bytes[i]) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
+  public Map<String, long[]> getPatternCounts() {
+    return patternCounts;
+  }
+
+  public Map<String, long[]> getAttributeCounts(String key) {
+    return attributeCounts.get(key);
+  }
+
+  public long getLines() {
+    return lines;
+  }
+
+  public long getMalformed() {
+    return malformed;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  @Override
+  public String toString() {
+    double seconds = Math.max(time, 1) / (1000.0 * 1000 * 1000);
+
+    return "Access log classified " + lines + " line(s), malformed: " + malformed + ", " +
+        String.format("%.0f", lines / seconds) + " lines/s, " +
+        String.format("%.1f", bytes / seconds / (1024 * 1024)) + " MB/s";
+  }
+}
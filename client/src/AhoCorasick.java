@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+public class AhoCorasick {
+
+  //TRIE STATES, CHILDREN SORTED BY LABEL. STATE 0 IS THE ROOT
+  private final char[][] labels;
+  private final int[][] children;
+  private final int[] fail;
+
+  //TOKEN ENDING AT A STATE AND THE NEXT STATE ON THE FAIL CHAIN WITH A TOKEN
+  private final int[] output;
+  private final int[] outputLink;
+
+  private final String[] tokens;
+
+  public AhoCorasick(Collection<String> patternTokens) {
+    tokens = patternTokens.toArray(new String[patternTokens.size()]);
+
+    //BUILD THE TRIE
+
+    List<Map<Character, Integer>> trie = new ArrayList<>();
+    List<Integer> outputs = new ArrayList<>();
+
+    trie.add(new HashMap<Character, Integer>());
+    outputs.add(-1);
+
+    for(int i = 0; i < tokens.length; i++) {
+      int state = 0;
+
+      for(int j = 0; j < tokens[i].length(); j++) {
+        Integer next = trie.get(state).get(tokens[i].charAt(j));
+
+        if(next == null) {
+          next = trie.size();
+          trie.add(new HashMap<Character, Integer>());
+          outputs.add(-1);
+          trie.get(state).put(tokens[i].charAt(j), next);
+        }
+
+        state = next;
+      }
+
+      outputs.set(state, i);
+    }
+
+    //FREEZE INTO SORTED ARRAYS
+
+    int states = trie.size();
+
+    labels = new char[states][];
+    children = new int[states][];
+    fail = new int[states];
+    output = new int[states];
+    outputLink = new int[states];
+
+    for(int i = 0; i < states; i++) {
+      Map<Character, Integer> edges = trie.get(i);
+      char[] stateLabels = new char[edges.size()];
+      int j = 0;
+
+      for(char label : edges.keySet()) {
+        stateLabels[j++] = label;
+      }
+
+      Arrays.sort(stateLabels);
+
+      int[] stateChildren = new int[stateLabels.length];
+
+      for(j = 0; j < stateLabels.length; j++) {
+        stateChildren[j] = edges.get(stateLabels[j]);
+      }
+
+      labels[i] = stateLabels;
+      children[i] = stateChildren;
+      output[i] = outputs.get(i);
+    }
+
+    //FAIL AND OUTPUT LINKS, BREADTH FIRST
+
+    Queue<Integer> queue = new ArrayDeque<>();
+
+    outputLink[0] = -1;
+
+    for(int child : children[0]) {
+      fail[child] = 0;
+      outputLink[child] = -1;
+      queue.add(child);
+    }
+
+    while(!queue.isEmpty()) {
+      int state = queue.remove();
+
+      for(int j = 0; j < labels[state].length; j++) {
+        int child = children[state][j];
+        int f = fail[state];
+
+        while(f != 0 && getChild(f, labels[state][j]) < 0) {
+          f = fail[f];
+        }
+
+        int target = getChild(f, labels[state][j]);
+
+        fail[child] = (target >= 0 && target != child ? target : 0);
+        outputLink[child] = (output[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]]);
+
+        queue.add(child);
+      }
+    }
+  }
+
+  private int getChild(int state, char c) {
+    int found = Arrays.binarySearch(labels[state], c);
+
+    return (found >= 0 ? children[state][found] : -1);
+  }
+
+  private int next(int state, char c) {
+    while(true) {
+      int child = getChild(state, c);
+
+      if(child >= 0) {
+        return child;
+      }
+
+      if(state == 0) {
+        return 0;
+      }
+
+      state = fail[state];
+    }
+  }
+
+  //FIND ALL PATTERN TOKENS IN ONE PASS, IN NGRAM TOKEN STREAM ORDER
+  public List<String> match(String source, List<String> tokenSeperators, int ngramConcatSize) {
+    Hits hits = new Hits();
+
+    int[] tokenStarts = new int[16];
+    int tokenCount = 0;
+    int tokenLength = 0;
+
+    int concatPos = 0;
+    int state = 0;
+    int sourcePos = 0;
+
+    //SAME TOKENIZATION AS TextGlassClient.split, SEPERATORS ARE SKIPPED
+
+    source:
+    while(sourcePos < source.length()) {
+      seperator:
+      for(String seperator : tokenSeperators) {
+        int i;
+
+        for(i = 0; i < seperator.length(); i++) {
+          if(sourcePos + i >= source.length() || source.charAt(sourcePos + i) != seperator.charAt(i)) {
+            continue seperator;
+          }
+        }
+
+        if(tokenLength > 0) {
+          collect(state, concatPos, tokenCount, tokenStarts, ngramConcatSize, hits);
+          tokenCount++;
+          tokenLength = 0;
+        }
+
+        sourcePos += i;
+
+        continue source;
+      }
+
+      if(tokenLength == 0) {
+        if(tokenCount == tokenStarts.length) {
+          tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2);
+        }
+
+        tokenStarts[tokenCount] = concatPos;
+      }
+
+      state = next(state, source.charAt(sourcePos));
+
+      tokenLength++;
+      concatPos++;
+      sourcePos++;
+    }
+
+    if(tokenLength > 0) {
+      collect(state, concatPos, tokenCount, tokenStarts, ngramConcatSize, hits);
+    }
+
+    return hits.sorted(tokens);
+  }
+
+  //TOKENS ENDING ON A TOKEN BOUNDARY AND STARTING ON ONE OF THE LAST ngramConcatSize TOKEN STARTS
+  private void collect(int state, int concatPos, int token, int[] tokenStarts, int ngramConcatSize, Hits hits) {
+    int o = (output[state] >= 0 ? state : outputLink[state]);
+
+    while(o >= 0) {
+      int start = concatPos - tokens[output[o]].length();
+
+      for(int j = token; j >= 0 && j > token - ngramConcatSize; j--) {
+        if(tokenStarts[j] == start) {
+          hits.add(j, token, output[o]);
+          break;
+        } else if(tokenStarts[j] < start) {
+          break;
+        }
+      }
+
+      o = outputLink[o];
+    }
+  }
+
+  public int getStateCount() {
+    return labels.length;
+  }
+
+  //HIT LIST, ORDERED BY START TOKEN THEN LONGEST FIRST
+  private static class Hits {
+    private int[] start = new int[8];
+    private int[] end = new int[8];
+    private int[] token = new int[8];
+    private int size = 0;
+
+    private void add(int hitStart, int hitEnd, int hitToken) {
+      if(size == start.length) {
+        start = Arrays.copyOf(start, size * 2);
+        end = Arrays.copyOf(end, size * 2);
+        token = Arrays.copyOf(token, size * 2);
+      }
+
+      //INSERTION SORT, HITS ARRIVE ALMOST SORTED
+
+      int i = size;
+
+      while(i > 0 && (start[i - 1] > hitStart || (start[i - 1] == hitStart && end[i - 1] < hitEnd))) {
+        start[i] = start[i - 1];
+        end[i] = end[i - 1];
+        token[i] = token[i - 1];
+        i--;
+      }
+
+      start[i] = hitStart;
+      end[i] = hitEnd;
+      token[i] = hitToken;
+      size++;
+    }
+
+    private List<String> sorted(String[] tokens) {
+      List<String> list = new ArrayList<>(size);
+
+      for(int i = 0; i < size; i++) {
+        list.add(tokens[token[i]]);
+      }
+
+      return list;
+    }
+  }
+}
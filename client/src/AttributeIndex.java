@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+//LAZY ATTRIBUTES: patternId TO A COPY OF THE BYTES OF ITS ATTRIBUTE OBJECT,
+//TAKEN FROM THE DOMAIN FILES AT LOAD SO THE FILES CAN CHANGE UNDER A DOMAIN
+//STILL SERVING. AN ENTRY IS PARSED THE FIRST TIME IT IS ASKED FOR, RESOLVED
+//AGAINST ITS PARENTS AND CACHED. LATER FILES REPLACE EARLIER ENTRIES, SO
+//PATCHES WIN AS THEY DO WHEN ALL THE ATTRIBUTES ARE BUILT AT LOAD
+public class AttributeIndex {
+
+  //FILES MAPPED, OR DECOMPRESSED WHEN GZIPPED, ONLY UNTIL finish()
+  private final List<ByteBuffer> files;
+
+  //BUILT AT LOAD, READ ONLY ONCE THE DOMAIN IS BUILT
+  private final Map<String, byte[]> entries;
+
+  //parentId OF EACH ENTRY WHICH HAS ONE, ONLY UNTIL finish()
+  private final Map<String, String> parentIds;
+
+  //PARSED ENTRIES, AND ENTRIES RESOLVED AGAINST THEIR PARENTS
+  private final ConcurrentHashMap<String, Attributes> parsed;
+  private final ConcurrentHashMap<String, Attributes> resolved;
+
+  private final AttributePool pool;
+  private final ObjectMapper mapper;
+
+  public AttributeIndex(AttributePool pool) {
+    files = new ArrayList<>();
+    entries = new HashMap<>();
+    parentIds = new HashMap<>();
+
+    parsed = new ConcurrentHashMap<>();
+    resolved = new ConcurrentHashMap<>();
+
+    this.pool = pool;
+    mapper = new ObjectMapper();
+  }
+
+  //MAP A FILE, RETURNS ITS FILE NUMBER FOR put()
+  int addFile(String path) throws Exception {
+    try(InputStream in = JsonFile.open(path)) {
+      if(in instanceof GZIPInputStream) {
+        files.add(ByteBuffer.wrap(in.readAllBytes()));
+
+        return files.size() - 1;
+      }
+    }
+
+    try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      if(channel.size() > Integer.MAX_VALUE) {
+        throw new Exception("Attribute file too large: " + path);
+      }
+
+      files.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    return files.size() - 1;
+  }
+
+  //THE ATTRIBUTE OBJECT OF patternId IS AT [start, end) IN file. A FILE THE
+  //PARSER DID NOT READ AS UTF-8 HAS CHAR OFFSETS, WHICH DO NOT LAND ON THE BRACES
+  void put(String patternId, String parentId, int file, long start, long end) throws Exception {
+    ByteBuffer bytes = files.get(file);
+
+    if(start < 0 || end > bytes.capacity() || end <= start ||
+        bytes.get((int)start) != '{' || bytes.get((int)end - 1) != '}')
+    {
+      throw new Exception("Invalid attribute offset for " + patternId + ", lazy attributes require UTF-8 files");
+    }
+
+    byte[] entry = new byte[(int)(end - start)];
+
+    bytes.duplicate().position((int)start).get(entry);
+
+    entries.put(patternId, entry);
+
+    if(parentId == null) {
+      parentIds.remove(patternId);
+    } else {
+      parentIds.put(patternId, parentId);
+    }
+  }
+
+  //ONCE EVERY FILE IS INDEXED: REJECT parentId CYCLES AS A FULL LOAD DOES AND
+  //DROP THE FILES. MISSING PARENTS END A CHAIN
+  void finish() throws Exception {
+    Set<String> checked = new HashSet<>();
+
+    for(String patternId : parentIds.keySet()) {
+      List<String> chain = new ArrayList<>();
+      Set<String> seen = new HashSet<>();
+
+      for(String level = patternId; level != null && !checked.contains(level); level = parentIds.get(level)) {
+        chain.add(level);
+
+        if(!seen.add(level)) {
+          throw new Exception("Attribute parentId cycle found: " + String.join(" -> ", chain));
+        }
+
+        if(!entries.containsKey(level)) {
+          break;
+        }
+      }
+
+      checked.addAll(chain);
+    }
+
+    files.clear();
+    parentIds.clear();
+  }
+
+  //PARSED AND RESOLVED ONCE, CONCURRENT CALLERS WAIT FOR THE FIRST
+  public Attributes getAttributes(String patternId) {
+    Attributes attributes = resolved.get(patternId);
+
+    if(attributes != null || !entries.containsKey(patternId)) {
+      return attributes;
+    }
+
+    return resolved.computeIfAbsent(patternId, this::resolve);
+  }
+
+  private Attributes resolve(String patternId) {
+    try {
+      return Attributes.resolve(getParsed(patternId), this::getParsed, pool);
+    } catch(Exception e) {
+      throw new IllegalStateException("Invalid attributes for " + patternId + ": " + e.toString());
+    }
+  }
+
+  private Attributes getParsed(String patternId) {
+    byte[] entry = entries.get(patternId);
+
+    if(entry == null) {
+      return null;
+    }
+
+    return parsed.computeIfAbsent(patternId, id -> parse(id, entry));
+  }
+
+  private Attributes parse(String patternId, byte[] entry) {
+    try {
+      return new Attributes(patternId, mapper.readTree(entry), pool);
+    } catch(Exception e) {
+      throw new IllegalStateException("Invalid attributes for " + patternId + ": " + e.toString());
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  @Override
+  public String toString() {
+    return "AttributeIndex entries: " + entries.size() +
+        ", parsed: " + parsed.size() + ", resolved: " + resolved.size();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codehaus.jackson.JsonNode;
+
+//LOAD TIME POOL SHARED BY A DOMAIN'S ATTRIBUTES. EQUAL STRINGS SHARE ONE INSTANCE,
+//EQUAL KEY SETS SHARE ONE ResultSchema AND EQUAL attributeTransformer JSON SHARES
+//ONE AttributeTransformer. SNAPSHOT DOMAINS KEEP ADDING TO IT WHILE CLASSIFYING
+public class AttributePool {
+
+  private final ConcurrentHashMap<String, String> strings;
+  private final ConcurrentHashMap<List<String>, ResultSchema> schemas;
+  private final ConcurrentHashMap<JsonNode, AttributeTransformer> transformers;
+
+  //ESTIMATED BYTES REQUESTED AND RETAINED, STRINGS AND SCHEMAS ONLY
+  private final LongAdder requested;
+  private final LongAdder retained;
+
+  private final LongAdder stringRequests;
+  private final LongAdder schemaRequests;
+  private final LongAdder transformerRequests;
+
+  public AttributePool() {
+    strings = new ConcurrentHashMap<>();
+    schemas = new ConcurrentHashMap<>();
+    transformers = new ConcurrentHashMap<>();
+
+    requested = new LongAdder();
+    retained = new LongAdder();
+
+    stringRequests = new LongAdder();
+    schemaRequests = new LongAdder();
+    transformerRequests = new LongAdder();
+
+    schemas.put(Arrays.asList(new String[0]), ResultSchema.EMPTY);
+    schemas.put(Arrays.asList("patternId"), ResultSchema.PATTERN_ID);
+  }
+
+  public String intern(String value) {
+    if(value == null) {
+      return null;
+    }
+
+    long size = sizeOf(value);
+
+    stringRequests.increment();
+    requested.add(size);
+
+    String existing = strings.putIfAbsent(value, value);
+
+    if(existing != null) {
+      return existing;
+    }
+
+    retained.add(size);
+
+    return value;
+  }
+
+  public ResultSchema getSchema(Collection<String> keys) {
+    String[] sorted = new String[keys.size()];
+    int i = 0;
+
+    for(String key : keys) {
+      sorted[i++] = intern(key);
+    }
+
+    Arrays.sort(sorted);
+
+    long size = 16 + align(16 + 4L * sorted.length);
+
+    schemaRequests.increment();
+    requested.add(size);
+
+    ResultSchema schema = schemas.get(Arrays.asList(sorted));
+
+    if(schema != null) {
+      return schema;
+    }
+
+    schema = new ResultSchema(sorted);
+
+    ResultSchema existing = schemas.putIfAbsent(Arrays.asList(sorted), schema);
+
+    if(existing != null) {
+      return existing;
+    }
+
+    retained.add(size);
+
+    return schema;
+  }
+
+  //TRANSFORMERS ARE STATELESS, SO EQUAL CONFIGURATIONS CAN BE SHARED
+  public AttributeTransformer getTransformer(JsonNode json) throws Exception {
+    transformerRequests.increment();
+
+    AttributeTransformer transformer = transformers.get(json);
+
+    if(transformer != null) {
+      return transformer;
+    }
+
+    transformer = new AttributeTransformer(json);
+
+    AttributeTransformer existing = transformers.putIfAbsent(json, transformer);
+
+    return (existing != null ? existing : transformer);
+  }
+
+  //COMPACT STRINGS, COMPRESSED OOPS
+  private static long sizeOf(String value) {
+    boolean latin1 = true;
+
+    for(int i = 0; i < value.length() && latin1; i++) {
+      latin1 = value.charAt(i) < 0x100;
+    }
+
+    return 24 + align(16 + (latin1 ? 1L : 2L) * value.length());
+  }
+
+  private static long align(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  public long getRequestedBytes() {
+    return requested.sum();
+  }
+
+  public long getRetainedBytes() {
+    return retained.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "AttributePool strings: " + stringRequests.sum() + " -> " + strings.size() +
+        ", schemas: " + schemaRequests.sum() + " -> " + schemas.size() +
+        ", attributeTransformers: " + transformerRequests.sum() + " -> " + transformers.size() +
+        ", estimated bytes: " + getRequestedBytes() + " -> " + getRetainedBytes();
+  }
+}
@@ -66,6 +66,34 @@ public class AttributeTransformer {
     return input;
   }
 
+  //NON THROWING getValue, null WHERE getValue WOULD THROW
+  public String tryGetValue(String input) {
+    for(Transformer transformer : transformers) {
+      input = transformer.tryTransform(input);
+
+      if(input == null) {
+        return null;
+      }
+    }
+
+    return input;
+  }
+
+  //toString() OF THE EXCEPTION getValue THROWS FOR THIS INPUT, null IF NONE
+  public String getError(String input) {
+    for(Transformer transformer : transformers) {
+      String output = transformer.tryTransform(input);
+
+      if(output == null) {
+        return transformer.getError(input);
+      }
+
+      input = output;
+    }
+
+    return null;
+  }
+
   public String getDefaultValue() {
     return defaultValue;
   }
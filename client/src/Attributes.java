@@ -16,25 +16,41 @@
  *
  */
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.codehaus.jackson.JsonNode;
 
 public class Attributes {
   private final String patternId;
   private final String parentId;
-  private final Map<String, String> attributes;
   private final Map<String, AttributeTransformer> attributeTransformers;
 
-  public Attributes(String patternId, JsonNode json) throws Exception {
+  //STATIC RESULT, ITS SCHEMA ALSO HOLDS THE TRANSFORMED KEYS
+  private final ClassificationResult attributes;
+
+  //EFFECTIVE TRANSFORMERS, FURTHEST ANCESTOR FIRST. EACH HAS A VALUE AND AN
+  //_error overlay SLOT, -1 WHEN A NEARER LEVEL OWNS THE KEY
+  private final String[] transformerKeys;
+  private final AttributeTransformer[] transformers;
+  private final int[] transformerSlots;
+  private final int overlaySize;
+
+  private final static byte SET_VALUE = 1;
+  private final static byte SET_ERROR = 2;
+
+  public Attributes(String patternId, JsonNode json, AttributePool pool) throws Exception {
 
     //PARSE ATTRIBUTE JSON
 
-    this.patternId = patternId;
-    parentId = (JsonFile.empty(json, "parentId") ? null : json.get("parentId").asText());
+    this.patternId = pool.intern(patternId);
+    parentId = (JsonFile.empty(json, "parentId") ? null : pool.intern(json.get("parentId").asText()));
     attributeTransformers = new HashMap<>();
 
     //ATTRIBUTE MAP
@@ -63,11 +79,11 @@ public class Attributes {
           throw new Exception("This attribute is reserved: " + key + "_error");
         }
 
-        attributeMap.put(key, value);
+        attributeMap.put(pool.intern(key), pool.intern(value));
       }
     }
 
-    attributeMap.put("patternId", patternId);
+    attributeMap.put("patternId", this.patternId);
 
     //ATTRIBUTE TRANFORMERS
 
@@ -76,9 +92,9 @@ public class Attributes {
         String key = j.next();
         JsonNode attributeTransformerNode = json.get("attributeTransformers").get(key);
 
-        AttributeTransformer attributeTransformer = new AttributeTransformer(attributeTransformerNode);
+        AttributeTransformer attributeTransformer = pool.getTransformer(attributeTransformerNode);
 
-        attributeTransformers.put(key, attributeTransformer);
+        attributeTransformers.put(pool.intern(key), attributeTransformer);
       }
 
       if(attributeTransformers.isEmpty()) {
@@ -86,35 +102,250 @@ public class Attributes {
       }
     }
 
-    attributes = Collections.unmodifiableMap(attributeMap);
+    int size = attributeTransformers.size();
+    int i = 0;
+
+    transformerKeys = new String[size];
+    transformers = new AttributeTransformer[size];
+
+    byte[] flags = new byte[size];
+
+    for(String key : attributeTransformers.keySet()) {
+      transformerKeys[i] = key;
+      transformers[i] = attributeTransformers.get(key);
+      flags[i] = SET_VALUE | SET_ERROR;
+      i++;
+    }
+
+    attributes = getStaticResult(attributeMap, transformerKeys, flags, pool);
+    transformerSlots = getSlots(attributes, transformerKeys, flags);
+    overlaySize = getOverlaySize(attributes);
+  }
+
+  private Attributes(Attributes child, Map<String, String> attributeMap, List<String> keys,
+      List<AttributeTransformer> transformerList, List<Byte> flagList, AttributePool pool) {
+    patternId = child.patternId;
+    parentId = child.parentId;
+    attributeTransformers = child.attributeTransformers;
+
+    transformerKeys = keys.toArray(new String[keys.size()]);
+    transformers = transformerList.toArray(new AttributeTransformer[transformerList.size()]);
+
+    byte[] flags = new byte[flagList.size()];
+
+    for(int i = 0; i < flags.length; i++) {
+      flags[i] = flagList.get(i);
+    }
+
+    attributes = getStaticResult(attributeMap, transformerKeys, flags, pool);
+    transformerSlots = getSlots(attributes, transformerKeys, flags);
+    overlaySize = getOverlaySize(attributes);
+  }
+
+  //SCHEMA OF THE STATIC AND TRANSFORMED KEYS, VALUES HOLD THE STATIC ATTRIBUTES
+  private static ClassificationResult getStaticResult(Map<String, String> attributeMap, String[] keys,
+      byte[] flags, AttributePool pool) {
+    Set<String> overlayKeys = new HashSet<>();
+
+    for(int i = 0; i < keys.length; i++) {
+      if((flags[i] & SET_VALUE) != 0) {
+        overlayKeys.add(keys[i]);
+      }
+
+      if((flags[i] & SET_ERROR) != 0) {
+        overlayKeys.add(keys[i] + "_error");
+      }
+    }
+
+    Set<String> schemaKeys = new HashSet<>(attributeMap.keySet());
+
+    schemaKeys.addAll(overlayKeys);
+
+    ResultSchema schema = pool.getSchema(schemaKeys);
+    String[] values = new String[schema.size()];
+    int[] overlayIndex = (overlayKeys.isEmpty() ? null : new int[schema.size()]);
+    int overlayPos = 0;
+
+    for(int i = 0; i < schema.size(); i++) {
+      values[i] = attributeMap.get(schema.getKey(i));
+
+      if(overlayIndex != null) {
+        overlayIndex[i] = (overlayKeys.contains(schema.getKey(i)) ? overlayPos++ : -1);
+      }
+    }
+
+    return new ClassificationResult(schema, values, overlayIndex, null);
+  }
+
+  private static int[] getSlots(ClassificationResult attributes, String[] keys, byte[] flags) {
+    int[] slots = new int[keys.length * 2];
+    ResultSchema schema = attributes.getSchema();
+
+    for(int i = 0; i < keys.length; i++) {
+      slots[i * 2] = ((flags[i] & SET_VALUE) != 0 ?
+          attributes.getOverlayIndex()[schema.indexOf(keys[i])] : -1);
+      slots[i * 2 + 1] = ((flags[i] & SET_ERROR) != 0 ?
+          attributes.getOverlayIndex()[schema.indexOf(keys[i] + "_error")] : -1);
+    }
+
+    return slots;
+  }
+
+  private static int getOverlaySize(ClassificationResult attributes) {
+    int size = 0;
+
+    if(attributes.getOverlayIndex() != null) {
+      for(int index : attributes.getOverlayIndex()) {
+        size = Math.max(size, index + 1);
+      }
+    }
+
+    return size;
+  }
+
+  //FLATTEN THE parentId CHAIN INTO A SINGLE ATTRIBUTES OBJECT
+  public static Attributes resolve(Attributes child, Function<String, Attributes> lookup,
+      AttributePool pool) throws Exception {
+    List<Attributes> chain = new ArrayList<>();
+    Set<String> seen = new HashSet<>();
+
+    for(Attributes level = child; level != null;) {
+      chain.add(level);
+
+      if(!seen.add(level.patternId)) {
+        StringBuilder cycle = new StringBuilder();
+
+        for(Attributes link : chain) {
+          cycle.append(cycle.length() == 0 ? "" : " -> ").append(link.patternId);
+        }
+
+        throw new Exception("Attribute parentId cycle found: " + cycle);
+      }
+
+      //MISSING PARENTS END THE CHAIN
+
+      level = (level.parentId == null ? null : lookup.apply(level.parentId));
+    }
+
+    if(chain.size() == 1) {
+      return child;
+    }
+
+    //NEAREST LEVEL WINS EACH KEY, AN INHERITED TRANSFORMER CAN STILL SET
+    //ITS _error KEY WHEN ONLY ITS VALUE IS OVERRIDDEN
+
+    Map<String, String> attributeMap = new HashMap<>();
+    List<List<Integer>> levelTransformers = new ArrayList<>();
+    List<Byte> levelFlags = new ArrayList<>();
+    Set<String> claimed = new HashSet<>();
+
+    for(Attributes level : chain) {
+      List<Integer> effective = new ArrayList<>();
+
+      for(int i = 0; i < level.transformerKeys.length; i++) {
+        String key = level.transformerKeys[i];
+        byte flags = 0;
+
+        if(!claimed.contains(key)) {
+          flags |= SET_VALUE;
+        }
+
+        if(!claimed.contains(key + "_error")) {
+          flags |= SET_ERROR;
+        }
+
+        if(flags != 0) {
+          effective.add(i);
+          levelFlags.add(flags);
+        }
+      }
+
+      levelTransformers.add(effective);
+
+      for(String key : level.attributes.keySet()) {
+        if(!claimed.contains(key)) {
+          attributeMap.put(key, level.attributes.get(key));
+        }
+      }
+
+      claimed.addAll(level.attributes.keySet());
+      claimed.addAll(level.attributeTransformers.keySet());
+    }
+
+    //FURTHEST LEVEL RUNS FIRST SO NEARER TRANSFORMERS OVERRIDE
+
+    List<String> keys = new ArrayList<>();
+    List<AttributeTransformer> transformerList = new ArrayList<>();
+    List<Byte> flags = new ArrayList<>();
+    int flagPos = levelFlags.size();
+
+    for(int l = chain.size() - 1; l >= 0; l--) {
+      Attributes level = chain.get(l);
+      List<Integer> effective = levelTransformers.get(l);
+
+      flagPos -= effective.size();
+
+      for(int i = 0; i < effective.size(); i++) {
+        keys.add(level.transformerKeys[effective.get(i)]);
+        transformerList.add(level.transformers[effective.get(i)]);
+        flags.add(levelFlags.get(flagPos + i));
+      }
+    }
+
+    return new Attributes(child, attributeMap, keys, transformerList, flags, pool);
   }
 
-  public Map<String, String> getAttributes(String input) {
+  public ClassificationResult getAttributes(String input) {
 
-    //RETURN MAP
+    //RETURN STATIC RESULT
     
-    if(attributeTransformers.isEmpty()) {
+    if(transformers.length == 0) {
       return attributes;
     }
 
-    //ADD TRANSFORMED ATTRIBUTES
+    //OVERLAY TRANSFORMED ATTRIBUTES, LATER TRANSFORMERS OVERRIDE
     
-    Map<String, String> custom = new HashMap<>(attributes);
+    Object[] overlay = new Object[overlaySize];
 
-    for(String key : attributeTransformers.keySet()) {
-      AttributeTransformer attributeTransformer = attributeTransformers.get(key);
+    for(int i = 0; i < transformers.length; i++) {
+      AttributeTransformer attributeTransformer = transformers[i];
+      int valueSlot = transformerSlots[i * 2];
+      int errorSlot = transformerSlots[i * 2 + 1];
+      String value = attributeTransformer.tryGetValue(input);
+
+      if(value != null) {
+        if(valueSlot >= 0) {
+          overlay[valueSlot] = value;
+        }
+      } else {
+        if(valueSlot >= 0) {
+          overlay[valueSlot] = attributeTransformer.getDefaultValue();
+        }
 
-      try {
-        String value = attributeTransformer.getValue(input);
+        //THE _error STRING IS BUILT ON FIRST READ
 
-        custom.put(key, value);
-      } catch(Exception e) {
-        custom.put(key, attributeTransformer.getDefaultValue());
-        custom.put(key + "_error", e.toString());
+        if(errorSlot >= 0) {
+          overlay[errorSlot] = new TransformError(attributeTransformer, input);
+        }
       }
     }
 
-    return Collections.unmodifiableMap(custom);
+    return attributes.withOverlay(overlay);
+  }
+
+  //RECORD EACH attributeTransformer RUN, IN getAttributes ORDER
+  void explain(String input, Explanation explanation) {
+    for(int i = 0; i < transformers.length; i++) {
+      String value = transformers[i].tryGetValue(input);
+
+      explanation.addAttributeTransform(transformerKeys[i], transformers[i].toString(), value,
+          (value == null ? transformers[i].getError(input) : null));
+    }
+  }
+
+  //THE INPUT IS ONLY READ BY ATTRIBUTE TRANSFORMERS
+  public boolean hasTransformers() {
+    return transformers.length > 0;
   }
 
   @Override
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+//READ ONLY LATIN-1 VIEW OVER A byte[] OR ByteBuffer RANGE, NOTHING IS COPIED
+//UNTIL toString. THE CALLER MUST NOT CHANGE THE BYTES WHILE THE VIEW IS IN USE
+public final class ByteSequence implements CharSequence {
+
+  private final byte[] array;
+  private final ByteBuffer buffer;
+  private final int offset;
+  private final int length;
+
+  public ByteSequence(byte[] array, int offset, int length) {
+    checkRange(array.length, offset, length);
+
+    this.array = array;
+    this.buffer = null;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public ByteSequence(ByteBuffer buffer, int offset, int length) {
+    checkRange(buffer.limit(), offset, length);
+
+    this.array = null;
+    this.buffer = buffer;
+    this.offset = offset;
+    this.length = length;
+  }
+
+  private static void checkRange(int size, int offset, int length) {
+    if(offset < 0 || length < 0 || offset > size - length) {
+      throw new IndexOutOfBoundsException("Invalid range: " + offset + ", " + length + " of " + size);
+    }
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if(index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("Invalid index: " + index);
+    }
+
+    if(array != null) {
+      return (char)(array[offset + index] & 0xFF);
+    }
+
+    return (char)(buffer.get(offset + index) & 0xFF);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    checkRange(length, start, end - start);
+
+    if(array != null) {
+      return new ByteSequence(array, offset + start, end - start);
+    }
+
+    return new ByteSequence(buffer, offset + start, end - start);
+  }
+
+  @Override
+  public String toString() {
+    if(array != null) {
+      return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    byte[] copy = new byte[length];
+
+    for(int i = 0; i < length; i++) {
+      copy[i] = buffer.get(offset + i);
+    }
+
+    return new String(copy, StandardCharsets.ISO_8859_1);
+  }
+
+  public static boolean isAscii(byte[] array, int offset, int length) {
+    for(int i = offset; i < offset + length; i++) {
+      if(array[i] < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public static boolean isAscii(ByteBuffer buffer, int offset, int length) {
+    for(int i = offset; i < offset + length; i++) {
+      if(buffer.get(i) < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+//AN IMMUTABLE CLASSIFICATION RESULT. THE SCHEMA AND STATIC VALUES ARE SHARED WITH
+//THE PATTERN'S Attributes, ONLY TRANSFORMED VALUES ARE HELD PER RESULT IN overlay,
+//AS A String OR A TransformError. A null VALUE MEANS THE KEY IS NOT SET. THIS IS
+//ALSO A READ ONLY Map
+public final class ClassificationResult extends AbstractMap<String, String> {
+
+  private final ResultSchema schema;
+  private final String[] values;
+
+  //SCHEMA INDEX TO overlay INDEX, -1 WHEN NOT TRANSFORMED
+  private final int[] overlayIndex;
+  private final Object[] overlay;
+
+  ClassificationResult(ResultSchema schema, String[] values, int[] overlayIndex, Object[] overlay) {
+    this.schema = schema;
+    this.values = values;
+    this.overlayIndex = overlayIndex;
+    this.overlay = overlay;
+  }
+
+  //RESULT FOR A PATTERN WITHOUT ATTRIBUTES
+  static ClassificationResult of(String patternId) {
+    return new ClassificationResult(ResultSchema.PATTERN_ID, new String[] {patternId}, null, null);
+  }
+
+  //SAME STATIC VALUES WITH NEW TRANSFORMED VALUES
+  ClassificationResult withOverlay(Object[] transformed) {
+    return new ClassificationResult(schema, values, overlayIndex, transformed);
+  }
+
+  int[] getOverlayIndex() {
+    return overlayIndex;
+  }
+
+  //FAILED attributeTransformers WHOSE _error IS SET
+  int getErrorCount() {
+    int count = 0;
+
+    if(overlay != null) {
+      for(Object transformed : overlay) {
+        if(transformed instanceof TransformError) {
+          count++;
+        }
+      }
+    }
+
+    return count;
+  }
+
+  public ResultSchema getSchema() {
+    return schema;
+  }
+
+  public String getPatternId() {
+    return get("patternId");
+  }
+
+  //null IF THE SCHEMA KEY IS NOT SET
+  public String getValue(int index) {
+    Object transformed = (overlay != null && overlayIndex[index] >= 0 ? overlay[overlayIndex[index]] : null);
+
+    if(transformed == null) {
+      return values[index];
+    }
+
+    return (transformed instanceof TransformError ?
+        ((TransformError)transformed).getMessage() : (String)transformed);
+  }
+
+  @Override
+  public String get(Object key) {
+    if(!(key instanceof String)) {
+      return null;
+    }
+
+    int index = schema.indexOf((String)key);
+
+    return (index < 0 ? null : getValue(index));
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+
+    for(int i = 0; i < schema.size(); i++) {
+      if(getValue(i) != null) {
+        size++;
+      }
+    }
+
+    return size;
+  }
+
+  @Override
+  public Set<Map.Entry<String, String>> entrySet() {
+    return new AbstractSet<Map.Entry<String, String>>() {
+      @Override
+      public Iterator<Map.Entry<String, String>> iterator() {
+        return new Iterator<Map.Entry<String, String>>() {
+          private int next = advance(0);
+
+          private int advance(int from) {
+            while(from < schema.size() && getValue(from) == null) {
+              from++;
+            }
+
+            return from;
+          }
+
+          @Override
+          public boolean hasNext() {
+            return next < schema.size();
+          }
+
+          @Override
+          public Map.Entry<String, String> next() {
+            if(!hasNext()) {
+              throw new NoSuchElementException();
+            }
+
+            Map.Entry<String, String> entry = new SimpleImmutableEntry<>(schema.getKey(next), getValue(next));
+
+            next = advance(next + 1);
+
+            return entry;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return ClassificationResult.this.size();
+      }
+    };
+  }
+}
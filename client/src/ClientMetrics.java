@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//OPT IN CLASSIFY METRICS. EACH THREAD RECORDS INTO ITS OWN Recorder, READERS
+//MERGE THEM, SO RECORDING NEVER CONTENDS. READS RACE WITH RECORDING AND ARE
+//APPROXIMATE. WITH METRICS OFF Domain ONLY CHECKS FOR A null Recorder
+public class ClientMetrics implements ClientMetricsMXBean {
+
+  //STAGES
+  public final static int TRANSFORM = 0;
+  public final static int TOKENIZE = 1;
+  public final static int NGRAM = 2;
+  public final static int MATCH = 3;
+  public final static int RANK = 4;
+  public final static int ATTRIBUTES = 5;
+
+  private final static String[] STAGES = {"transform", "tokenize", "ngram", "match", "rank", "attributes"};
+
+  private final static AtomicInteger ids = new AtomicInteger();
+
+  private final ThreadLocal<Recorder> recorders;
+  private final Queue<Recorder> allRecorders;
+
+  //RECORDERS OF DEAD THREADS ARE FOLDED IN HERE AND DROPPED
+  private final Totals retired;
+
+  private final ConcurrentHashMap<String, LongAdder> patternWins;
+
+  private ObjectName objectName;
+
+  public ClientMetrics() {
+    recorders = new ThreadLocal<>();
+    allRecorders = new ConcurrentLinkedQueue<>();
+    retired = new Totals();
+    patternWins = new ConcurrentHashMap<>();
+  }
+
+  Recorder getRecorder() {
+    Recorder recorder = recorders.get();
+
+    if(recorder == null) {
+      recorder = new Recorder(Thread.currentThread());
+      recorders.set(recorder);
+
+      //ONCE PER NEW THREAD, SO THREAD PER REQUEST SERVERS DO NOT ACCUMULATE RECORDERS
+
+      synchronized(retired) {
+        prune();
+      }
+
+      allRecorders.add(recorder);
+    }
+
+    return recorder;
+  }
+
+  //FOLD THE RECORDERS OF DEAD THREADS INTO retired, CALLED HOLDING retired
+  private void prune() {
+    for(Iterator<Recorder> i = allRecorders.iterator(); i.hasNext(); ) {
+      Recorder recorder = i.next();
+
+      if(recorder.isRetired()) {
+        retired.merge(recorder);
+        i.remove();
+      }
+    }
+  }
+
+  //COUNTS AND HISTOGRAMS OF ONE OR MORE RECORDERS
+  private static class Totals {
+    final LatencyHistogram[] stages;
+    final LatencyHistogram tokenHits;
+    final LatencyHistogram candidates;
+    long classifications;
+    long defaultFallbacks;
+    long transformerErrors;
+
+    Totals() {
+      stages = new LatencyHistogram[STAGES.length];
+      tokenHits = new LatencyHistogram();
+      candidates = new LatencyHistogram();
+
+      for(int i = 0; i < stages.length; i++) {
+        stages[i] = new LatencyHistogram();
+      }
+    }
+
+    void merge(Totals other) {
+      for(int i = 0; i < stages.length; i++) {
+        stages[i].merge(other.stages[i]);
+      }
+
+      tokenHits.merge(other.tokenHits);
+      candidates.merge(other.candidates);
+      classifications += other.classifications;
+      defaultFallbacks += other.defaultFallbacks;
+      transformerErrors += other.transformerErrors;
+    }
+  }
+
+  //ONE PER CLASSIFYING THREAD, WRITTEN ONLY BY THAT THREAD
+  class Recorder extends Totals {
+    private final WeakReference<Thread> owner;
+
+    //CURRENT CALL, -1 FOR STAGES WHICH HAVE NOT RUN
+    private final long[] elapsed;
+    private long mark;
+
+    private Recorder(Thread owner) {
+      this.owner = new WeakReference<>(owner);
+
+      elapsed = new long[STAGES.length];
+    }
+
+    private boolean isRetired() {
+      Thread thread = owner.get();
+
+      return (thread == null || !thread.isAlive());
+    }
+
+    void start() {
+      Arrays.fill(elapsed, -1);
+      mark = System.nanoTime();
+    }
+
+    //TIME SINCE THE LAST MARK IS ADDED TO stage
+    void stage(int stage) {
+      long now = System.nanoTime();
+
+      elapsed[stage] = Math.max(elapsed[stage], 0) + now - mark;
+      mark = now;
+    }
+
+    void matched(int hits, int candidateCount) {
+      tokenHits.record(hits);
+      candidates.record(candidateCount);
+    }
+
+    void complete(boolean fallback, ClassificationResult result) {
+      if(result != null) {
+        stage(ATTRIBUTES);
+
+        transformerErrors += result.getErrorCount();
+
+        String patternId = result.getPatternId();
+        LongAdder wins = patternWins.get(patternId);
+
+        if(wins == null) {
+          wins = patternWins.computeIfAbsent(patternId, k -> new LongAdder());
+        }
+
+        wins.increment();
+      }
+
+      for(int i = 0; i < elapsed.length; i++) {
+        if(elapsed[i] >= 0) {
+          stages[i].record(elapsed[i]);
+        }
+      }
+
+      classifications++;
+
+      if(fallback) {
+        defaultFallbacks++;
+      }
+    }
+  }
+
+  //REGISTER WITH THE PLATFORM MBEAN SERVER AS textglass:type=ClientMetrics,id=N
+  public synchronized void register() throws Exception {
+    if(objectName != null) {
+      return;
+    }
+
+    ObjectName name = new ObjectName("textglass:type=ClientMetrics,id=" + ids.incrementAndGet());
+
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+
+    objectName = name;
+  }
+
+  public synchronized void unregister() throws Exception {
+    if(objectName == null) {
+      return;
+    }
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    if(server.isRegistered(objectName)) {
+      server.unregisterMBean(objectName);
+    }
+
+    objectName = null;
+  }
+
+  public synchronized ObjectName getObjectName() {
+    return objectName;
+  }
+
+  //MERGED VIEW, ONE MERGE PER READ OR SCRAPE
+
+  private Totals getTotals() {
+    Totals merged = new Totals();
+
+    synchronized(retired) {
+      prune();
+
+      merged.merge(retired);
+    }
+
+    for(Recorder recorder : allRecorders) {
+      merged.merge(recorder);
+    }
+
+    return merged;
+  }
+
+  @Override
+  public long getClassifications() {
+    return getTotals().classifications;
+  }
+
+  @Override
+  public long getDefaultFallbacks() {
+    return getTotals().defaultFallbacks;
+  }
+
+  @Override
+  public long getTransformerErrors() {
+    return getTotals().transformerErrors;
+  }
+
+  @Override
+  public Map<String, Long> getStageMeanNanos() {
+    Totals totals = getTotals();
+    Map<String, Long> means = new TreeMap<>();
+
+    for(int i = 0; i < STAGES.length; i++) {
+      means.put(STAGES[i], totals.stages[i].getMean());
+    }
+
+    return means;
+  }
+
+  @Override
+  public Map<String, Long> getStageP99Nanos() {
+    Totals totals = getTotals();
+    Map<String, Long> p99s = new TreeMap<>();
+
+    for(int i = 0; i < STAGES.length; i++) {
+      p99s.put(STAGES[i], totals.stages[i].getPercentile(99));
+    }
+
+    return p99s;
+  }
+
+  @Override
+  public double getMeanTokenHits() {
+    return getMean(getTotals().tokenHits);
+  }
+
+  @Override
+  public double getMeanCandidates() {
+    return getMean(getTotals().candidates);
+  }
+
+  private static double getMean(LatencyHistogram histogram) {
+    return (histogram.getCount() == 0 ? 0 : (double)histogram.getTotal() / histogram.getCount());
+  }
+
+  @Override
+  public long getP99Candidates() {
+    return getTotals().candidates.getPercentile(99);
+  }
+
+  @Override
+  public Map<String, Long> getPatternWins() {
+    Map<String, Long> wins = new TreeMap<>();
+
+    for(Map.Entry<String, LongAdder> entry : patternWins.entrySet()) {
+      wins.put(entry.getKey(), entry.getValue().sum());
+    }
+
+    return wins;
+  }
+
+  //PROMETHEUS TEXT EXPOSITION FORMAT 0.0.4
+  @Override
+  public String getPrometheus() {
+    Totals totals = getTotals();
+    StringBuilder text = new StringBuilder();
+
+    appendCounter(text, "textglass_classifications_total", "Classifications run against the domain.",
+        totals.classifications);
+    appendCounter(text, "textglass_default_fallbacks_total", "Classifications with no winning pattern.",
+        totals.defaultFallbacks);
+    appendCounter(text, "textglass_attribute_transformer_errors_total", "Failed attribute transformers.",
+        totals.transformerErrors);
+
+    text.append("# HELP textglass_stage_seconds Classify time per stage.\n");
+    text.append("# TYPE textglass_stage_seconds summary\n");
+
+    for(int i = 0; i < STAGES.length; i++) {
+      appendSummary(text, "textglass_stage_seconds", "stage=\"" + STAGES[i] + "\",", totals.stages[i], 1e9);
+    }
+
+    text.append("# HELP textglass_token_hits Pattern token hits per classification.\n");
+    text.append("# TYPE textglass_token_hits summary\n");
+    appendSummary(text, "textglass_token_hits", "", totals.tokenHits, 1d);
+
+    text.append("# HELP textglass_candidates Candidate patterns per classification.\n");
+    text.append("# TYPE textglass_candidates summary\n");
+    appendSummary(text, "textglass_candidates", "", totals.candidates, 1d);
+
+    text.append("# HELP textglass_pattern_wins_total Classifications won per patternId.\n");
+    text.append("# TYPE textglass_pattern_wins_total counter\n");
+
+    for(Map.Entry<String, Long> entry : getPatternWins().entrySet()) {
+      text.append("textglass_pattern_wins_total{patternId=\"").append(escapeLabel(entry.getKey()))
+          .append("\"} ").append(entry.getValue()).append('\n');
+    }
+
+    return text.toString();
+  }
+
+  private static void appendCounter(StringBuilder text, String name, String help, long value) {
+    text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    text.append("# TYPE ").append(name).append(" counter\n");
+    text.append(name).append(' ').append(value).append('\n');
+  }
+
+  private static void appendSummary(StringBuilder text, String name, String labels,
+      LatencyHistogram histogram, double divisor) {
+    for(double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+      text.append(name).append('{').append(labels).append("quantile=\"").append(quantile).append("\"} ")
+          .append(histogram.getPercentile(quantile * 100) / divisor).append('\n');
+    }
+
+    String suffix = (labels.isEmpty() ? "" : "{" + labels.substring(0, labels.length() - 1) + "}");
+
+    text.append(name).append("_sum").append(suffix).append(' ').append(histogram.getTotal() / divisor).append('\n');
+    text.append(name).append("_count").append(suffix).append(' ').append(histogram.getCount()).append('\n');
+  }
+
+  private static String escapeLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  @Override
+  public String toString() {
+    Totals totals = getTotals();
+
+    return "ClientMetrics classifications: " + totals.classifications + ", default fallbacks: " +
+        totals.defaultFallbacks + ", transformer errors: " + totals.transformerErrors +
+        ", mean token hits: " + getMean(totals.tokenHits) + ", mean candidates: " + getMean(totals.candidates);
+  }
+}
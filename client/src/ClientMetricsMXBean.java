@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.util.Map;
+
+//JMX VIEW OF ClientMetrics, LATENCIES IN NANOSECONDS
+public interface ClientMetricsMXBean {
+
+  public long getClassifications();
+
+  public long getDefaultFallbacks();
+
+  public long getTransformerErrors();
+
+  public Map<String, Long> getStageMeanNanos();
+
+  public Map<String, Long> getStageP99Nanos();
+
+  public double getMeanTokenHits();
+
+  public double getMeanCandidates();
+
+  public long getP99Candidates();
+
+  public Map<String, Long> getPatternWins();
+
+  public String getPrometheus();
+}
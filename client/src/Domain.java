@@ -0,0 +1,656 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//AN IMMUTABLE LOADED DOMAIN. EVERY FIELD IS FINAL AND EVERY COLLECTION IS A
+//FROZEN COPY, SO ONCE PUBLISHED classify IS SAFE FROM ANY NUMBER OF THREADS
+//WITHOUT LOCKING. PER THREAD SCRATCH LIVES IN matchStates
+public final class Domain {
+
+  private final String name;
+  private final String version;
+
+  //INPUT PARSING
+  private final List<Transformer> transformers;
+  private final List<String> tokenSeperators;
+  private final int ngramConcatSize;
+  private final InputLexer lexer;
+
+  //PATTERN MATCHING
+  private final Map<String, Integer> tokenIds;
+  private final Pattern[][] tokenPatterns;
+  private final Pattern[] patterns;
+  private final int patternCount;
+  private final Map<String, Attributes> attributes;
+
+  //COMPACT PATTERNS, REPLACES tokenIds, tokenPatterns AND patterns WHEN SET
+  private final PatternStore patternStore;
+
+  //LAZY ATTRIBUTES, REPLACES attributes WHEN SET
+  private final AttributeIndex attributeIndex;
+
+  private final String defaultId;
+
+  //PER THREAD CANDIDATE SCRATCH
+  private final ThreadLocal<MatchState> matchStates;
+
+  //COMPILED DOMAIN, REPLACES patterns AND attributes WHEN LOADED
+  private final DomainSnapshot snapshot;
+
+  //TOKEN MATCHING ENGINE
+  private final TextGlassClient.Matcher matcher;
+  private final AhoCorasick automaton;
+  private final NgramHashTable ngramTable;
+
+  Domain(DomainBuilder builder) {
+    name = builder.getDomain();
+    version = builder.getDomainVersion();
+
+    transformers = Collections.unmodifiableList(new ArrayList<>(builder.getTransformers()));
+    tokenSeperators = Collections.unmodifiableList(new ArrayList<>(builder.getTokenSeperators()));
+    ngramConcatSize = builder.getNgramConcatSize();
+    lexer = InputLexer.compile(transformers, tokenSeperators);
+
+    Main.log(lexer == null ? "Input parser cannot be fused" : "Fused input parser: " + lexer, 1);
+
+    patternCount = builder.getPatternCount();
+    patternStore = builder.getPatternStore();
+
+    if(patternStore == null) {
+      tokenIds = Collections.unmodifiableMap(new HashMap<>(builder.getTokenIds()));
+      tokenPatterns = new Pattern[builder.getTokenPatterns().size()][];
+      patterns = new Pattern[patternCount];
+
+      for(int i = 0; i < tokenPatterns.length; i++) {
+        List<Pattern> matched = builder.getTokenPatterns().get(i);
+
+        tokenPatterns[i] = matched.toArray(new Pattern[matched.size()]);
+
+        for(Pattern pattern : tokenPatterns[i]) {
+          patterns[pattern.getOrdinal()] = pattern;
+        }
+      }
+    } else {
+      tokenIds = null;
+      tokenPatterns = null;
+      patterns = null;
+    }
+
+    attributes = Collections.unmodifiableMap(new HashMap<>(builder.getAttributes()));
+    attributeIndex = builder.getAttributeIndex();
+
+    defaultId = builder.getDefaultId();
+
+    matchStates = new ThreadLocal<>();
+
+    snapshot = builder.getSnapshot();
+
+    matcher = builder.getMatcher();
+    automaton = buildMatcher(matcher);
+    ngramTable = buildNgramTable(matcher);
+  }
+
+  private Domain(Domain source, TextGlassClient.Matcher matcher) {
+    name = source.name;
+    version = source.version;
+
+    transformers = source.transformers;
+    tokenSeperators = source.tokenSeperators;
+    ngramConcatSize = source.ngramConcatSize;
+    lexer = source.lexer;
+
+    tokenIds = source.tokenIds;
+    tokenPatterns = source.tokenPatterns;
+    patterns = source.patterns;
+    patternCount = source.patternCount;
+    patternStore = source.patternStore;
+    attributes = source.attributes;
+    attributeIndex = source.attributeIndex;
+
+    defaultId = source.defaultId;
+
+    matchStates = new ThreadLocal<>();
+
+    snapshot = source.snapshot;
+
+    this.matcher = matcher;
+    automaton = buildMatcher(matcher);
+    ngramTable = buildNgramTable(matcher);
+  }
+
+  private AhoCorasick buildMatcher(TextGlassClient.Matcher matcher) {
+    if(!matcher.equals(TextGlassClient.Matcher.AhoCorasick)) {
+      return null;
+    }
+
+    AhoCorasick built = new AhoCorasick(getTokens());
+
+    Main.log("Built AhoCorasick matcher, " + built.getStateCount() + " state(s)", 1);
+
+    return built;
+  }
+
+  private NgramHashTable buildNgramTable(TextGlassClient.Matcher matcher) {
+    if(!matcher.equals(TextGlassClient.Matcher.RollingHash)) {
+      return null;
+    }
+
+    NgramHashTable built = new NgramHashTable(getTokens());
+
+    Main.log("Built RollingHash matcher, " + built.getTokenCount() + " token(s), capacity " +
+        built.getCapacity(), 1);
+
+    return built;
+  }
+
+  //SAME DOMAIN WITH ANOTHER TOKEN MATCHER
+  public Domain withMatcher(TextGlassClient.Matcher matcher) throws Exception {
+    if(!matcher.equals(TextGlassClient.Matcher.Ngram) && snapshot != null) {
+      throw new Exception("Matcher not supported for snapshots: " + matcher);
+    }
+
+    if(matcher.equals(this.matcher)) {
+      return this;
+    }
+
+    return new Domain(this, matcher);
+  }
+
+  public ClassificationResult classify(String input) throws Exception {
+    return classify(input, null);
+  }
+
+  //metrics IS null UNLESS THE CLIENT RECORDS METRICS
+  ClassificationResult classify(String input, ClientMetrics.Recorder metrics) throws Exception {
+    if(metrics != null) {
+      metrics.start();
+    }
+
+    //MATCH AGAINST A COMPILED DOMAIN
+
+    if(snapshot != null) {
+      List<String> ngrams = ngram(getTokens(input, metrics));
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.NGRAM);
+      }
+
+      String winnerId = snapshot.getWinner(ngrams);
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.MATCH);
+      }
+
+      return getResult(winnerId, input, metrics);
+    }
+
+    //MATCH THE INPUT AGAINST THE PATTERN TOKENS
+
+    List<String> matchedTokens = getMatchedTokens(input, metrics);
+
+    //COLLECT THE CANDIDATES AND FIND THE WINNER
+
+    String winnerId = getWinner(matchedTokens, metrics);
+
+    //RETURN THE RESULT
+
+    return getResult(winnerId, input, metrics);
+  }
+
+  private String getWinner(List<String> matchedTokens, ClientMetrics.Recorder metrics) {
+    MatchState state = getMatchState();
+
+    try {
+      collectCandidates(matchedTokens, state);
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.MATCH);
+        metrics.matched(matchedTokens.size(), state.getCandidateCount());
+      }
+
+      String winnerId = rank(state);
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.RANK);
+      }
+
+      return winnerId;
+    } finally {
+      state.clear();
+    }
+  }
+
+  //THE WINNER'S ATTRIBUTES, THE DEFAULT IF THERE IS NO WINNER
+  private ClassificationResult getResult(String winnerId, String input, ClientMetrics.Recorder metrics) {
+    String patternId = (winnerId == null ? defaultId : winnerId);
+    ClassificationResult result = (patternId == null ? null : getPatternAttributes(patternId, input));
+
+    if(metrics != null) {
+      metrics.complete(winnerId == null, result);
+    }
+
+    return result;
+  }
+
+  //CLASSIFY WITHOUT A String WHEN THE LEXER CAN READ THE SOURCE. THE INPUT IS
+  //ONLY MATERIALIZED FOR THE GENERIC CHAIN OR FOR AN attributeTransformer
+  public ClassificationResult classify(CharSequence source) throws Exception {
+    return classify(source, null);
+  }
+
+  ClassificationResult classify(CharSequence source, ClientMetrics.Recorder metrics) throws Exception {
+    if(source instanceof String) {
+      return classify((String)source, metrics);
+    }
+
+    if(metrics != null) {
+      metrics.start();
+    }
+
+    List<String> tokens = (lexer == null ? null : lexer.tokenize(source));
+
+    if(tokens == null) {
+      return classify(source.toString(), metrics);
+    }
+
+    if(metrics != null) {
+      metrics.stage(ClientMetrics.TOKENIZE);
+    }
+
+    //SAME TOKENS AS getTokens, THE NGRAM LOOKUP MATCHES EVERY MATCHER
+
+    String winnerId;
+
+    if(snapshot != null) {
+      winnerId = snapshot.getWinner(ngram(tokens));
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.MATCH);
+      }
+    } else {
+      List<String> matchedTokens;
+
+      if(ngramTable != null) {
+        matchedTokens = ngramTable.match(tokens, ngramConcatSize);
+      } else {
+        List<String> ngrams = ngram(tokens);
+
+        if(metrics != null) {
+          metrics.stage(ClientMetrics.NGRAM);
+        }
+
+        matchedTokens = lookup(ngrams);
+      }
+
+      winnerId = getWinner(matchedTokens, metrics);
+    }
+
+    String patternId = (winnerId == null ? defaultId : winnerId);
+    Attributes patternAttributes = (patternId == null ? null : getAttributes(patternId));
+
+    return getResult(winnerId,
+        (patternAttributes != null && patternAttributes.hasTransformers() ? source.toString() : null), metrics);
+  }
+
+  //TRACE THE SAME STAGES AS classify, THE RESULT IS THE SAME AS classify(input)
+  public Explanation explain(String input) throws Exception {
+    Explanation explanation = new Explanation(input, name, matcher);
+
+    //PARSE THE INPUT, THE NGRAMS ARE BUILT EVEN WHEN THE MATCHER SKIPS THEM
+
+    List<String> tokens = getTokens(input);
+    List<String> ngrams = ngram(tokens);
+
+    explanation.setParsed(transform(input), tokens, ngrams);
+
+    //MATCH AND RANK
+
+    if(snapshot != null) {
+      snapshot.explain(ngrams, explanation);
+    } else {
+      List<String> matchedTokens = getMatchedTokens(input);
+      MatchState state = getMatchState();
+
+      try {
+        collectCandidates(matchedTokens, state);
+
+        for(String token : matchedTokens) {
+          explanation.addHit(token, getPatternIds(token));
+        }
+
+        int[] firstPositions = state.getFirstPositions();
+
+        for(int i = 0; i < state.getCandidateCount(); i++) {
+          int candidate = state.getCandidate(i);
+
+          if(patternStore != null) {
+            explanation.addCandidate(patternStore.getPatternId(candidate), patternStore.isValid(candidate, firstPositions),
+                patternStore.getRank(candidate), patternStore.getMatchedLength(candidate, firstPositions));
+          } else {
+            Pattern pattern = patterns[candidate];
+
+            explanation.addCandidate(pattern.getPatternId(), pattern.isValid(firstPositions),
+                pattern.getRank(), pattern.getMatchedLength(firstPositions));
+          }
+        }
+
+        explanation.setWinnerId(rank(state));
+      } finally {
+        state.clear();
+      }
+    }
+
+    //RESOLVE THE ATTRIBUTES
+
+    String patternId = (explanation.getWinnerId() == null ? defaultId : explanation.getWinnerId());
+
+    if(patternId != null) {
+      Attributes patternAttributes = getAttributes(patternId);
+
+      explanation.setAttributes(patternId, patternAttributes);
+
+      if(patternAttributes != null) {
+        patternAttributes.explain(input, explanation);
+      }
+
+      explanation.setResult(getPatternAttributes(patternId, input));
+    }
+
+    return explanation;
+  }
+
+  //CLASSIFY STAGES, PACKAGE PRIVATE FOR BENCHMARKING
+
+  String transform(String input) throws Exception {
+    String transformed = input;
+
+    for(Transformer transformer : transformers) {
+      transformed = transformer.transform(transformed);
+    }
+
+    return transformed;
+  }
+
+  List<String> tokenize(String transformed) {
+    return TextGlassClient.split(transformed, tokenSeperators);
+  }
+
+  List<String> ngram(List<String> tokens) {
+    List<String> ngramTokenStream = new ArrayList<>();
+
+    for(int i = 0; i < tokens.size(); i++) {
+      String ngram = "";
+      List<String> ngramParts = new ArrayList<>();
+
+      for(int size = ngramConcatSize; size > 0 && i + ngramConcatSize - size < tokens.size(); size--) {
+        ngram += tokens.get(i + ngramConcatSize - size);
+
+        ngramParts.add(0, ngram);
+      }
+
+      ngramTokenStream.addAll(ngramParts);
+
+      ngramParts.clear();
+    }
+
+    return ngramTokenStream;
+  }
+
+  List<String> getMatchedTokens(String input) throws Exception {
+    return getMatchedTokens(input, null);
+  }
+
+  private List<String> getMatchedTokens(String input, ClientMetrics.Recorder metrics) throws Exception {
+    if(automaton != null) {
+      String transformed = transform(input);
+
+      if(metrics != null) {
+        metrics.stage(ClientMetrics.TRANSFORM);
+      }
+
+      return automaton.match(transformed, tokenSeperators, ngramConcatSize);
+    }
+
+    //TOKENIZE THE INPUT
+
+    List<String> tokens = getTokens(input, metrics);
+
+    //HASH THE NGRAMS WITHOUT BUILDING THEM
+
+    if(ngramTable != null) {
+      return ngramTable.match(tokens, ngramConcatSize);
+    }
+
+    //NGRAM THE INPUT
+
+    List<String> ngramTokenStream = ngram(tokens);
+
+    if(metrics != null) {
+      metrics.stage(ClientMetrics.NGRAM);
+    }
+
+    return lookup(ngramTokenStream);
+  }
+
+  List<String> getTokens(String input) throws Exception {
+    return getTokens(input, null);
+  }
+
+  private List<String> getTokens(String input, ClientMetrics.Recorder metrics) throws Exception {
+
+    //FUSED TRANSFORMERS AND TOKENIZER
+
+    if(lexer != null) {
+      List<String> tokens = lexer.tokenize(input);
+
+      if(tokens != null) {
+        if(metrics != null) {
+          metrics.stage(ClientMetrics.TOKENIZE);
+        }
+
+        return tokens;
+      }
+    }
+
+    //TRANFORM THE INPUT
+
+    String transformed = transform(input);
+
+    if(metrics != null) {
+      metrics.stage(ClientMetrics.TRANSFORM);
+    }
+
+    List<String> tokens = tokenize(transformed);
+
+    if(metrics != null) {
+      metrics.stage(ClientMetrics.TOKENIZE);
+    }
+
+    return tokens;
+  }
+
+  List<String> lookup(List<String> ngramTokenStream) {
+    List<String> matchedTokens = new ArrayList<>();
+
+    for(String token : ngramTokenStream) {
+      if(getTokenId(token) >= 0) {
+        matchedTokens.add(token);
+      }
+    }
+
+    return matchedTokens;
+  }
+
+  MatchState getMatchState() {
+    MatchState state = matchStates.get();
+
+    if(state == null || !state.fits(getTokenCount(), patternCount)) {
+      state = new MatchState(getTokenCount(), patternCount);
+      matchStates.set(state);
+    }
+
+    return state;
+  }
+
+  void collectCandidates(List<String> matchedTokens, MatchState state) {
+    if(patternStore != null) {
+      patternStore.collectCandidates(matchedTokens, state);
+
+      return;
+    }
+
+    for(int i = 0; i < matchedTokens.size(); i++) {
+      String token = matchedTokens.get(i);
+      int tokenId = tokenIds.get(token);
+      Pattern[] matched = tokenPatterns[tokenId];
+
+      state.addToken(tokenId, i);
+
+      for(Pattern match : matched) {
+        state.addCandidate(match.getOrdinal());
+      }
+    }
+  }
+
+  //THE WINNING PATTERN ID OR null
+  String rank(MatchState state) {
+    if(patternStore != null) {
+      int winner = patternStore.rank(state);
+
+      return (winner == -1 ? null : patternStore.getPatternId(winner));
+    }
+
+    Pattern winner = null;
+    int[] firstPositions = state.getFirstPositions();
+
+    for(int i = 0; i < state.getCandidateCount(); i++) {
+      Pattern candidate = patterns[state.getCandidate(i)];
+
+      if(candidate.isValid(firstPositions)) {
+        if(winner == null) {
+          winner = candidate;
+        } else if(candidate.getRank() > winner.getRank()) {
+          winner = candidate;
+        } else if(candidate.getRank() == winner.getRank() &&
+            candidate.getMatchedLength(firstPositions) > winner.getMatchedLength(firstPositions)) {
+          winner = candidate;
+        }
+      }
+    }
+
+    return (winner == null ? null : winner.getPatternId());
+  }
+
+  //THE TOKEN ID OR -1
+  private int getTokenId(String token) {
+    if(patternStore != null) {
+      return patternStore.getTokenId(token);
+    }
+
+    Integer tokenId = tokenIds.get(token);
+
+    return (tokenId == null ? -1 : tokenId);
+  }
+
+  private int getTokenCount() {
+    return (patternStore != null ? patternStore.getTokenCount() : tokenIds.size());
+  }
+
+  private Collection<String> getTokens() {
+    return (patternStore != null ? patternStore.getTokens() : tokenIds.keySet());
+  }
+
+  //PATTERN IDS OF A MATCHED TOKEN, IN LOAD ORDER
+  private List<String> getPatternIds(String token) {
+    if(patternStore != null) {
+      return patternStore.getPatternIds(patternStore.getTokenId(token));
+    }
+
+    List<String> patternIds = new ArrayList<>();
+
+    for(Pattern pattern : tokenPatterns[tokenIds.get(token)]) {
+      patternIds.add(pattern.getPatternId());
+    }
+
+    return patternIds;
+  }
+
+  ClassificationResult getPatternAttributes(String patternId, String input) {
+    Attributes patternAttributes = getAttributes(patternId);
+
+    //FOUND ATTRIBUTES, NO ATTRIBUTES RETURNS JUST THE PATTERN ID
+
+    return (patternAttributes != null ?
+        patternAttributes.getAttributes(input) : ClassificationResult.of(patternId));
+  }
+
+  private Attributes getAttributes(String patternId) {
+    if(snapshot != null) {
+      return snapshot.getAttributes(patternId);
+    }
+
+    if(attributeIndex != null) {
+      return attributeIndex.getAttributes(patternId);
+    }
+
+    return attributes.get(patternId);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getVersion() {
+    return version;
+  }
+
+  public String getDefaultId() {
+    return defaultId;
+  }
+
+  public TextGlassClient.Matcher getMatcher() {
+    return matcher;
+  }
+
+  List<String> getTokenSeperators() {
+    return tokenSeperators;
+  }
+
+  int getNgramConcatSize() {
+    return ngramConcatSize;
+  }
+
+  PatternStore getPatternStore() {
+    return patternStore;
+  }
+
+  Map<String, Integer> getTokenIds() {
+    return tokenIds;
+  }
+
+  List<Pattern> getTokenPatterns(int tokenId) {
+    return Collections.unmodifiableList(Arrays.asList(tokenPatterns[tokenId]));
+  }
+}
@@ -0,0 +1,963 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+//COLLECTS A DOMAIN FROM ITS JSON FILES OR A SNAPSHOT, build() FREEZES IT INTO AN IMMUTABLE Domain
+public class DomainBuilder {
+
+  private String domain;
+  private String domainVersion;
+
+  //INPUT PARSING
+  private List<Transformer> transformers;
+  private List<String> tokenSeperators;
+  private int ngramConcatSize;
+
+  //PATTERN MATCHING
+  private final Map<String, Integer> tokenIds;
+  private final List<List<Pattern>> tokenPatterns;
+  private int patternCount;
+  private final Map<String, Attributes> attributes;
+  private final AttributePool pool;
+
+  //COMPACT PATTERNS, BUILT FROM tokenPatterns BY build()
+  private boolean compactPatterns;
+  private PatternStore patternStore;
+
+  //LAZY ATTRIBUTES, REPLACES attributes WHEN SET
+  private boolean lazyAttributes;
+  private AttributeIndex attributeIndex;
+
+  private String defaultId;
+
+  //COMPILED DOMAIN, REPLACES patterns AND attributes WHEN LOADED
+  private DomainSnapshot snapshot;
+
+  //TOKEN MATCHING ENGINE
+  private TextGlassClient.Matcher matcher;
+
+  //LOAD PARALLELISM, 1 LOADS SEQUENTIALLY. THE POOL ONLY LIVES FOR THE LOAD
+  private int parallelism;
+  private ForkJoinPool loadPool;
+
+  //STREAM THE FILES INSTEAD OF PARSING THEM INTO TREES
+  private boolean streaming;
+
+  //SMALLEST PATTERN OR ATTRIBUTE SHARD, SHARDS PER WORKER
+  private final static int SHARD_MIN = 1024;
+  private final static int SHARDS_PER_WORKER = 4;
+
+  public DomainBuilder() {
+    domain = null;
+    domainVersion = null;
+
+    transformers = new ArrayList<>();
+    tokenSeperators = new ArrayList<>();
+    ngramConcatSize = 1;
+
+    tokenIds = new HashMap<>();
+    tokenPatterns = new ArrayList<>();
+    patternCount = 0;
+    attributes = new HashMap<>();
+    pool = new AttributePool();
+
+    compactPatterns = false;
+    patternStore = null;
+
+    lazyAttributes = false;
+    attributeIndex = null;
+
+    defaultId = null;
+
+    snapshot = null;
+
+    matcher = TextGlassClient.Matcher.Ngram;
+
+    parallelism = 1;
+    loadPool = null;
+
+    streaming = false;
+  }
+
+  public DomainBuilder setMatcher(TextGlassClient.Matcher matcher) {
+    this.matcher = matcher;
+
+    return this;
+  }
+
+  public DomainBuilder setParallelism(int parallelism) throws Exception {
+    if(parallelism < 1) {
+      throw new Exception("Invalid load parallelism: " + parallelism);
+    }
+
+    this.parallelism = parallelism;
+
+    return this;
+  }
+
+  public DomainBuilder loadSnapshot(String path) throws Exception {
+
+    if(domain != null || snapshot != null) {
+      throw new Exception("Domain has already been loaded");
+    }
+
+    Main.log("Loading snapshot: " + path, 1);
+
+    DomainSnapshot loaded = DomainSnapshot.map(path);
+
+    transformers = loaded.getTransformers();
+    tokenSeperators = loaded.getTokenSeperators();
+    ngramConcatSize = loaded.getNgramConcatSize();
+    defaultId = loaded.getDefaultId();
+
+    snapshot = loaded;
+
+    domain = loaded.getDomain();
+    domainVersion = loaded.getDomainVersion();
+
+    Main.log("Found snapshot domain: " + domain + ", version: " + domainVersion +
+        ", " + loaded.getPatternCount() + " pattern(s)", 1);
+
+    return this;
+  }
+
+  public DomainBuilder setStreaming(boolean streaming) {
+    this.streaming = streaming;
+
+    return this;
+  }
+
+  //BUILD THE PATTERNS INTO A PatternStore INSTEAD OF Pattern OBJECTS
+  public DomainBuilder setCompactPatterns(boolean compactPatterns) {
+    this.compactPatterns = compactPatterns;
+
+    return this;
+  }
+
+  //ONLY INDEX THE ATTRIBUTES AT LOAD, EACH IS BUILT ON FIRST USE
+  public DomainBuilder setLazyAttributes(boolean lazyAttributes) {
+    this.lazyAttributes = lazyAttributes;
+
+    return this;
+  }
+
+  //PARSE THE FILES CONCURRENTLY, THEN LOAD THEM, OR STREAM THEM ONE AFTER
+  //ANOTHER. A null PATH IS SKIPPED
+  public DomainBuilder load(String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
+    if(streaming && parallelism > 1) {
+      throw new Exception("Streaming load cannot be parallel");
+    }
+
+    if(!lazyAttributes) {
+      return loadPaths(patternFile, patternPatchFile, attributeFile, attributePatchFile);
+    }
+
+    //LOAD THE PATTERNS, THEN INDEX THE ATTRIBUTES OF EVERY FILE IN THE SAME
+    //ORDER THEY ARE LOADED. STREAMED PATTERN FILES ARE INDEXED AS THEY LOAD
+
+    attributeIndex = new AttributeIndex(pool);
+
+    loadPaths(patternFile, patternPatchFile, null, null);
+
+    if(!streaming) {
+      streamFile(patternFile, "pattern", "pattern", false, false);
+
+      if(patternPatchFile != null) {
+        streamFile(patternPatchFile, "patternPatch", "pattern patch", true, false);
+      }
+    }
+
+    if(attributeFile != null) {
+      streamFile(attributeFile, "attribute", "attribute", false, false);
+    }
+
+    if(attributePatchFile != null) {
+      streamFile(attributePatchFile, "attributePatch", "attribute patch", false, false);
+    }
+
+    attributeIndex.finish();
+
+    Main.log(attributeIndex.toString(), 1);
+
+    return this;
+  }
+
+  private DomainBuilder loadPaths(String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
+    if(streaming) {
+      return stream(patternFile, patternPatchFile, attributeFile, attributePatchFile);
+    }
+
+    if(parallelism == 1) {
+      return loadFiles(loadJson(patternFile), loadJson(patternPatchFile),
+          loadJson(attributeFile), loadJson(attributePatchFile));
+    }
+
+    return runParallel(() -> {
+      Future<JsonFile> pattern = loadPool.submit(() -> loadJson(patternFile));
+      Future<JsonFile> patternPatch = loadPool.submit(() -> loadJson(patternPatchFile));
+      Future<JsonFile> attribute = loadPool.submit(() -> loadJson(attributeFile));
+      Future<JsonFile> attributePatch = loadPool.submit(() -> loadJson(attributePatchFile));
+
+      return loadFiles(join(pattern), join(patternPatch), join(attribute), join(attributePatch));
+    });
+  }
+
+  public DomainBuilder load(JsonFile patternFile, JsonFile patternPatchFile,
+      JsonFile attributeFile, JsonFile attributePatchFile) throws Exception
+  {
+    if(lazyAttributes) {
+      throw new Exception("Lazy attributes require the domain file paths");
+    }
+
+    if(parallelism == 1) {
+      return loadFiles(patternFile, patternPatchFile, attributeFile, attributePatchFile);
+    }
+
+    return runParallel(() -> loadFiles(patternFile, patternPatchFile, attributeFile, attributePatchFile));
+  }
+
+  private DomainBuilder runParallel(Callable<DomainBuilder> load) throws Exception {
+    if(loadPool != null) {
+      throw new Exception("Domain is already loading");
+    }
+
+    loadPool = new ForkJoinPool(parallelism);
+
+    try {
+      return load.call();
+    } finally {
+      loadPool.shutdown();
+      loadPool = null;
+    }
+  }
+
+  private DomainBuilder loadFiles(JsonFile patternFile, JsonFile patternPatchFile,
+      JsonFile attributeFile, JsonFile attributePatchFile) throws Exception
+  {
+
+    if(domain != null || snapshot != null) {
+      throw new Exception("Domain has already been loaded");
+    }
+
+    //GET THE DOMAIN, THE OTHER FILES MUST MATCH IT
+
+    checkFile(patternFile, "pattern", "pattern");
+
+    if(patternPatchFile != null) {
+      checkFile(patternPatchFile, "patternPatch", "pattern patch");
+    }
+
+    if(attributeFile != null) {
+      checkFile(attributeFile, "attribute", "attribute");
+    }
+
+    if(attributePatchFile != null) {
+      checkFile(attributePatchFile, "attributePatch", "attribute patch");
+    }
+
+    //LOAD THE FILES
+
+    loadPatterns(patternFile, false);
+
+    if(patternPatchFile != null) {
+      loadPatterns(patternPatchFile, true);
+    }
+
+    if(attributeFile != null) {
+      loadAttributes(attributeFile);
+    }
+
+    if(attributePatchFile != null) {
+      loadAttributes(attributePatchFile);
+    }
+
+    resolveAttributes();
+
+    return this;
+  }
+
+  //EACH FILE IS READ WITH A JsonParser AND ITS PATTERNS AND ATTRIBUTES ARE BUILT
+  //AS THEY ARE READ, ONLY ONE ENTRY IS EVER HELD AS A TREE. A FILE'S HEADER IS
+  //CHECKED BEFORE ITS FIRST SECTION IF IT COMES FIRST, OTHERWISE AT ITS END
+  private DomainBuilder stream(String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
+
+    if(domain != null || snapshot != null) {
+      throw new Exception("Domain has already been loaded");
+    }
+
+    streamFile(patternFile, "pattern", "pattern", false, true);
+
+    if(patternPatchFile != null) {
+      streamFile(patternPatchFile, "patternPatch", "pattern patch", true, true);
+    }
+
+    if(attributeFile != null) {
+      streamFile(attributeFile, "attribute", "attribute", false, true);
+    }
+
+    if(attributePatchFile != null) {
+      streamFile(attributePatchFile, "attributePatch", "attribute patch", false, true);
+    }
+
+    resolveAttributes();
+
+    return this;
+  }
+
+  //patterns IS FALSE WHEN ONLY INDEXING A FILE'S ATTRIBUTES
+  private void streamFile(String path, String type, String description, boolean patch,
+      boolean patterns) throws Exception
+  {
+    Main.log((patterns ? "Streaming " : "Indexing ") + description + " file: " + path, 1);
+
+    boolean patternFile = type.startsWith("pattern");
+    ObjectNode header = JsonNodeFactory.instance.objectNode();
+    boolean checked = false;
+
+    try(JsonParser parser = new ObjectMapper().getJsonFactory().createJsonParser(JsonFile.open(path))) {
+      if(parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new Exception("JsonFile is not an object");
+      }
+
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if(token.isScalarValue()) {
+          header.put(field, parser.readValueAsTree());
+
+          continue;
+        }
+
+        boolean section = (token == JsonToken.START_OBJECT && (field.equals("attributes") ||
+            (patterns && patternFile && (field.equals("inputParser") || field.equals("patternSet")))));
+
+        if(!section) {
+          parser.skipChildren();
+
+          continue;
+        }
+
+        if(!checked && header.has("TextGlassSpecVersion") && header.has("type") &&
+            header.has("domain") && header.has("domainVersion"))
+        {
+          checkFile(new JsonFile(header), type, description);
+          checked = true;
+        }
+
+        if(field.equals("inputParser")) {
+          loadInputParser(parser.readValueAsTree(), patch);
+        } else if(field.equals("patternSet")) {
+          streamPatternSet(parser);
+        } else if(attributeIndex != null) {
+          indexAttributes(parser, path);
+        } else {
+          streamAttributes(parser);
+        }
+      }
+    }
+
+    if(!checked) {
+      checkFile(new JsonFile(header), type, description);
+    }
+  }
+
+  //BUILD EACH PATTERN AS IT IS READ, THE OTHER patternSet FIELDS ARE KEPT
+  private void streamPatternSet(JsonParser parser) throws Exception {
+    ObjectNode patternSet = JsonNodeFactory.instance.objectNode();
+    int patternCount = 0;
+
+    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+
+      if(field.equals("patterns") && token == JsonToken.START_ARRAY) {
+        while(parser.nextToken() != JsonToken.END_ARRAY) {
+          addPattern(parser.readValueAsTree());
+
+          patternCount++;
+        }
+      } else {
+        patternSet.put(field, parser.readValueAsTree());
+      }
+    }
+
+    loadDefaultId(patternSet);
+
+    checkPatterns(patternCount);
+  }
+
+  private void streamAttributes(JsonParser parser) throws Exception {
+    int attributeCount = 0;
+
+    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+      String patternId = parser.getCurrentName();
+
+      parser.nextToken();
+
+      addAttributes(loadAttributes(patternId, parser.readValueAsTree()));
+
+      attributeCount++;
+    }
+
+    checkAttributes(attributeCount);
+  }
+
+  //RECORD WHERE EACH ATTRIBUTE OBJECT IS, ONLY ITS patternId IS KEPT
+  private void indexAttributes(JsonParser parser, String path) throws Exception {
+    int file = attributeIndex.addFile(path);
+    int attributeCount = 0;
+
+    while(parser.nextToken() == JsonToken.FIELD_NAME) {
+      String patternId = parser.getCurrentName();
+
+      if(patternId.isEmpty()) {
+        throw new Exception("Empty patternId not allowed");
+      }
+
+      if(parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new Exception("Invalid attribute map for: " + patternId);
+      }
+
+      //A UTF-8 PARSER COUNTS BYTES AS ITS CHAR OFFSET. A VALUE'S TOKEN LOCATION IS
+      //ITS FIELD NAME, THE CURRENT LOCATION IS THE '{'
+
+      long start = parser.getCurrentLocation().getCharOffset();
+      String parentId = null;
+
+      //ONLY parentId IS READ, THE REST IS SKIPPED
+
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if(field.equals("parentId")) {
+          parentId = (token.isScalarValue() && !parser.getText().isEmpty() ? pool.intern(parser.getText()) : null);
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+      long end = parser.getTokenLocation().getCharOffset() + 1;
+
+      attributeIndex.put(pool.intern(patternId), parentId, file, start, end);
+
+      attributeCount++;
+    }
+
+    checkAttributes(attributeCount);
+  }
+
+  //THE PATTERN FILE SETS THE DOMAIN AND ITS VERSION
+  private void checkFile(JsonFile file, String type, String description) throws Exception {
+    if(!file.getType().equals(type)) {
+      throw new Exception("Unknown " + description + " file type: " + file.getType());
+    }
+
+    if(type.equals("pattern")) {
+      domain = file.getDomain();
+      domainVersion = file.getDomainVersion();
+
+      return;
+    }
+
+    if(!domain.equals(file.getDomain())) {
+      throw new Exception("Domains do not match: " + domain + " != " + file.getDomain());
+    }
+
+    if(!domainVersion.equals(file.getDomainVersion())) {
+      throw new Exception("Versions do not match: " + domainVersion + " != " + file.getDomainVersion());
+    }
+  }
+
+  private void loadPatterns(JsonFile patternFile, boolean patch) throws Exception {
+    Main.log("Loading pattern domain: " + patternFile.getDomain() + ", version: " +
+        patternFile.getDomainVersion() + (patch ? ", patch" : ""), 1);
+
+    //INPUT PARSER
+
+    if(JsonFile.get(patternFile.getJsonNode(), "inputParser").isObject()) {
+      loadInputParser(patternFile.getJsonNode().get("inputParser"), patch);
+    }
+
+    //PATTERN SET
+
+    if(JsonFile.get(patternFile.getJsonNode(), "patternSet").isObject()) {
+      JsonNode patternSet = patternFile.getJsonNode().get("patternSet");
+
+      loadDefaultId(patternSet);
+
+      //PATTERNS
+
+      int patternCount = 0;
+
+      if(JsonFile.get(patternSet, "patterns").isArray() && loadPool != null) {
+        patternCount = loadPatternShards(patternSet.get("patterns"));
+      } else if(JsonFile.get(patternSet, "patterns").isArray()) {
+        for(int i = 0; i < patternSet.get("patterns").size(); i++) {
+          addPattern(patternSet.get("patterns").get(i));
+
+          patternCount++;
+        }
+      }
+
+      checkPatterns(patternCount);
+    }
+
+    //OPTIONAL ATTRIBUTES IN PATTERN FILE, INDEXED SEPARATELY WHEN LAZY
+    
+    if(JsonFile.get(patternFile.getJsonNode(), "attributes").isObject() && attributeIndex == null) {
+      loadAttributes(patternFile);
+    }
+  }
+
+  private void loadInputParser(JsonNode inputParser, boolean patch) throws Exception {
+
+    //TRANSFORMERS
+
+    if(JsonFile.get(inputParser, "transformers").isArray()) {
+      if(patch) {
+        transformers = new ArrayList<>();
+      }
+
+      for(int i = 0; i < inputParser.get("transformers").size(); i++) {
+        JsonNode transformerNode = inputParser.get("transformers").get(i);
+
+        Transformer transformer = TextGlassClient.getTransformer(transformerNode);
+
+        transformers.add(transformer);
+
+        Main.log("Found transformer: " + transformer, 2);
+      }
+    }
+
+    Main.log("Found " + transformers.size() + " transformer(s)", 1);
+
+    //TOKEN SEPERATORS
+
+    if(JsonFile.get(inputParser, "tokenSeperators").isArray()) {
+      if(patch) {
+        tokenSeperators = new ArrayList<>();
+      }
+      
+      for(int i = 0; i < inputParser.get("tokenSeperators").size(); i++) {
+        JsonNode tokenSeperatorNode = inputParser.get("tokenSeperators").get(i);
+
+        if(tokenSeperatorNode.asText().isEmpty()) {
+          throw new Exception("Empty tokenSeperator not allowed");
+        }
+
+        String tokenSeperator = tokenSeperatorNode.asText();
+
+        tokenSeperators.add(tokenSeperator);
+
+        Main.log("Found tokenSeperator: '" + tokenSeperator + "'", 2);
+      }
+
+      Main.log("Found " + tokenSeperators.size() + " tokenSeperator(s)", 1);
+    }
+
+    //NGRAM SIZE
+
+    if(inputParser.get("ngramConcatSize") != null) {
+      String ngramConcatSizeStr = inputParser.get("ngramConcatSize").asText();
+      ngramConcatSize = Integer.parseInt(ngramConcatSizeStr);
+
+      if(ngramConcatSize < 1) {
+        throw new Exception("Invalid value of ngramConcatSize: " + ngramConcatSize);
+      }
+
+      Main.log("Found ngramConcatSize: " + ngramConcatSize, 2);
+    }
+  }
+
+  private void loadDefaultId(JsonNode patternSet) {
+    if(!JsonFile.empty(patternSet, "defaultId")) {
+      defaultId = patternSet.get("defaultId").asText();
+
+      Main.log("Found defaultId: " + defaultId, 2);
+    }
+  }
+
+  private void addPattern(JsonNode patternNode) throws Exception {
+    Pattern pattern = new Pattern(patternNode, this.patternCount++, tokenIds);
+
+    for(int tokenId : pattern.getTokenIds()) {
+      if(tokenId == tokenPatterns.size()) {
+        tokenPatterns.add(new ArrayList<Pattern>());
+      }
+
+      tokenPatterns.get(tokenId).add(pattern);
+    }
+
+    Main.log(pattern.toStringFull(), 3);
+  }
+
+  private void checkPatterns(int patternCount) throws Exception {
+    if(patternCount == 0 && defaultId == null) {
+      throw new Exception("No patterns found");
+    }
+
+    Main.log("Found " + patternCount + " pattern(s), total: " + tokenIds.size(), 1);
+  }
+
+  private void loadAttributes(JsonFile attributeFile) throws Exception {
+    Main.log("Loading attributes: " + attributeFile.getDomain() +
+        ", version: " + attributeFile.getDomainVersion(), 1);
+
+    //ATTRIBUTES
+
+    int attributeCount = 0;
+
+    if(JsonFile.get(attributeFile.getJsonNode(), "attributes").isObject() && loadPool != null) {
+      attributeCount = loadAttributeShards(attributeFile.getJsonNode().get("attributes"));
+    } else if(JsonFile.get(attributeFile.getJsonNode(), "attributes").isObject()) {
+      JsonNode attributesJson = attributeFile.getJsonNode().get("attributes");
+      for(Iterator<String> i = attributesJson.getFieldNames(); i.hasNext();) {
+        String patternId = i.next();
+
+        addAttributes(loadAttributes(patternId, attributesJson.get(patternId)));
+
+        attributeCount++;
+      }
+    }
+
+    checkAttributes(attributeCount);
+  }
+
+  private void addAttributes(Attributes patternAttributes) {
+    Main.log(patternAttributes.toString(), 3);
+
+    attributes.put(patternAttributes.getPatternId(), patternAttributes);
+  }
+
+  private void checkAttributes(int attributeCount) throws Exception {
+    if(attributeCount == 0) {
+      throw new Exception("No attributes found");
+    }
+
+    Main.log("Found " + attributeCount + " attributes(s), total: " +
+        (attributeIndex != null ? attributeIndex.size() : attributes.size()), 1);
+  }
+
+  //BUILD THE PATTERNS IN SHARDS, EACH WITH ITS OWN TOKEN IDS AND TOKEN INDEX. THE
+  //SHARDS ARE MERGED IN FILE ORDER SO TOKEN IDS, ORDINALS AND THE PATTERN ORDER
+  //PER TOKEN COME OUT EXACTLY AS A SEQUENTIAL LOAD ASSIGNS THEM
+  private int loadPatternShards(JsonNode patterns) throws Exception {
+    int shardSize = getShardSize(patterns.size());
+    List<Future<PatternShard>> shards = new ArrayList<>();
+
+    for(int start = 0; start < patterns.size(); start += shardSize) {
+      PatternShard shard = new PatternShard(patterns, start, Math.min(start + shardSize, patterns.size()),
+          this.patternCount + start);
+
+      shards.add(loadPool.submit(shard));
+    }
+
+    for(Future<PatternShard> future : shards) {
+      PatternShard shard = join(future);
+
+      //SHARD TOKEN ID TO DOMAIN TOKEN ID, NEW TOKENS GET THE NEXT ID
+
+      int[] shardTokenIds = new int[shard.tokens.size()];
+
+      for(int i = 0; i < shardTokenIds.length; i++) {
+        Integer tokenId = tokenIds.get(shard.tokens.get(i));
+
+        if(tokenId == null) {
+          tokenId = tokenIds.size();
+          tokenIds.put(shard.tokens.get(i), tokenId);
+        }
+
+        shardTokenIds[i] = tokenId;
+      }
+
+      //DOMAIN COPIES OF THE SHARD PATTERNS, BY SHARD POSITION
+
+      Pattern[] remapped = new Pattern[shard.patterns.size()];
+
+      for(int i = 0; i < remapped.length; i++) {
+        remapped[i] = new Pattern(shard.patterns.get(i), shardTokenIds);
+
+        Main.log(remapped[i].toStringFull(), 3);
+      }
+
+      for(int i = 0; i < shardTokenIds.length; i++) {
+        if(shardTokenIds[i] == tokenPatterns.size()) {
+          tokenPatterns.add(new ArrayList<Pattern>());
+        }
+
+        List<Pattern> domainPatterns = tokenPatterns.get(shardTokenIds[i]);
+
+        for(Pattern pattern : shard.tokenPatterns.get(i)) {
+          domainPatterns.add(remapped[pattern.getOrdinal() - shard.firstOrdinal]);
+        }
+      }
+    }
+
+    this.patternCount += patterns.size();
+
+    return patterns.size();
+  }
+
+  //BUILD THE ATTRIBUTES IN SHARDS, THEN ADD THEM IN FILE ORDER SO LATER ENTRIES
+  //AND PATCHES OVERRIDE EARLIER ONES AS THEY DO SEQUENTIALLY
+  private int loadAttributeShards(JsonNode attributesJson) throws Exception {
+    List<String> patternIds = new ArrayList<>();
+
+    for(Iterator<String> i = attributesJson.getFieldNames(); i.hasNext();) {
+      patternIds.add(i.next());
+    }
+
+    int shardSize = getShardSize(patternIds.size());
+    List<Future<Attributes[]>> shards = new ArrayList<>();
+
+    for(int start = 0; start < patternIds.size(); start += shardSize) {
+      List<String> shardIds = patternIds.subList(start, Math.min(start + shardSize, patternIds.size()));
+
+      shards.add(loadPool.submit(() -> {
+        Attributes[] shard = new Attributes[shardIds.size()];
+
+        for(int i = 0; i < shard.length; i++) {
+          shard[i] = loadAttributes(shardIds.get(i), attributesJson.get(shardIds.get(i)));
+        }
+
+        return shard;
+      }));
+    }
+
+    for(Future<Attributes[]> future : shards) {
+      for(Attributes patternAttributes : join(future)) {
+        addAttributes(patternAttributes);
+      }
+    }
+
+    return patternIds.size();
+  }
+
+  private Attributes loadAttributes(String patternId, JsonNode attributeNode) throws Exception {
+    if(patternId.isEmpty()) {
+      throw new Exception("Empty patternId not allowed");
+    }
+
+    if(!attributeNode.isObject()) {
+      throw new Exception("Invalid attribute map for: " + patternId);
+    }
+
+    return new Attributes(patternId, attributeNode, pool);
+  }
+
+  private int getShardSize(int size) {
+    return Math.max(SHARD_MIN, (size + parallelism * SHARDS_PER_WORKER - 1) / (parallelism * SHARDS_PER_WORKER));
+  }
+
+  //WAIT FOR A LOAD TASK, RETHROWING WHAT IT THREW. THE POOL WRAPS A CHECKED
+  //EXCEPTION IN RuntimeExceptionS
+  private static <T> T join(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch(ExecutionException e) {
+      Throwable cause = e.getCause();
+
+      while(cause instanceof RuntimeException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+
+      if(cause instanceof Exception) {
+        throw (Exception)cause;
+      }
+
+      throw e;
+    }
+  }
+
+  private static JsonFile loadJson(String path) throws Exception {
+    return (path == null ? null : new JsonFile(path));
+  }
+
+  //A RUN OF PATTERNS WITH SHARD LOCAL TOKEN IDS, IN FIRST SEEN ORDER
+  private static class PatternShard implements Callable<PatternShard> {
+    private final JsonNode patternNodes;
+    private final int start;
+    private final int end;
+    private final int firstOrdinal;
+
+    private final List<Pattern> patterns;
+    private final List<String> tokens;
+    private final List<List<Pattern>> tokenPatterns;
+
+    PatternShard(JsonNode patternNodes, int start, int end, int firstOrdinal) {
+      this.patternNodes = patternNodes;
+      this.start = start;
+      this.end = end;
+      this.firstOrdinal = firstOrdinal;
+
+      patterns = new ArrayList<>(end - start);
+      tokens = new ArrayList<>();
+      tokenPatterns = new ArrayList<>();
+    }
+
+    @Override
+    public PatternShard call() throws Exception {
+      Map<String, Integer> shardTokenIds = new HashMap<>();
+
+      for(int i = start; i < end; i++) {
+        Pattern pattern = new Pattern(patternNodes.get(i), firstOrdinal + i - start, shardTokenIds);
+
+        for(int j = 0; j < pattern.getTokenIds().length; j++) {
+          int tokenId = pattern.getTokenIds()[j];
+
+          if(tokenId == tokenPatterns.size()) {
+            tokenPatterns.add(new ArrayList<Pattern>());
+            tokens.add(pattern.getPatternTokens().get(j));
+          }
+
+          tokenPatterns.get(tokenId).add(pattern);
+        }
+
+        patterns.add(pattern);
+      }
+
+      return this;
+    }
+  }
+
+  //FLATTEN parentId INHERITANCE ONCE ALL THE ATTRIBUTES ARE LOADED
+  private void resolveAttributes() throws Exception {
+    Map<String, Attributes> resolved = new HashMap<>();
+    int inherited = 0;
+
+    for(Attributes patternAttributes : attributes.values()) {
+      Attributes flattened = Attributes.resolve(patternAttributes, attributes::get, pool);
+
+      if(flattened != patternAttributes) {
+        inherited++;
+      }
+
+      resolved.put(flattened.getPatternId(), flattened);
+    }
+
+    attributes.putAll(resolved);
+
+    if(inherited > 0) {
+      Main.log("Resolved " + inherited + " inherited attribute(s)", 1);
+    }
+
+    Main.log(pool.toString(), 2);
+  }
+
+  public Domain build() throws Exception {
+    if(domain == null) {
+      throw new Exception("No domain has been loaded");
+    }
+
+    if(!matcher.equals(TextGlassClient.Matcher.Ngram) && snapshot != null) {
+      throw new Exception("Matcher not supported for snapshots: " + matcher);
+    }
+
+    if(compactPatterns && snapshot != null) {
+      throw new Exception("Compact patterns not supported for snapshots");
+    }
+
+    if(compactPatterns && patternStore == null) {
+      patternStore = new PatternStore(tokenIds, tokenPatterns, patternCount);
+
+      Main.log(patternStore.toString(), 1);
+    }
+
+    return new Domain(this);
+  }
+
+  String getDomain() {
+    return domain;
+  }
+
+  String getDomainVersion() {
+    return domainVersion;
+  }
+
+  List<Transformer> getTransformers() {
+    return transformers;
+  }
+
+  List<String> getTokenSeperators() {
+    return tokenSeperators;
+  }
+
+  int getNgramConcatSize() {
+    return ngramConcatSize;
+  }
+
+  Map<String, Integer> getTokenIds() {
+    return tokenIds;
+  }
+
+  List<List<Pattern>> getTokenPatterns() {
+    return tokenPatterns;
+  }
+
+  int getPatternCount() {
+    return patternCount;
+  }
+
+  Map<String, Attributes> getAttributes() {
+    return attributes;
+  }
+
+  PatternStore getPatternStore() {
+    return patternStore;
+  }
+
+  AttributeIndex getAttributeIndex() {
+    return attributeIndex;
+  }
+
+  String getDefaultId() {
+    return defaultId;
+  }
+
+  DomainSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  TextGlassClient.Matcher getMatcher() {
+    return matcher;
+  }
+}
@@ -0,0 +1,714 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+
+//GENERATES A SYNTHETIC DOMAIN OF ANY SIZE: PATTERN, ATTRIBUTE AND TEST FILES.
+//EVERY PATTERN HAS ITS OWN ANCHOR TOKEN. SimpleAnd AND SimpleOrderedAnd PATTERNS
+//ADD SHARED TOKENS DRAWN FROM A ZIPFIAN DISTRIBUTION, SO A FEW SHARED TOKENS
+//HAVE A HUGE FAN-OUT. ONLY ANCHORS MAKE A PATTERN VALID AND TEST INPUTS ONLY ADD
+//WEAKER DECOY PATTERNS, SO EVERY TEST'S WINNER IS KNOWN WITHOUT CLASSIFYING
+public class DomainGenerator {
+
+  public final static String DOMAIN = "synthetic";
+  public final static String DEFAULT_ID = "unknown";
+
+  //PATTERN TYPES
+  private final static int SIMPLE = 0;
+  private final static int SIMPLE_AND = 1;
+  private final static int SIMPLE_ORDERED_AND = 2;
+
+  private final static String[] PATTERN_TYPES = {"Simple", "SimpleAnd", "SimpleOrderedAnd"};
+
+  //RANK TYPES
+  private final static int STRONG = 0;
+  private final static int WEAK = 1;
+  private final static int NONE = 2;
+
+  private final static String[] RANK_TYPES = {"Strong", "Weak", "None"};
+
+  //ATTRIBUTE TRANSFORMERS, THE FAILING ONE READS A NON NUMBER AND FALLS BACK
+  private final static int NO_TRANSFORMER = 0;
+  private final static int NUMBER = 1;
+  private final static int NUMBER_DEFAULT = 2;
+
+  private final static int PARENT_FAN_IN = 16;
+  private final static int MAX_DECOYS = 2;
+
+  private int patternCount = 1000;
+  private int testCount = 1000;
+  private int sharedTokens = 0;
+  private double zipfExponent = 1.0;
+  private int maxTokens = 4;
+  private double[] patternTypeMix = {1, 1, 1};
+  private int ngramConcatSize = 2;
+  private int parentDepth = 2;
+  private int inputLength = 16;
+  private double transformerRatio = 0.1;
+  private long seed = 1;
+
+  //GENERATED PATTERNS, ONE ENTRY PER PATTERN
+  private byte[] types;
+  private byte[] rankTypes;
+  private short[] rankValues;
+  private boolean[] ngramAnchors;
+  private int[][] shared;
+  private byte[] attributeTransformers;
+  private int[] simplePatterns;
+  private int simpleCount;
+
+  private double[] zipfCdf;
+  private int[] parentCounts;
+
+  public static void main(String args[]) throws Exception {
+    DomainGenerator generator = new DomainGenerator();
+    String dir = null;
+
+    for(int i = 0; i < args.length; i++) {
+      String option = args[i];
+
+      if(option.equals("-h")) {
+        printHelp();
+        return;
+      } else if(option.equals("-o")) {
+        dir = Main.getParam(args, ++i, "-o directory parameter missing");
+      } else if(option.equals("-pc")) {
+        generator.setPatternCount(Main.getInt(Main.getParam(args, ++i, "-pc count missing"), "Invalid pattern count: "));
+      } else if(option.equals("-tc")) {
+        generator.setTestCount(Main.getInt(Main.getParam(args, ++i, "-tc count missing"), "Invalid test count: "));
+      } else if(option.equals("-st")) {
+        generator.setSharedTokens(Main.getInt(Main.getParam(args, ++i, "-st count missing"), "Invalid shared token count: "));
+      } else if(option.equals("-zs")) {
+        generator.setZipfExponent(Main.getDouble(Main.getParam(args, ++i, "-zs exponent missing"), "Invalid zipf exponent: "));
+      } else if(option.equals("-mt")) {
+        generator.setMaxTokens(Main.getInt(Main.getParam(args, ++i, "-mt count missing"), "Invalid max tokens: "));
+      } else if(option.equals("-pt")) {
+        generator.setPatternTypeMix(Main.getParam(args, ++i, "-pt mix missing"));
+      } else if(option.equals("-n")) {
+        generator.setNgramConcatSize(Main.getInt(Main.getParam(args, ++i, "-n size missing"), "Invalid ngramConcatSize: "));
+      } else if(option.equals("-pd")) {
+        generator.setParentDepth(Main.getInt(Main.getParam(args, ++i, "-pd depth missing"), "Invalid parent depth: "));
+      } else if(option.equals("-il")) {
+        generator.setInputLength(Main.getInt(Main.getParam(args, ++i, "-il length missing"), "Invalid input length: "));
+      } else if(option.equals("-tr")) {
+        generator.setTransformerRatio(Main.getDouble(Main.getParam(args, ++i, "-tr ratio missing"), "Invalid transformer ratio: "));
+      } else if(option.equals("-sd")) {
+        generator.setSeed(Main.getLong(Main.getParam(args, ++i, "-sd seed missing"), "Invalid seed: "));
+      } else {
+        printHelp();
+        throw new Exception("unknown option: " + option);
+      }
+    }
+
+    if(dir == null) {
+      printHelp();
+      throw new Exception("Output directory required");
+    }
+
+    long start = System.nanoTime();
+
+    generator.generate(dir);
+
+    Main.log("Generate time: " + LatencyHistogram.format(System.nanoTime() - start), 0);
+  }
+
+  private static void printHelp() {
+    Main.log("Usage: " + DomainGenerator.class.getName() + " [OPTIONS]\n", 0);
+    Main.log("  -o <dir>             output directory (REQUIRED)", 0);
+    Main.log("  -pc <count>          patterns, default: 1000", 0);
+    Main.log("  -tc <count>          tests, default: 1000", 0);
+    Main.log("  -st <count>          shared tokens, default: 1 per 10 patterns", 0);
+    Main.log("  -zs <exponent>       zipf exponent of the shared tokens, default: 1.0", 0);
+    Main.log("  -mt <count>          max patternTokens of an And pattern, default: 4", 0);
+    Main.log("  -pt <mix>            patternType weights, default: Simple:1,SimpleAnd:1,SimpleOrderedAnd:1", 0);
+    Main.log("  -n <size>            ngramConcatSize, default: 2", 0);
+    Main.log("  -pd <depth>          attribute parent depth, default: 2", 0);
+    Main.log("  -il <words>          test input length, default: 16", 0);
+    Main.log("  -tr <ratio>          share of patterns with an attributeTransformer, default: 0.1", 0);
+    Main.log("  -sd <seed>           random seed, default: 1", 0);
+    Main.log("  -h                   print help", 0);
+    Main.log("", 0);
+  }
+
+  public DomainGenerator setPatternCount(int patternCount) throws Exception {
+    if(patternCount < 1) {
+      throw new Exception("Invalid pattern count: " + patternCount);
+    }
+
+    this.patternCount = patternCount;
+
+    return this;
+  }
+
+  public DomainGenerator setTestCount(int testCount) throws Exception {
+    if(testCount < 0) {
+      throw new Exception("Invalid test count: " + testCount);
+    }
+
+    this.testCount = testCount;
+
+    return this;
+  }
+
+  //0 IS ONE SHARED TOKEN PER 10 PATTERNS
+  public DomainGenerator setSharedTokens(int sharedTokens) throws Exception {
+    if(sharedTokens < 0) {
+      throw new Exception("Invalid shared token count: " + sharedTokens);
+    }
+
+    this.sharedTokens = sharedTokens;
+
+    return this;
+  }
+
+  public DomainGenerator setZipfExponent(double zipfExponent) throws Exception {
+    if(zipfExponent < 0) {
+      throw new Exception("Invalid zipf exponent: " + zipfExponent);
+    }
+
+    this.zipfExponent = zipfExponent;
+
+    return this;
+  }
+
+  //MOST patternTokens OF A SimpleAnd OR SimpleOrderedAnd PATTERN
+  public DomainGenerator setMaxTokens(int maxTokens) throws Exception {
+    if(maxTokens < 2) {
+      throw new Exception("Invalid max tokens: " + maxTokens);
+    }
+
+    this.maxTokens = maxTokens;
+
+    return this;
+  }
+
+  //patternType WEIGHTS, "Simple:2,SimpleAnd:1,SimpleOrderedAnd:1"
+  public DomainGenerator setPatternTypeMix(String mix) throws Exception {
+    double[] weights = new double[PATTERN_TYPES.length];
+
+    for(String part : mix.split(",")) {
+      String[] typeWeight = part.split(":");
+      int type = Arrays.asList(PATTERN_TYPES).indexOf(typeWeight[0].trim());
+
+      if(type < 0 || typeWeight.length != 2) {
+        throw new Exception("Invalid patternType mix: " + mix);
+      }
+
+      weights[type] = Double.parseDouble(typeWeight[1].trim());
+
+      if(weights[type] < 0) {
+        throw new Exception("Invalid patternType mix: " + mix);
+      }
+    }
+
+    if(weights[SIMPLE] + weights[SIMPLE_AND] + weights[SIMPLE_ORDERED_AND] <= 0) {
+      throw new Exception("Invalid patternType mix: " + mix);
+    }
+
+    patternTypeMix = weights;
+
+    return this;
+  }
+
+  public DomainGenerator setNgramConcatSize(int ngramConcatSize) throws Exception {
+    if(ngramConcatSize < 1) {
+      throw new Exception("Invalid ngramConcatSize: " + ngramConcatSize);
+    }
+
+    this.ngramConcatSize = ngramConcatSize;
+
+    return this;
+  }
+
+  public DomainGenerator setParentDepth(int parentDepth) throws Exception {
+    if(parentDepth < 0) {
+      throw new Exception("Invalid parent depth: " + parentDepth);
+    }
+
+    this.parentDepth = parentDepth;
+
+    return this;
+  }
+
+  //WORDS PER TEST INPUT, THE WINNER'S TOKENS AND DECOYS MAY MAKE IT LONGER
+  public DomainGenerator setInputLength(int inputLength) throws Exception {
+    if(inputLength < 1) {
+      throw new Exception("Invalid input length: " + inputLength);
+    }
+
+    this.inputLength = inputLength;
+
+    return this;
+  }
+
+  //SHARE OF PATTERNS WITH AN attributeTransformer
+  public DomainGenerator setTransformerRatio(double transformerRatio) throws Exception {
+    if(transformerRatio < 0 || transformerRatio > 1) {
+      throw new Exception("Invalid transformer ratio: " + transformerRatio);
+    }
+
+    this.transformerRatio = transformerRatio;
+
+    return this;
+  }
+
+  public DomainGenerator setSeed(long seed) {
+    this.seed = seed;
+
+    return this;
+  }
+
+  //WRITES patterns.json, attributes.json AND test.json TO dir
+  public void generate(String dir) throws Exception {
+    File out = new File(dir);
+
+    if(!out.isDirectory() && !out.mkdirs()) {
+      throw new Exception("Cannot create domain directory: " + dir);
+    }
+
+    Random random = new Random(seed);
+
+    buildPatterns(random);
+
+    writePatterns(new File(out, "patterns.json"));
+    writeAttributes(new File(out, "attributes.json"));
+    writeTests(new File(out, "test.json"), random);
+
+    Main.log("Generated domain: " + dir + ", " + patternCount + " pattern(s), " + simpleCount + " Simple, " +
+        zipfCdf.length + " shared token(s), " + testCount + " test(s)", 1);
+  }
+
+  private void buildPatterns(Random random) {
+    int vocabulary = (sharedTokens > 0 ? sharedTokens : Math.max(1, patternCount / 10));
+
+    //ZIPFIAN CDF OVER THE SHARED TOKENS, TOKEN 0 IS THE MOST COMMON
+
+    zipfCdf = new double[vocabulary];
+
+    double sum = 0;
+
+    for(int i = 0; i < vocabulary; i++) {
+      sum += 1 / Math.pow(i + 1, zipfExponent);
+      zipfCdf[i] = sum;
+    }
+
+    for(int i = 0; i < vocabulary; i++) {
+      zipfCdf[i] /= sum;
+    }
+
+    //PARENT GROUPS PER LEVEL
+
+    parentCounts = new int[parentDepth];
+
+    for(int level = 0, count = patternCount; level < parentDepth; level++) {
+      count = Math.max(1, (count + PARENT_FAN_IN - 1) / PARENT_FAN_IN);
+      parentCounts[level] = count;
+    }
+
+    //PATTERNS
+
+    types = new byte[patternCount];
+    rankTypes = new byte[patternCount];
+    rankValues = new short[patternCount];
+    ngramAnchors = new boolean[patternCount];
+    shared = new int[patternCount][];
+    attributeTransformers = new byte[patternCount];
+    simplePatterns = new int[patternCount];
+    simpleCount = 0;
+
+    double mixTotal = patternTypeMix[SIMPLE] + patternTypeMix[SIMPLE_AND] + patternTypeMix[SIMPLE_ORDERED_AND];
+
+    for(int i = 0; i < patternCount; i++) {
+      double type = random.nextDouble() * mixTotal;
+
+      if(type < patternTypeMix[SIMPLE]) {
+        types[i] = SIMPLE;
+        shared[i] = new int[0];
+        simplePatterns[simpleCount++] = i;
+      } else {
+        types[i] = (byte)(type < patternTypeMix[SIMPLE] + patternTypeMix[SIMPLE_AND] ? SIMPLE_AND : SIMPLE_ORDERED_AND);
+        shared[i] = getSharedTokens(random, 1 + random.nextInt(maxTokens - 1), null);
+      }
+
+      int rank = random.nextInt(20);
+
+      rankTypes[i] = (byte)(rank == 0 ? STRONG : rank < 12 ? WEAK : NONE);
+      rankValues[i] = (short)(rankTypes[i] == STRONG ? 0 : random.nextInt(2001) - 1000);
+
+      ngramAnchors[i] = (ngramConcatSize > 1 && random.nextInt(4) == 0);
+
+      if(random.nextDouble() < transformerRatio) {
+        attributeTransformers[i] = (byte)(random.nextInt(4) == 0 ? NUMBER_DEFAULT : NUMBER);
+      }
+    }
+  }
+
+  //count DISTINCT ZIPFIAN SHARED TOKENS, NONE OF exclude. FEWER IF THE VOCABULARY RUNS OUT
+  private int[] getSharedTokens(Random random, int count, int[] exclude) {
+    int[] tokens = new int[count];
+    int found = 0;
+
+    for(int tries = 0; found < count && tries < count * 8; tries++) {
+      int token = Arrays.binarySearch(zipfCdf, random.nextDouble());
+
+      token = Math.min(token < 0 ? -token - 1 : token, zipfCdf.length - 1);
+
+      if(!contains(tokens, found, token) && (exclude == null || !contains(exclude, exclude.length, token))) {
+        tokens[found++] = token;
+      }
+    }
+
+    return (found == count ? tokens : Arrays.copyOf(tokens, found));
+  }
+
+  private static boolean contains(int[] values, int count, int value) {
+    for(int i = 0; i < count; i++) {
+      if(values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  //TOKENS. ANCHORS ARE t<i> OR THE NGRAM OF t<i> u<i>, SHARED TOKENS ARE s<i>, NOISE IS n<i>.
+  //NO NGRAM OF THESE WORDS CAN FORM ANOTHER PATTERN TOKEN
+
+  private String getAnchor(int pattern) {
+    return (ngramAnchors[pattern] ? "t" + pattern + "u" + pattern : "t" + pattern);
+  }
+
+  private static String getShared(int token) {
+    return "s" + token;
+  }
+
+  private List<String> getPatternTokens(int pattern) {
+    List<String> tokens = new ArrayList<>();
+
+    tokens.add(getAnchor(pattern));
+
+    for(int token : shared[pattern]) {
+      tokens.add(getShared(token));
+    }
+
+    return tokens;
+  }
+
+  //SAME RULES AS Pattern.getRank
+  private long getRank(int pattern) {
+    switch(rankTypes[pattern]) {
+      case STRONG:
+        return 10000000;
+      case WEAK:
+        return 100000 + rankValues[pattern];
+      default:
+        return rankValues[pattern];
+    }
+  }
+
+  private long getLength(int pattern) {
+    long length = 0;
+
+    for(String token : getPatternTokens(pattern)) {
+      length += token.length();
+    }
+
+    return length;
+  }
+
+  private static String getPatternId(int pattern) {
+    return "p" + pattern;
+  }
+
+  private static String getParentId(int level, int group) {
+    return "g" + (level + 1) + "_" + group;
+  }
+
+  private void writeHeader(JsonGenerator json, String type) throws Exception {
+    json.writeStartObject();
+    json.writeNumberField("TextGlassSpecVersion", 1.0);
+    json.writeStringField("type", type);
+    json.writeStringField("domain", DOMAIN);
+    json.writeStringField("domainVersion", "1.0");
+    json.writeStringField("description", "synthetic domain, " + patternCount + " pattern(s), seed " + seed);
+  }
+
+  private static JsonGenerator open(File file) throws Exception {
+    OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 1 << 20);
+
+    return new JsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+  }
+
+  private void writePatterns(File file) throws Exception {
+    try(JsonGenerator json = open(file)) {
+      writeHeader(json, "pattern");
+
+      json.writeObjectFieldStart("inputParser");
+      json.writeArrayFieldStart("transformers");
+      json.writeStartObject();
+      json.writeStringField("type", "LowerCase");
+      json.writeEndObject();
+      json.writeEndArray();
+      json.writeArrayFieldStart("tokenSeperators");
+      json.writeString(" ");
+      json.writeEndArray();
+      json.writeNumberField("ngramConcatSize", ngramConcatSize);
+      json.writeEndObject();
+
+      json.writeObjectFieldStart("patternSet");
+      json.writeStringField("defaultId", DEFAULT_ID);
+      json.writeArrayFieldStart("patterns");
+
+      for(int i = 0; i < patternCount; i++) {
+        json.writeStartObject();
+        json.writeStringField("patternId", getPatternId(i));
+        json.writeStringField("rankType", RANK_TYPES[rankTypes[i]]);
+
+        if(rankTypes[i] != STRONG) {
+          json.writeNumberField("rankValue", rankValues[i]);
+        }
+
+        json.writeStringField("patternType", PATTERN_TYPES[types[i]]);
+        json.writeArrayFieldStart("patternTokens");
+
+        for(String token : getPatternTokens(i)) {
+          json.writeString(token);
+        }
+
+        json.writeEndArray();
+        json.writeEndObject();
+      }
+
+      json.writeEndArray();
+      json.writeEndObject();
+      json.writeEndObject();
+    }
+  }
+
+  private void writeAttributes(File file) throws Exception {
+    try(JsonGenerator json = open(file)) {
+      writeHeader(json, "attribute");
+
+      json.writeObjectFieldStart("attributes");
+
+      //PARENT GROUPS, EACH LEVEL INHERITS FROM THE NEXT. vendor IS OVERRIDDEN BY THE PATTERN
+
+      for(int level = 0; level < parentDepth; level++) {
+        for(int group = 0; group < parentCounts[level]; group++) {
+          json.writeObjectFieldStart(getParentId(level, group));
+
+          if(level + 1 < parentDepth) {
+            json.writeStringField("parentId", getParentId(level + 1, group % parentCounts[level + 1]));
+          }
+
+          json.writeObjectFieldStart("attributes");
+          json.writeStringField("level" + (level + 1), getParentId(level, group));
+          json.writeStringField("vendor", "parent");
+          json.writeEndObject();
+          json.writeEndObject();
+        }
+      }
+
+      for(int i = 0; i < patternCount; i++) {
+        json.writeObjectFieldStart(getPatternId(i));
+
+        if(parentDepth > 0) {
+          json.writeStringField("parentId", getParentId(0, i % parentCounts[0]));
+        }
+
+        json.writeObjectFieldStart("attributes");
+
+        for(Map.Entry<String, String> entry : getStaticAttributes(i).entrySet()) {
+          json.writeStringField(entry.getKey(), entry.getValue());
+        }
+
+        json.writeEndObject();
+
+        //number IS THE INPUT'S FIRST OR SECOND WORD, ONLY THE FIRST IS A NUMBER
+
+        if(attributeTransformers[i] != NO_TRANSFORMER) {
+          json.writeObjectFieldStart("attributeTransformers");
+          json.writeObjectFieldStart("number");
+          json.writeStringField("defaultValue", "none");
+          json.writeArrayFieldStart("transformers");
+          json.writeStartObject();
+          json.writeStringField("type", "SplitAndGet");
+          json.writeObjectFieldStart("parameters");
+          json.writeStringField("delimiter", " ");
+          json.writeNumberField("get", (attributeTransformers[i] == NUMBER ? 0 : 1));
+          json.writeEndObject();
+          json.writeEndObject();
+          json.writeStartObject();
+          json.writeStringField("type", "IsNumber");
+          json.writeEndObject();
+          json.writeEndArray();
+          json.writeEndObject();
+          json.writeEndObject();
+        }
+
+        json.writeEndObject();
+      }
+
+      json.writeEndObject();
+      json.writeEndObject();
+    }
+  }
+
+  private static Map<String, String> getStaticAttributes(int pattern) {
+    Map<String, String> attributes = new LinkedHashMap<>();
+
+    attributes.put("model", "m" + pattern);
+    attributes.put("vendor", "v" + (pattern % 97));
+
+    return attributes;
+  }
+
+  //THE RESOLVED ATTRIBUTES A TEST EXPECTS
+  private Map<String, String> getExpectedAttributes(int pattern, String number) {
+    Map<String, String> attributes = getStaticAttributes(pattern);
+    int group = pattern;
+
+    for(int level = 0; level < parentDepth; level++) {
+      group = group % parentCounts[level];
+      attributes.put("level" + (level + 1), getParentId(level, group));
+    }
+
+    if(attributeTransformers[pattern] == NUMBER) {
+      attributes.put("number", number);
+    } else if(attributeTransformers[pattern] == NUMBER_DEFAULT) {
+      attributes.put("number", "none");
+    }
+
+    return attributes;
+  }
+
+  private void writeTests(File file, Random random) throws Exception {
+    try(JsonGenerator json = open(file)) {
+      writeHeader(json, "test");
+
+      json.writeArrayFieldStart("tests");
+
+      for(int t = 0; t < testCount; t++) {
+
+        //ONE IN TEN TESTS IS NOISE ONLY AND FALLS BACK TO THE DEFAULT
+
+        int target = (random.nextInt(10) == 0 ? -1 : random.nextInt(patternCount));
+        String number = Integer.toString(random.nextInt(100000));
+        List<List<String>> targetUnits = new ArrayList<>();
+        List<List<String>> otherUnits = new ArrayList<>();
+        int words = 1;
+
+        if(target >= 0) {
+          targetUnits.add(ngramAnchors[target] ? Arrays.asList("t" + target, "u" + target) :
+              Arrays.asList("t" + target));
+
+          for(int token : shared[target]) {
+            targetUnits.add(Arrays.asList(getShared(token)));
+          }
+
+          //DECOYS ARE VALID Simple PATTERNS WHICH RANK BELOW THE TARGET
+
+          for(int d = 0; d < MAX_DECOYS && simpleCount > 0; d++) {
+            int decoy = simplePatterns[random.nextInt(simpleCount)];
+
+            if(decoy != target && (getRank(decoy) < getRank(target) ||
+                getRank(decoy) == getRank(target) && getLength(decoy) < getLength(target))) {
+              otherUnits.add(ngramAnchors[decoy] ? Arrays.asList("t" + decoy, "u" + decoy) :
+                  Arrays.asList("t" + decoy));
+            }
+          }
+        }
+
+        for(List<String> unit : targetUnits) {
+          words += unit.size();
+        }
+
+        for(List<String> unit : otherUnits) {
+          words += unit.size();
+        }
+
+        //NOISE, HALF FILLER AND HALF SHARED TOKENS THE TARGET DOES NOT USE
+
+        for(; words < inputLength; words++) {
+          if(random.nextBoolean()) {
+            otherUnits.add(Arrays.asList("n" + random.nextInt(1000)));
+          } else {
+            int[] noise = getSharedTokens(random, 1, (target >= 0 ? shared[target] : null));
+
+            otherUnits.add(Arrays.asList(noise.length > 0 ? getShared(noise[0]) : "n" + random.nextInt(1000)));
+          }
+        }
+
+        //SHUFFLE THE OTHERS IN, THE TARGET'S TOKENS KEEP THEIR ORDER
+
+        Collections.shuffle(otherUnits, random);
+
+        StringBuilder input = new StringBuilder(number);
+        int targetPos = 0;
+        int otherPos = 0;
+
+        while(targetPos < targetUnits.size() || otherPos < otherUnits.size()) {
+          int targetLeft = targetUnits.size() - targetPos;
+          int otherLeft = otherUnits.size() - otherPos;
+          List<String> unit = (random.nextInt(targetLeft + otherLeft) < targetLeft ?
+              targetUnits.get(targetPos++) : otherUnits.get(otherPos++));
+
+          for(String word : unit) {
+            input.append(' ').append(random.nextInt(4) == 0 ? word.toUpperCase() : word);
+          }
+        }
+
+        json.writeStartObject();
+        json.writeStringField("input", input.toString());
+
+        if(target >= 0) {
+          json.writeStringField("resultPatternId", getPatternId(target));
+          json.writeObjectFieldStart("resultAttributes");
+
+          for(Map.Entry<String, String> entry : getExpectedAttributes(target, number).entrySet()) {
+            json.writeStringField(entry.getKey(), entry.getValue());
+          }
+
+          json.writeEndObject();
+        } else {
+          json.writeStringField("resultPatternId", DEFAULT_ID);
+        }
+
+        json.writeEndObject();
+      }
+
+      json.writeEndArray();
+      json.writeEndObject();
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//RELOADS A CLIENT'S DOMAIN ON A BACKGROUND THREAD, ON DEMAND OR WHEN ITS FILES
+//CHANGE. RELOADS RUN ONE AT A TIME AND A FAILED RELOAD KEEPS THE CURRENT DOMAIN
+public class DomainReloader {
+
+  private final TextGlassClient client;
+
+  //DOMAIN FILES, EITHER A SNAPSHOT OR THE JSON FILES
+  private final String snapshot;
+  private final String patternFile;
+  private final String patternPatchFile;
+  private final String attributeFile;
+  private final String attributePatchFile;
+
+  private final File[] files;
+
+  private final ScheduledExecutorService executor;
+  private ScheduledFuture<?> watcher;
+
+  //FILE STAMPS OF THE LAST RELOAD AND OF THE LAST POLL
+  private long[] loadedStamps;
+  private long[] polledStamps;
+
+  //METRICS
+  private final AtomicLong reloads;
+  private final AtomicLong failures;
+  private volatile long lastDuration;
+  private volatile long lastReloadTime;
+  private volatile String lastStatus;
+
+  public DomainReloader(TextGlassClient client, String snapshot, String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
+    if(snapshot == null && patternFile == null) {
+      throw new Exception("Pattern or snapshot file required");
+    }
+
+    this.client = client;
+    this.snapshot = snapshot;
+    this.patternFile = patternFile;
+    this.patternPatchFile = patternPatchFile;
+    this.attributeFile = attributeFile;
+    this.attributePatchFile = attributePatchFile;
+
+    String[] paths = {snapshot, patternFile, patternPatchFile, attributeFile, attributePatchFile};
+    int count = 0;
+
+    for(String path : paths) {
+      if(path != null) {
+        count++;
+      }
+    }
+
+    files = new File[count];
+    count = 0;
+
+    for(String path : paths) {
+      if(path != null) {
+        files[count++] = new File(path);
+      }
+    }
+
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "textglass-reload");
+
+        thread.setDaemon(true);
+
+        return thread;
+      }
+    });
+
+    watcher = null;
+
+    loadedStamps = getStamps();
+    polledStamps = loadedStamps;
+
+    reloads = new AtomicLong();
+    failures = new AtomicLong();
+    lastDuration = 0;
+    lastReloadTime = 0;
+    lastStatus = "NONE";
+  }
+
+  //QUEUE A RELOAD, THE FUTURE IS TRUE IF THE NEW DOMAIN WAS PUBLISHED
+  public Future<Boolean> reload() {
+    return executor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        return runReload();
+      }
+    });
+  }
+
+  //POLL THE DOMAIN FILES, A CHANGE IS RELOADED ONCE IT IS STABLE FOR ONE INTERVAL
+  public synchronized void watch(long intervalMs) throws Exception {
+    if(intervalMs < 1) {
+      throw new Exception("Invalid watch interval: " + intervalMs);
+    }
+
+    if(watcher != null) {
+      watcher.cancel(false);
+    }
+
+    watcher = executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        checkFiles();
+      }
+    }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+
+    Main.log("Watching " + files.length + " domain file(s) every " + intervalMs + "ms", 1);
+  }
+
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  private void checkFiles() {
+    long[] stamps = getStamps();
+    boolean stable = Arrays.equals(stamps, polledStamps);
+
+    polledStamps = stamps;
+
+    if(stable && !Arrays.equals(stamps, loadedStamps)) {
+      Main.log("Domain files changed, reloading", 1);
+
+      runReload();
+    }
+  }
+
+  private boolean runReload() {
+    long[] stamps = getStamps();
+    long start = System.nanoTime();
+    boolean success;
+
+    try {
+      if(snapshot != null) {
+        client.reloadSnapshot(snapshot);
+      } else {
+        client.reload(patternFile, patternPatchFile, attributeFile, attributePatchFile);
+      }
+
+      lastStatus = "OK";
+      success = true;
+    } catch(Exception e) {
+      failures.incrementAndGet();
+      lastStatus = "FAILED: " + e.toString();
+      success = false;
+
+      Main.log("Domain reload failed: " + e.toString(), 0);
+    }
+
+    //A FAILED RELOAD IS NOT RETRIED UNTIL THE FILES CHANGE AGAIN
+
+    loadedStamps = stamps;
+    polledStamps = stamps;
+
+    reloads.incrementAndGet();
+    lastDuration = System.nanoTime() - start;
+    lastReloadTime = System.currentTimeMillis();
+
+    return success;
+  }
+
+  private long[] getStamps() {
+    long[] stamps = new long[files.length * 2];
+
+    for(int i = 0; i < files.length; i++) {
+      stamps[i * 2] = files[i].lastModified();
+      stamps[i * 2 + 1] = files[i].length();
+    }
+
+    return stamps;
+  }
+
+  public long getReloads() {
+    return reloads.get();
+  }
+
+  public long getFailures() {
+    return failures.get();
+  }
+
+  public long getLastDuration() {
+    return lastDuration;
+  }
+
+  public long getLastReloadTime() {
+    return lastReloadTime;
+  }
+
+  public String getLastStatus() {
+    return lastStatus;
+  }
+
+  @Override
+  public String toString() {
+    return "DomainReloader reloads: " + reloads.get() + ", failures: " + failures.get() +
+        ", last duration: " + Main.getTime(lastDuration) + ", last status: " + lastStatus;
+  }
+}
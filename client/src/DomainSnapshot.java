@@ -0,0 +1,856 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.node.ArrayNode;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+public class DomainSnapshot {
+
+  public final static int MAGIC = 0x54475342;
+  public final static int FORMAT_VERSION = 1;
+
+  //HEADER OFFSETS
+
+  private final static int H_MAGIC = 0;
+  private final static int H_FORMAT_VERSION = 4;
+  private final static int H_DOMAIN = 8;
+  private final static int H_DOMAIN_VERSION = 12;
+  private final static int H_DEFAULT_ID = 16;
+  private final static int H_TRANSFORMERS = 20;
+  private final static int H_NGRAM_CONCAT_SIZE = 24;
+  private final static int H_SEPERATORS = 28;
+  private final static int H_TOKEN_TABLE = 32;
+  private final static int H_TOKEN_SLOTS = 36;
+  private final static int H_PATTERN_COUNT = 40;
+  private final static int H_PATTERN_TABLE = 44;
+  private final static int H_ATTRIBUTE_TABLE = 48;
+  private final static int H_ATTRIBUTE_SLOTS = 52;
+  private final static int H_LENGTH = 56;
+  private final static int HEADER_SIZE = 60;
+
+  //RECORD SIZES
+
+  private final static int TOKEN_SLOT_SIZE = 12;
+  private final static int PATTERN_SIZE = 20;
+  private final static int ATTRIBUTE_SLOT_SIZE = 12;
+
+  //NODE TAGS
+
+  private final static int NODE_NULL = 0;
+  private final static int NODE_TEXT = 1;
+  private final static int NODE_OBJECT = 2;
+  private final static int NODE_ARRAY = 3;
+
+  private final ByteBuffer buffer;
+
+  private final String domain;
+  private final String domainVersion;
+  private final String defaultId;
+  private final int transformers;
+  private final List<String> tokenSeperators;
+  private final int ngramConcatSize;
+
+  private final int tokenTable;
+  private final int tokenMask;
+  private final int patternCount;
+  private final int patternTable;
+  private final int attributeTable;
+  private final int attributeMask;
+
+  private final ConcurrentHashMap<String, Attributes> attributeCache;
+  private final AttributePool pool;
+
+  private final ThreadLocal<MatchState> matchStates;
+
+  private DomainSnapshot(ByteBuffer buffer) throws Exception {
+    this.buffer = buffer;
+
+    //VALIDATE THE HEADER
+
+    if(buffer.capacity() < HEADER_SIZE || buffer.getInt(H_MAGIC) != MAGIC) {
+      throw new Exception("Not a TextGlass domain snapshot");
+    }
+
+    if(buffer.getInt(H_FORMAT_VERSION) != FORMAT_VERSION) {
+      throw new Exception("Unsupported snapshot format version: " + buffer.getInt(H_FORMAT_VERSION));
+    }
+
+    if(buffer.getInt(H_LENGTH) != buffer.capacity()) {
+      throw new Exception("Truncated snapshot, expected length: " + buffer.getInt(H_LENGTH) +
+          ", found: " + buffer.capacity());
+    }
+
+    domain = getString(buffer.getInt(H_DOMAIN));
+    domainVersion = getString(buffer.getInt(H_DOMAIN_VERSION));
+    defaultId = getString(buffer.getInt(H_DEFAULT_ID));
+    transformers = buffer.getInt(H_TRANSFORMERS);
+    ngramConcatSize = buffer.getInt(H_NGRAM_CONCAT_SIZE);
+
+    if(domain == null || domain.isEmpty()) {
+      throw new Exception("domain not defined");
+    }
+
+    if(domainVersion == null || domainVersion.isEmpty()) {
+      throw new Exception("domainVersion not defined");
+    }
+
+    if(ngramConcatSize < 1) {
+      throw new Exception("Invalid value of ngramConcatSize: " + ngramConcatSize);
+    }
+
+    List<String> seperators = new ArrayList<>();
+    int seperatorsOffset = buffer.getInt(H_SEPERATORS);
+
+    for(int i = 0; i < buffer.getInt(seperatorsOffset); i++) {
+      seperators.add(getString(buffer.getInt(seperatorsOffset + 4 + i * 4)));
+    }
+
+    tokenSeperators = Collections.unmodifiableList(seperators);
+
+    tokenTable = buffer.getInt(H_TOKEN_TABLE);
+    tokenMask = buffer.getInt(H_TOKEN_SLOTS) - 1;
+    patternCount = buffer.getInt(H_PATTERN_COUNT);
+    patternTable = buffer.getInt(H_PATTERN_TABLE);
+    attributeTable = buffer.getInt(H_ATTRIBUTE_TABLE);
+    attributeMask = buffer.getInt(H_ATTRIBUTE_SLOTS) - 1;
+
+    attributeCache = new ConcurrentHashMap<>();
+    pool = new AttributePool();
+    matchStates = new ThreadLocal<>();
+  }
+
+  //MAP A SNAPSHOT FILE
+  public static DomainSnapshot map(String path) throws Exception {
+    try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+      if(channel.size() > Integer.MAX_VALUE) {
+        throw new Exception("Snapshot too large: " + channel.size());
+      }
+
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      return new DomainSnapshot(mapped);
+    }
+  }
+
+  //COMPILE A DOMAIN INTO A SNAPSHOT FILE
+  public static void compile(JsonFile patternFile, JsonFile patternPatchFile,
+      JsonFile attributeFile, JsonFile attributePatchFile, String path) throws Exception {
+
+    //LOAD AND VALIDATE THE DOMAIN
+
+    Domain loaded = new DomainBuilder().load(patternFile, patternPatchFile, attributeFile, attributePatchFile).build();
+
+    //TRANSFORMERS, A PATCH REPLACES THE BASE LIST
+
+    JsonNode transformersNode = null;
+
+    for(JsonFile file : new JsonFile[] {patternFile, patternPatchFile}) {
+      if(file != null && JsonFile.get(JsonFile.get(file.getJsonNode(), "inputParser"), "transformers").isArray()) {
+        transformersNode = file.getJsonNode().get("inputParser").get("transformers");
+      }
+    }
+
+    //ATTRIBUTES, LATER FILES OVERRIDE EARLIER ONES
+
+    Map<String, JsonNode> attributeNodes = new LinkedHashMap<>();
+
+    for(JsonFile file : new JsonFile[] {patternFile, patternPatchFile, attributeFile, attributePatchFile}) {
+      if(file != null && JsonFile.get(file.getJsonNode(), "attributes").isObject()) {
+        JsonNode attributesJson = file.getJsonNode().get("attributes");
+
+        for(Iterator<String> i = attributesJson.getFieldNames(); i.hasNext();) {
+          String patternId = i.next();
+
+          attributeNodes.put(patternId, attributesJson.get(patternId));
+        }
+      }
+    }
+
+    //PATTERN ORDINALS
+
+    Map<String, Integer> tokenIds = loaded.getTokenIds();
+    List<Pattern> patternList = new ArrayList<>();
+
+    for(int tokenId : tokenIds.values()) {
+      for(Pattern pattern : loaded.getTokenPatterns(tokenId)) {
+        while(patternList.size() <= pattern.getOrdinal()) {
+          patternList.add(null);
+        }
+
+        patternList.set(pattern.getOrdinal(), pattern);
+      }
+    }
+
+    //HEADER AND STRINGS
+
+    Writer out = new Writer();
+
+    out.skip(HEADER_SIZE);
+
+    out.putInt(H_MAGIC, MAGIC);
+    out.putInt(H_FORMAT_VERSION, FORMAT_VERSION);
+    out.putInt(H_DOMAIN, out.string(loaded.getName()));
+    out.putInt(H_DOMAIN_VERSION, out.string(loaded.getVersion()));
+    out.putInt(H_DEFAULT_ID, out.string(loaded.getDefaultId()));
+    out.putInt(H_TRANSFORMERS, out.node(transformersNode));
+    out.putInt(H_NGRAM_CONCAT_SIZE, loaded.getNgramConcatSize());
+
+    int[] seperatorRefs = new int[loaded.getTokenSeperators().size()];
+
+    for(int i = 0; i < seperatorRefs.length; i++) {
+      seperatorRefs[i] = out.string(loaded.getTokenSeperators().get(i));
+    }
+
+    out.putInt(H_SEPERATORS, out.size());
+    out.writeInt(seperatorRefs.length);
+
+    for(int seperatorRef : seperatorRefs) {
+      out.writeInt(seperatorRef);
+    }
+
+    //TOKEN TABLE
+
+    int tokenSlots = tableSize(tokenIds.size());
+    int[] tokenRefs = new int[tokenSlots];
+    int[] tokenLists = new int[tokenSlots];
+    Map<String, Integer> tokenSlotMap = new HashMap<>();
+
+    for(Map.Entry<String, Integer> entry : tokenIds.entrySet()) {
+      List<Pattern> tokenPatterns = loaded.getTokenPatterns(entry.getValue());
+      int slot = entry.getKey().hashCode() & (tokenSlots - 1);
+
+      while(tokenRefs[slot] != 0) {
+        slot = (slot + 1) & (tokenSlots - 1);
+      }
+
+      tokenRefs[slot] = out.string(entry.getKey());
+      tokenLists[slot] = out.size();
+      tokenSlotMap.put(entry.getKey(), slot);
+
+      out.writeInt(tokenPatterns.size());
+
+      for(Pattern pattern : tokenPatterns) {
+        out.writeInt(pattern.getOrdinal());
+      }
+    }
+
+    //PATTERN TOKEN LISTS
+
+    int[] patternTokens = new int[patternList.size()];
+
+    for(int i = 0; i < patternList.size(); i++) {
+      patternTokens[i] = out.size();
+
+      out.writeInt(patternList.get(i).getPatternTokens().size());
+
+      for(String patternToken : patternList.get(i).getPatternTokens()) {
+        out.writeInt(tokenSlotMap.get(patternToken));
+      }
+    }
+
+    int[] patternIds = new int[patternList.size()];
+
+    for(int i = 0; i < patternList.size(); i++) {
+      patternIds[i] = out.string(patternList.get(i).getPatternId());
+    }
+
+    //ATTRIBUTE ENTRIES
+
+    int attributeSlots = tableSize(attributeNodes.size());
+    int[] attributeRefs = new int[attributeSlots];
+    int[] attributeJson = new int[attributeSlots];
+
+    for(Map.Entry<String, JsonNode> entry : attributeNodes.entrySet()) {
+      int slot = entry.getKey().hashCode() & (attributeSlots - 1);
+
+      while(attributeRefs[slot] != 0) {
+        slot = (slot + 1) & (attributeSlots - 1);
+      }
+
+      attributeRefs[slot] = out.string(entry.getKey());
+      attributeJson[slot] = out.node(entry.getValue());
+    }
+
+    //FIXED SIZE TABLES
+
+    out.putInt(H_TOKEN_TABLE, out.size());
+    out.putInt(H_TOKEN_SLOTS, tokenSlots);
+
+    for(int i = 0; i < tokenSlots; i++) {
+      out.writeInt(tokenRefs[i] == 0 ? 0 : out.getString(tokenRefs[i]).hashCode());
+      out.writeInt(tokenRefs[i]);
+      out.writeInt(tokenLists[i]);
+    }
+
+    out.putInt(H_PATTERN_COUNT, patternList.size());
+    out.putInt(H_PATTERN_TABLE, out.size());
+
+    for(int i = 0; i < patternList.size(); i++) {
+      Pattern pattern = patternList.get(i);
+
+      out.writeInt(patternIds[i]);
+      out.writeInt(pattern.isSimple() ? 0 : (pattern.isSimpleAnd() ? 1 : 2));
+      out.writeLong(pattern.getRank());
+      out.writeInt(patternTokens[i]);
+    }
+
+    out.putInt(H_ATTRIBUTE_TABLE, out.size());
+    out.putInt(H_ATTRIBUTE_SLOTS, attributeSlots);
+
+    for(int i = 0; i < attributeSlots; i++) {
+      out.writeInt(attributeRefs[i] == 0 ? 0 : out.getString(attributeRefs[i]).hashCode());
+      out.writeInt(attributeRefs[i]);
+      out.writeInt(attributeJson[i]);
+    }
+
+    out.putInt(H_LENGTH, out.size());
+
+    //WRITE NEXT TO THE TARGET AND RENAME, A CLIENT MAY HAVE THE OLD SNAPSHOT MAPPED
+    Path target = Paths.get(path).toAbsolutePath();
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+    try {
+      try(OutputStream file = Files.newOutputStream(temp)) {
+        out.writeTo(file);
+      }
+
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+
+    Main.log("Compiled snapshot: " + path + ", " + patternList.size() + " pattern(s), " +
+        tokenIds.size() + " token(s), " + attributeNodes.size() + " attribute(s), " + out.size() + " bytes", 1);
+  }
+
+  //OPEN ADDRESSING TABLE SIZE, LOAD FACTOR <= 0.5
+  private static int tableSize(int entries) {
+    int size = 2;
+
+    while(size < entries * 2) {
+      size <<= 1;
+    }
+
+    return size;
+  }
+
+  //FIND THE WINNING PATTERN FOR AN NGRAM TOKEN STREAM
+  public String getWinner(List<String> ngramTokenStream) {
+    MatchState state = getMatchState();
+
+    try {
+      match(ngramTokenStream, state);
+
+      int winner = rank(state);
+
+      return (winner == -1 ? null : getPatternId(winner));
+    } finally {
+      state.clear();
+    }
+  }
+
+  //SAME MATCH AND RANK AS getWinner, RECORDING EACH HIT AND CANDIDATE
+  void explain(List<String> ngramTokenStream, Explanation explanation) {
+    MatchState state = getMatchState();
+
+    try {
+      match(ngramTokenStream, state);
+
+      for(String token : ngramTokenStream) {
+        int slot = findToken(token);
+
+        if(slot < 0) {
+          continue;
+        }
+
+        int entry = tokenTable + slot * TOKEN_SLOT_SIZE;
+        int list = buffer.getInt(entry + 8);
+        List<String> patternIds = new ArrayList<>();
+
+        for(int j = 0; j < buffer.getInt(list); j++) {
+          patternIds.add(getPatternId(buffer.getInt(list + 4 + j * 4)));
+        }
+
+        explanation.addHit(getString(buffer.getInt(entry + 4)), patternIds);
+      }
+
+      int[] firstPositions = state.getFirstPositions();
+
+      for(int i = 0; i < state.getCandidateCount(); i++) {
+        int candidate = state.getCandidate(i);
+
+        explanation.addCandidate(getPatternId(candidate),
+            isValid(candidate, firstPositions),
+            buffer.getLong(patternTable + candidate * PATTERN_SIZE + 8),
+            getMatchedLength(candidate, firstPositions));
+      }
+
+      int winner = rank(state);
+
+      explanation.setWinnerId(winner == -1 ? null : getPatternId(winner));
+    } finally {
+      state.clear();
+    }
+  }
+
+  //ONE PER THREAD, KEYED BY TOKEN SLOT
+  private MatchState getMatchState() {
+    MatchState state = matchStates.get();
+
+    if(state == null) {
+      state = new MatchState(tokenMask + 1, patternCount);
+      matchStates.set(state);
+    }
+
+    return state;
+  }
+
+  //FIRST HIT POSITION OF EACH MATCHED TOKEN SLOT AND THE CANDIDATE PATTERN
+  //ORDINALS, IN FIRST HIT ORDER
+  private void match(List<String> ngramTokenStream, MatchState state) {
+    int position = 0;
+
+    for(String token : ngramTokenStream) {
+      int slot = findToken(token);
+
+      if(slot < 0) {
+        continue;
+      }
+
+      state.addToken(slot, position++);
+
+      int list = buffer.getInt(tokenTable + slot * TOKEN_SLOT_SIZE + 8);
+      int count = buffer.getInt(list);
+
+      for(int i = 0; i < count; i++) {
+        state.addCandidate(buffer.getInt(list + 4 + i * 4));
+      }
+    }
+  }
+
+  //THE WINNING PATTERN ORDINAL OR -1
+  private int rank(MatchState state) {
+    int winner = -1;
+    long winnerRank = 0;
+    long winnerLength = 0;
+    int[] firstPositions = state.getFirstPositions();
+
+    for(int i = 0; i < state.getCandidateCount(); i++) {
+      int candidate = state.getCandidate(i);
+
+      if(!isValid(candidate, firstPositions)) {
+        continue;
+      }
+
+      long rank = buffer.getLong(patternTable + candidate * PATTERN_SIZE + 8);
+
+      if(winner == -1 || rank > winnerRank) {
+        winner = candidate;
+        winnerRank = rank;
+        winnerLength = getMatchedLength(candidate, firstPositions);
+      } else if(rank == winnerRank) {
+        long length = getMatchedLength(candidate, firstPositions);
+
+        if(length > winnerLength) {
+          winner = candidate;
+          winnerLength = length;
+        }
+      }
+    }
+
+    return winner;
+  }
+
+  private String getPatternId(int pattern) {
+    return getString(buffer.getInt(patternTable + pattern * PATTERN_SIZE));
+  }
+
+  //SAME RULES AS Pattern.isValid
+  private boolean isValid(int pattern, int[] firstPositions) {
+    int record = patternTable + pattern * PATTERN_SIZE;
+    int type = buffer.getInt(record + 4);
+    int tokens = buffer.getInt(record + 16);
+    int lastFound = -1;
+
+    for(int i = 0; i < buffer.getInt(tokens); i++) {
+      int found = firstPositions[buffer.getInt(tokens + 4 + i * 4)];
+
+      if(found == -1 && type != 0) {
+        return false;
+      }
+
+      if(found >= 0 && type == 0) {
+        return true;
+      }
+
+      if(type == 2) {
+        if(found <= lastFound) {
+          return false;
+        } else {
+          lastFound = found;
+        }
+      }
+    }
+
+    return type != 0;
+  }
+
+  //SAME RULES AS Pattern.getMatchedLength
+  private long getMatchedLength(int pattern, int[] firstPositions) {
+    int tokens = buffer.getInt(patternTable + pattern * PATTERN_SIZE + 16);
+    long length = 0;
+
+    for(int i = 0; i < buffer.getInt(tokens); i++) {
+      int slot = buffer.getInt(tokens + 4 + i * 4);
+
+      if(firstPositions[slot] >= 0) {
+        length += buffer.getInt(buffer.getInt(tokenTable + slot * TOKEN_SLOT_SIZE + 4));
+      }
+    }
+
+    return length;
+  }
+
+  //TOKEN TABLE LOOKUP, RETURNS THE SLOT OR -1
+  private int findToken(String token) {
+    int hash = token.hashCode();
+    int slot = hash & tokenMask;
+
+    while(true) {
+      int entry = tokenTable + slot * TOKEN_SLOT_SIZE;
+      int ref = buffer.getInt(entry + 4);
+
+      if(ref == 0) {
+        return -1;
+      }
+
+      if(buffer.getInt(entry) == hash && stringEquals(ref, token)) {
+        return slot;
+      }
+
+      slot = (slot + 1) & tokenMask;
+    }
+  }
+
+  //ATTRIBUTES ARE PARSED AND RESOLVED ONCE, ON FIRST USE. CONCURRENT CALLERS
+  //WAIT FOR THE FIRST
+  public Attributes getAttributes(String patternId) {
+    Attributes attributes = attributeCache.get(patternId);
+
+    if(attributes != null) {
+      return attributes;
+    }
+
+    return attributeCache.computeIfAbsent(patternId, this::resolveAttributes);
+  }
+
+  private Attributes resolveAttributes(String patternId) {
+    Attributes attributes = getRawAttributes(patternId);
+
+    if(attributes == null) {
+      return null;
+    }
+
+    try {
+      return Attributes.resolve(attributes, this::getRawAttributes, pool);
+    } catch(Exception e) {
+      throw new IllegalStateException("Invalid snapshot attributes for " + patternId + ": " + e.toString());
+    }
+  }
+
+  private Attributes getRawAttributes(String patternId) {
+    int hash = patternId.hashCode();
+    int slot = hash & attributeMask;
+
+    while(true) {
+      int entry = attributeTable + slot * ATTRIBUTE_SLOT_SIZE;
+      int ref = buffer.getInt(entry + 4);
+
+      if(ref == 0) {
+        return null;
+      }
+
+      if(buffer.getInt(entry) == hash && stringEquals(ref, patternId)) {
+        try {
+          return new Attributes(patternId, getNode(buffer.getInt(entry + 8)), pool);
+        } catch(Exception e) {
+          throw new IllegalStateException("Invalid snapshot attributes for " + patternId + ": " + e.toString());
+        }
+      }
+
+      slot = (slot + 1) & attributeMask;
+    }
+  }
+
+  //STRING RECORDS: INT LENGTH, UTF-16 CHARS. REF 0 IS NULL
+  private String getString(int ref) {
+    if(ref == 0) {
+      return null;
+    }
+
+    int length = buffer.getInt(ref);
+    char[] chars = new char[length];
+
+    for(int i = 0; i < length; i++) {
+      chars[i] = buffer.getChar(ref + 4 + i * 2);
+    }
+
+    return new String(chars);
+  }
+
+  //NODE RECORDS: INT TAG, THEN A STRING REF OR A COUNT AND CHILD REFS. REF 0 IS NULL
+  private JsonNode getNode(int ref) {
+    if(ref == 0) {
+      return null;
+    }
+
+    JsonNodeFactory factory = JsonNodeFactory.instance;
+
+    switch(buffer.getInt(ref)) {
+      case NODE_TEXT:
+        return factory.textNode(getString(buffer.getInt(ref + 4)));
+      case NODE_OBJECT: {
+        ObjectNode object = factory.objectNode();
+
+        for(int i = 0; i < buffer.getInt(ref + 4); i++) {
+          object.put(getString(buffer.getInt(ref + 8 + i * 8)), getNode(buffer.getInt(ref + 12 + i * 8)));
+        }
+
+        return object;
+      }
+      case NODE_ARRAY: {
+        ArrayNode array = factory.arrayNode();
+
+        for(int i = 0; i < buffer.getInt(ref + 4); i++) {
+          array.add(getNode(buffer.getInt(ref + 8 + i * 4)));
+        }
+
+        return array;
+      }
+      default:
+        return factory.nullNode();
+    }
+  }
+
+  private boolean stringEquals(int ref, String value) {
+    if(buffer.getInt(ref) != value.length()) {
+      return false;
+    }
+
+    for(int i = 0; i < value.length(); i++) {
+      if(buffer.getChar(ref + 4 + i * 2) != value.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public List<Transformer> getTransformers() throws Exception {
+    List<Transformer> list = new ArrayList<>();
+
+    if(transformers != 0) {
+      JsonNode transformersNode = getNode(transformers);
+
+      for(int i = 0; i < transformersNode.size(); i++) {
+        list.add(TextGlassClient.getTransformer(transformersNode.get(i)));
+      }
+    }
+
+    return list;
+  }
+
+  public String getDomain() {
+    return domain;
+  }
+
+  public String getDomainVersion() {
+    return domainVersion;
+  }
+
+  public String getDefaultId() {
+    return defaultId;
+  }
+
+  public List<String> getTokenSeperators() {
+    return tokenSeperators;
+  }
+
+  public int getNgramConcatSize() {
+    return ngramConcatSize;
+  }
+
+  public int getPatternCount() {
+    return patternCount;
+  }
+
+  //GROWABLE SNAPSHOT BUFFER WITH A DEDUPLICATED STRING POOL
+  private static class Writer {
+    private ByteBuffer data = ByteBuffer.allocate(64 * 1024);
+    private final Map<String, Integer> strings = new HashMap<>();
+
+    private void ensure(int bytes) {
+      if(data.remaining() < bytes) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(data.capacity() * 2, data.position() + bytes));
+        data.flip();
+        grown.put(data);
+        data = grown;
+      }
+    }
+
+    private int size() {
+      return data.position();
+    }
+
+    private void skip(int bytes) {
+      ensure(bytes);
+      data.position(data.position() + bytes);
+    }
+
+    private void writeInt(int value) {
+      ensure(4);
+      data.putInt(value);
+    }
+
+    private void writeLong(long value) {
+      ensure(8);
+      data.putLong(value);
+    }
+
+    private void putInt(int pos, int value) {
+      data.putInt(pos, value);
+    }
+
+    private int string(String value) {
+      if(value == null) {
+        return 0;
+      }
+
+      Integer ref = strings.get(value);
+
+      if(ref != null) {
+        return ref;
+      }
+
+      ref = size();
+
+      ensure(4 + value.length() * 2);
+      data.putInt(value.length());
+
+      for(int i = 0; i < value.length(); i++) {
+        data.putChar(value.charAt(i));
+      }
+
+      strings.put(value, ref);
+
+      return ref;
+    }
+
+    //SCALARS ARE STORED AS TEXT, THE CLIENT ONLY READS THEM WITH asText()
+    private int node(JsonNode node) {
+      if(node == null) {
+        return 0;
+      }
+
+      int ref;
+
+      if(node.isObject()) {
+        List<Integer> names = new ArrayList<>();
+        List<Integer> children = new ArrayList<>();
+
+        for(Iterator<String> i = node.getFieldNames(); i.hasNext();) {
+          String name = i.next();
+
+          names.add(string(name));
+          children.add(node(node.get(name)));
+        }
+
+        ref = size();
+        writeInt(NODE_OBJECT);
+        writeInt(names.size());
+
+        for(int i = 0; i < names.size(); i++) {
+          writeInt(names.get(i));
+          writeInt(children.get(i));
+        }
+      } else if(node.isArray()) {
+        List<Integer> children = new ArrayList<>();
+
+        for(int i = 0; i < node.size(); i++) {
+          children.add(node(node.get(i)));
+        }
+
+        ref = size();
+        writeInt(NODE_ARRAY);
+        writeInt(children.size());
+
+        for(int child : children) {
+          writeInt(child);
+        }
+      } else if(node.isNull()) {
+        ref = size();
+        writeInt(NODE_NULL);
+      } else {
+        int text = string(node.asText());
+
+        ref = size();
+        writeInt(NODE_TEXT);
+        writeInt(text);
+      }
+
+      return ref;
+    }
+
+    private String getString(int ref) {
+      int length = data.getInt(ref);
+      char[] chars = new char[length];
+
+      for(int i = 0; i < length; i++) {
+        chars[i] = data.getChar(ref + 4 + i * 2);
+      }
+
+      return new String(chars);
+    }
+
+    private void writeTo(OutputStream out) throws IOException {
+      out.write(data.array(), 0, data.position());
+    }
+  }
+}
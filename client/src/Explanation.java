@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//A TRACE OF ONE CLASSIFICATION, BUILT BY explain. classify NEVER BUILDS ONE
+public final class Explanation {
+  private final String input;
+  private final String domain;
+  private final TextGlassClient.Matcher matcher;
+
+  //INPUT PARSING
+  private String transformed;
+  private List<String> tokens;
+  private List<String> ngrams;
+
+  //PATTERN MATCHING, CANDIDATES IN RANKING ORDER
+  private final List<Hit> hits;
+  private final List<Candidate> candidates;
+  private String winnerId;
+
+  //ATTRIBUTE RESOLUTION, patternId IS THE DEFAULT WHEN THERE IS NO WINNER
+  private String patternId;
+  private boolean attributesFound;
+  private String parentId;
+  private final List<AttributeTransform> attributeTransforms;
+  private ClassificationResult result;
+
+  Explanation(String input, String domain, TextGlassClient.Matcher matcher) {
+    this.input = input;
+    this.domain = domain;
+    this.matcher = matcher;
+
+    hits = new ArrayList<>();
+    candidates = new ArrayList<>();
+    attributeTransforms = new ArrayList<>();
+  }
+
+  void setParsed(String transformed, List<String> tokens, List<String> ngrams) {
+    this.transformed = transformed;
+    this.tokens = Collections.unmodifiableList(tokens);
+    this.ngrams = Collections.unmodifiableList(ngrams);
+  }
+
+  void addHit(String token, List<String> patternIds) {
+    hits.add(new Hit(token, patternIds));
+  }
+
+  void addCandidate(String candidateId, boolean valid, long rank, long matchedLength) {
+    candidates.add(new Candidate(candidateId, valid, rank, matchedLength));
+  }
+
+  void setWinnerId(String winnerId) {
+    this.winnerId = winnerId;
+  }
+
+  void setAttributes(String patternId, Attributes attributes) {
+    this.patternId = patternId;
+
+    attributesFound = (attributes != null);
+    parentId = (attributes == null ? null : attributes.getParentId());
+  }
+
+  void addAttributeTransform(String key, String transformer, String value, String error) {
+    attributeTransforms.add(new AttributeTransform(key, transformer, value, error));
+  }
+
+  void setResult(ClassificationResult result) {
+    this.result = result;
+  }
+
+  public String getInput() {
+    return input;
+  }
+
+  public String getDomain() {
+    return domain;
+  }
+
+  public TextGlassClient.Matcher getMatcher() {
+    return matcher;
+  }
+
+  public String getTransformed() {
+    return transformed;
+  }
+
+  public List<String> getTokens() {
+    return tokens;
+  }
+
+  public List<String> getNgrams() {
+    return ngrams;
+  }
+
+  public List<Hit> getHits() {
+    return Collections.unmodifiableList(hits);
+  }
+
+  public List<Candidate> getCandidates() {
+    return Collections.unmodifiableList(candidates);
+  }
+
+  public String getWinnerId() {
+    return winnerId;
+  }
+
+  public boolean isDefault() {
+    return winnerId == null && patternId != null;
+  }
+
+  public String getPatternId() {
+    return patternId;
+  }
+
+  public boolean isAttributesFound() {
+    return attributesFound;
+  }
+
+  public String getParentId() {
+    return parentId;
+  }
+
+  public List<AttributeTransform> getAttributeTransforms() {
+    return Collections.unmodifiableList(attributeTransforms);
+  }
+
+  public ClassificationResult getResult() {
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "Explanation input: '" + input + "', hit(s): " + hits.size() + ", candidate(s): " + candidates.size() +
+        ", winner: " + winnerId + (isDefault() ? ", default: " + patternId : "") + ", result: " + result;
+  }
+
+  //A MATCHED PATTERN TOKEN AND THE PATTERNS IT BELONGS TO
+  public static final class Hit {
+    private final String token;
+    private final List<String> patternIds;
+
+    private Hit(String token, List<String> patternIds) {
+      this.token = token;
+      this.patternIds = Collections.unmodifiableList(patternIds);
+    }
+
+    public String getToken() {
+      return token;
+    }
+
+    public List<String> getPatternIds() {
+      return patternIds;
+    }
+
+    @Override
+    public String toString() {
+      return token + ", candidates: " + patternIds;
+    }
+  }
+
+  public static final class Candidate {
+    private final String patternId;
+    private final boolean valid;
+    private final long rank;
+    private final long matchedLength;
+
+    private Candidate(String patternId, boolean valid, long rank, long matchedLength) {
+      this.patternId = patternId;
+      this.valid = valid;
+      this.rank = rank;
+      this.matchedLength = matchedLength;
+    }
+
+    public String getPatternId() {
+      return patternId;
+    }
+
+    public boolean isValid() {
+      return valid;
+    }
+
+    public long getRank() {
+      return rank;
+    }
+
+    public long getMatchedLength() {
+      return matchedLength;
+    }
+
+    @Override
+    public String toString() {
+      return patternId + "(" + rank + "," + matchedLength + ")" + (valid ? "" : " invalid");
+    }
+  }
+
+  //AN attributeTransformer RUN, value IS null AND error IS SET WHEN IT FAILED
+  public static final class AttributeTransform {
+    private final String key;
+    private final String transformer;
+    private final String value;
+    private final String error;
+
+    private AttributeTransform(String key, String transformer, String value, String error) {
+      this.key = key;
+      this.transformer = transformer;
+      this.value = value;
+      this.error = error;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public String getTransformer() {
+      return transformer;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public String getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return key + ": " + (error == null ? "'" + value + "'" : "error " + error) + " " + transformer;
+    }
+  }
+}
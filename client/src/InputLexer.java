@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InputLexer {
+
+  //STAGE TYPES
+
+  private final static int LOWER_CASE = 0;
+  private final static int UPPER_CASE = 1;
+  private final static int REPLACE_ALL = 2;
+  private final static int REPLACE_FIRST = 3;
+
+  private final int[] types;
+  private final char[][] finds;
+  private final char[][] replaceWiths;
+
+  private final char[][] seperators;
+  private final int maxSeperator;
+
+  //LEADING CHAR LOCAL STAGES COMPOSED INTO ONE ASCII TABLE, NULL ENTRY MEANS FALL BACK
+  private final int tableStages;
+  private final char[][] table;
+  private final boolean tableCase;
+
+  //SINGLE CHAR SEPERATORS
+  private final boolean[] seperatorChars;
+
+  //REUSED PER THREAD, ONLY THE TOKENS ARE ALLOCATED PER CALL
+  private final ThreadLocal<Run> runs;
+
+  private InputLexer(int[] types, char[][] finds, char[][] replaceWiths, char[][] seperators) {
+    this.types = types;
+    this.finds = finds;
+    this.replaceWiths = replaceWiths;
+    this.seperators = seperators;
+
+    int max = 0;
+
+    for(char[] seperator : seperators) {
+      max = Math.max(max, seperator.length);
+    }
+
+    maxSeperator = max;
+
+    //COMPOSE THE LEADING CHAR LOCAL STAGES
+
+    int stages = 0;
+    boolean hasCase = false;
+
+    while(stages < types.length && (types[stages] == LOWER_CASE || types[stages] == UPPER_CASE ||
+        (types[stages] == REPLACE_ALL && finds[stages].length == 1))) {
+      hasCase |= (types[stages] != REPLACE_ALL);
+      stages++;
+    }
+
+    tableStages = stages;
+    tableCase = hasCase;
+    table = (stages > 0 ? new char[0x80][] : null);
+
+    for(int c = 0; table != null && c < 0x80; c++) {
+      table[c] = compose((char)c, stages);
+    }
+
+    if(maxSeperator == 1) {
+      seperatorChars = new boolean[0x80];
+
+      for(char[] seperator : seperators) {
+        if(seperator[0] < 0x80) {
+          seperatorChars[seperator[0]] = true;
+        }
+      }
+    } else {
+      seperatorChars = null;
+    }
+
+    runs = new ThreadLocal<>();
+  }
+
+  private char[] compose(char c, int stages) {
+    StringBuilder chars = new StringBuilder().append(c);
+
+    for(int i = 0; i < stages; i++) {
+      StringBuilder next = new StringBuilder();
+
+      for(int j = 0; j < chars.length(); j++) {
+        char ch = chars.charAt(j);
+
+        if(types[i] == REPLACE_ALL) {
+          next.append(ch == finds[i][0] ? new String(replaceWiths[i]) : String.valueOf(ch));
+        } else if(ch >= 0x80) {
+          return null;
+        } else if(types[i] == LOWER_CASE) {
+          next.append(ch >= 'A' && ch <= 'Z' ? (char)(ch + ('a' - 'A')) : ch);
+        } else {
+          next.append(ch >= 'a' && ch <= 'z' ? (char)(ch - ('a' - 'A')) : ch);
+        }
+      }
+
+      chars = next;
+    }
+
+    return chars.toString().toCharArray();
+  }
+
+  //FUSE A TRANSFORMER CHAIN AND TOKEN SEPERATORS, NULL IF THE CHAIN CANNOT BE FUSED
+  public static InputLexer compile(List<Transformer> transformers, List<String> tokenSeperators) {
+    int[] types = new int[transformers.size()];
+    char[][] finds = new char[transformers.size()][];
+    char[][] replaceWiths = new char[transformers.size()][];
+
+    //CASE STAGES MAP ASCII ONE CHAR AT A TIME, WHICH DOES NOT HOLD IN EVERY LOCALE
+
+    boolean asciiCase = "I".toLowerCase().equals("i") && "i".toUpperCase().equals("I");
+
+    for(int i = 0; i < transformers.size(); i++) {
+      Transformer transformer = transformers.get(i);
+
+      if(transformer instanceof TransformerLowerCase && asciiCase) {
+        types[i] = LOWER_CASE;
+      } else if(transformer instanceof TransformerUpperCase && asciiCase) {
+        types[i] = UPPER_CASE;
+      } else if(transformer instanceof TransformerReplaceAll) {
+        types[i] = REPLACE_ALL;
+        finds[i] = ((TransformerReplaceAll)transformer).getFind().toCharArray();
+        replaceWiths[i] = ((TransformerReplaceAll)transformer).getReplaceWith().toCharArray();
+      } else if(transformer instanceof TransformerReplaceFirst) {
+        types[i] = REPLACE_FIRST;
+        finds[i] = ((TransformerReplaceFirst)transformer).getFind().toCharArray();
+        replaceWiths[i] = ((TransformerReplaceFirst)transformer).getReplaceWith().toCharArray();
+      } else {
+        return null;
+      }
+    }
+
+    char[][] seperators = new char[tokenSeperators.size()][];
+
+    for(int i = 0; i < seperators.length; i++) {
+      seperators[i] = tokenSeperators.get(i).toCharArray();
+    }
+
+    return new InputLexer(types, finds, replaceWiths, seperators);
+  }
+
+  //TRANSFORM AND TOKENIZE IN ONE PASS, NULL IF THE INPUT NEEDS THE GENERIC CHAIN
+  public List<String> tokenize(String input) {
+    Run run = getRun();
+
+    for(int i = 0; i < input.length(); i++) {
+      if(!lex(run, input.charAt(i))) {
+        return null;
+      }
+    }
+
+    return (run.flush(0) ? run.tokens : null);
+  }
+
+  //SAME AS tokenize(String), KEPT APART SO THE String LOOP STAYS MONOMORPHIC
+  public List<String> tokenize(CharSequence input) {
+    Run run = getRun();
+
+    for(int i = 0; i < input.length(); i++) {
+      if(!lex(run, input.charAt(i))) {
+        return null;
+      }
+    }
+
+    return (run.flush(0) ? run.tokens : null);
+  }
+
+  private Run getRun() {
+    Run run = runs.get();
+
+    if(run == null) {
+      run = new Run();
+      runs.set(run);
+    }
+
+    run.reset();
+
+    return run;
+  }
+
+  private boolean lex(Run run, char c) {
+    if(table == null) {
+      return run.push(0, c);
+    } else if(c < 0x80) {
+      char[] mapped = table[c];
+
+      if(mapped == null) {
+        return false;
+      }
+
+      for(char m : mapped) {
+        if(!run.push(tableStages, m)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    return !tableCase && run.push(0, c);
+  }
+
+  @Override
+  public String toString() {
+    return "InputLexer " + types.length + " stage(s), " + seperators.length + " tokenSeperator(s)";
+  }
+
+  //PER CALL STATE, ONE WINDOW PER REPLACE STAGE AND ONE FOR THE SEPERATORS
+  private class Run {
+    private final char[][] windows;
+    private final int[] windowSizes;
+    private final int[] positions;
+    private final boolean[] done;
+
+    private char[] token;
+    private int tokenLength;
+
+    private List<String> tokens;
+
+    private Run() {
+      windows = new char[types.length + 1][];
+      windowSizes = new int[types.length + 1];
+      positions = new int[types.length];
+      done = new boolean[types.length];
+
+      for(int i = 0; i < types.length; i++) {
+        if(finds[i] != null) {
+          windows[i] = new char[finds[i].length];
+        }
+      }
+
+      windows[types.length] = new char[maxSeperator];
+
+      token = new char[64];
+    }
+
+    private void reset() {
+      for(int i = 0; i < types.length; i++) {
+        windowSizes[i] = 0;
+        positions[i] = 0;
+        done[i] = false;
+      }
+
+      windowSizes[types.length] = 0;
+      tokenLength = 0;
+
+      tokens = new ArrayList<>();
+    }
+
+    private boolean push(int stage, char c) {
+      if(stage == types.length) {
+        pushSeperator(c);
+        return true;
+      }
+
+      switch(types[stage]) {
+        case LOWER_CASE:
+          if(c >= 0x80) {
+            return false;
+          }
+
+          return push(stage + 1, (c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c));
+        case UPPER_CASE:
+          if(c >= 0x80) {
+            return false;
+          }
+
+          return push(stage + 1, (c >= 'a' && c <= 'z' ? (char)(c - ('a' - 'A')) : c));
+        default:
+          return pushReplace(stage, c);
+      }
+    }
+
+    //SAME RESULT AS String.replace AND TransformerReplaceFirst: LEFT TO RIGHT, NON OVERLAPPING
+    private boolean pushReplace(int stage, char c) {
+      if(done[stage]) {
+        return push(stage + 1, c);
+      }
+
+      char[] window = windows[stage];
+      char[] find = finds[stage];
+
+      //SINGLE CHAR FIND, NO WINDOW NEEDED
+
+      if(find.length == 1 && c != find[0]) {
+        positions[stage]++;
+
+        return push(stage + 1, c);
+      }
+
+      window[windowSizes[stage]++] = c;
+
+      if(windowSizes[stage] < find.length) {
+        return true;
+      }
+
+      boolean found = true;
+
+      for(int i = 0; i < find.length; i++) {
+        if(window[i] != find[i]) {
+          found = false;
+          break;
+        }
+      }
+
+      if(!found) {
+        char first = window[0];
+
+        positions[stage]++;
+        windowSizes[stage]--;
+        System.arraycopy(window, 1, window, 0, windowSizes[stage]);
+
+        return push(stage + 1, first);
+      }
+
+      windowSizes[stage] = 0;
+
+      if(types[stage] == REPLACE_FIRST) {
+        done[stage] = true;
+
+        //A FIRST MATCH AT POSITION 0 IS NOT REPLACED
+
+        if(positions[stage] == 0) {
+          for(int i = 0; i < find.length; i++) {
+            if(!push(stage + 1, find[i])) {
+              return false;
+            }
+          }
+
+          return true;
+        }
+      }
+
+      positions[stage] += find.length;
+
+      for(char r : replaceWiths[stage]) {
+        if(!push(stage + 1, r)) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    private void pushSeperator(char c) {
+      if(maxSeperator == 0) {
+        appendToken(c);
+        return;
+      }
+
+      //SINGLE CHAR SEPERATORS, NO WINDOW NEEDED
+
+      if(maxSeperator == 1) {
+        if(c < 0x80) {
+          if(seperatorChars[c]) {
+            endToken();
+          } else {
+            appendToken(c);
+          }
+
+          return;
+        }
+
+        for(char[] seperator : seperators) {
+          if(seperator[0] == c) {
+            endToken();
+            return;
+          }
+        }
+
+        appendToken(c);
+        return;
+      }
+
+      windows[types.length][windowSizes[types.length]++] = c;
+
+      if(windowSizes[types.length] == maxSeperator) {
+        stepSeperator();
+      }
+    }
+
+    //SAME RULES AS TextGlassClient.split, FIRST MATCHING SEPERATOR WINS
+    private void stepSeperator() {
+      char[] window = windows[types.length];
+      int size = windowSizes[types.length];
+
+      seperator:
+      for(char[] seperator : seperators) {
+        if(seperator.length > size) {
+          continue;
+        }
+
+        for(int i = 0; i < seperator.length; i++) {
+          if(window[i] != seperator[i]) {
+            continue seperator;
+          }
+        }
+
+        endToken();
+
+        System.arraycopy(window, seperator.length, window, 0, size - seperator.length);
+        windowSizes[types.length] = size - seperator.length;
+
+        return;
+      }
+
+      appendToken(window[0]);
+
+      System.arraycopy(window, 1, window, 0, size - 1);
+      windowSizes[types.length] = size - 1;
+    }
+
+    private boolean flush(int stage) {
+      if(stage == types.length) {
+        while(windowSizes[stage] > 0) {
+          stepSeperator();
+        }
+
+        endToken();
+
+        return true;
+      }
+
+      if(windows[stage] != null) {
+        for(int i = 0; i < windowSizes[stage]; i++) {
+          if(!push(stage + 1, windows[stage][i])) {
+            return false;
+          }
+        }
+
+        windowSizes[stage] = 0;
+      }
+
+      return flush(stage + 1);
+    }
+
+    private void appendToken(char c) {
+      if(tokenLength == token.length) {
+        char[] grown = new char[token.length * 2];
+        System.arraycopy(token, 0, grown, 0, tokenLength);
+        token = grown;
+      }
+
+      token[tokenLength++] = c;
+    }
+
+    private void endToken() {
+      if(tokenLength > 0) {
+        tokens.add(new String(token, 0, tokenLength));
+        tokenLength = 0;
+      }
+    }
+  }
+}
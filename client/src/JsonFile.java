@@ -16,14 +16,21 @@
  *
  */
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
 
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.NullNode;
 
 public class JsonFile {
 
-  private static JsonNode nullNode = null;
+  private final static JsonNode nullNode = NullNode.getInstance();
+
+  private final static int BUFFER_SIZE = 64 * 1024;
   
   private final JsonNode json;
 
@@ -35,8 +42,41 @@ public class JsonFile {
 
     //LOAD A JSON FILE AND VALIDATE IT
     
-    ObjectMapper mapper = new ObjectMapper();
-    json = mapper.readTree(new File(path));
+    this(readTree(path));
+  }
+
+  private static JsonNode readTree(String path) throws Exception {
+    try(InputStream in = open(path)) {
+      return new ObjectMapper().readTree(in);
+    }
+  }
+
+  //OPEN A FILE FOR PARSING, GZIP FILES ARE DETECTED BY THEIR MAGIC NUMBER
+  public static InputStream open(String path) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE);
+
+    try {
+      in.mark(2);
+
+      int magic = in.read() | (in.read() << 8);
+
+      in.reset();
+
+      if(magic == GZIPInputStream.GZIP_MAGIC) {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+      }
+
+      return in;
+    } catch(IOException e) {
+      in.close();
+
+      throw e;
+    }
+  }
+
+  //VALIDATE PARSED JSON, A STREAMED FILE PASSES JUST ITS HEADER FIELDS
+  JsonFile(JsonNode json) throws Exception {
+    this.json = json;
 
     if(!json.isObject()) {
       throw new Exception("JsonFile is not an object");
@@ -75,11 +115,6 @@ public class JsonFile {
       return ret;
     }
 
-    if(nullNode == null) {
-      ObjectMapper mapper = new ObjectMapper();
-      nullNode = mapper.readTree("null");
-    }
-
     return nullNode;
   }
 
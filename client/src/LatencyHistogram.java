@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+//LOG LINEAR LATENCY HISTOGRAM IN NANOSECONDS, BUCKETS ARE WITHIN 1/16 OF THEIR
+//VALUE. NOT THREAD SAFE, KEEP ONE PER THREAD AND merge THEM
+public class LatencyHistogram {
+
+  private final static int SUB_BITS = 4;
+  private final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+  private final long[] counts;
+  private long count;
+  private long total;
+  private long max;
+
+  public LatencyHistogram() {
+    counts = new long[64 * SUB_BUCKETS];
+    count = 0;
+    total = 0;
+    max = 0;
+  }
+
+  public void record(long ns) {
+    if(ns < 0) {
+      ns = 0;
+    }
+
+    counts[getIndex(ns)]++;
+    count++;
+    total += ns;
+
+    if(ns > max) {
+      max = ns;
+    }
+  }
+
+  public void merge(LatencyHistogram other) {
+    for(int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+
+    count += other.count;
+    total += other.total;
+    max = Math.max(max, other.max);
+  }
+
+  //VALUES BELOW 16 HAVE THEIR OWN BUCKET, THEN 16 BUCKETS PER POWER OF 2
+  private static int getIndex(long ns) {
+    if(ns < SUB_BUCKETS) {
+      return (int)ns;
+    }
+
+    int exp = 63 - Long.numberOfLeadingZeros(ns);
+    int sub = (int)(ns >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+
+    return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long getUpperBound(int index) {
+    if(index < SUB_BUCKETS) {
+      return index;
+    }
+
+    int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+    int sub = index % SUB_BUCKETS;
+    int shift = exp - SUB_BITS;
+
+    return ((long)(SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+  }
+
+  //UPPER BOUND OF THE BUCKET HOLDING THE PERCENTILE, NEVER ABOVE max
+  public long getPercentile(double percentile) {
+    if(count == 0) {
+      return 0;
+    }
+
+    long target = (long)Math.ceil(percentile / 100 * count);
+    long seen = 0;
+
+    if(target < 1) {
+      target = 1;
+    }
+
+    for(int i = 0; i < counts.length; i++) {
+      seen += counts[i];
+
+      if(seen >= target) {
+        return Math.min(getUpperBound(i), max);
+      }
+    }
+
+    return max;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public long getMean() {
+    return (count == 0 ? 0 : total / count);
+  }
+
+  public long getMax() {
+    return max;
+  }
+
+  public static String format(long ns) {
+    if(ns < 1000 * 1000) {
+      return String.format("%.1fus", ns / 1000.0);
+    } else if(ns < 1000 * 1000 * 1000) {
+      return String.format("%.2fms", ns / (1000.0 * 1000));
+    } else {
+      return String.format("%.2fs", ns / (1000.0 * 1000 * 1000));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "mean: " + format(getMean()) + ", p50: " + format(getPercentile(50)) +
+        ", p90: " + format(getPercentile(90)) + ", p99: " + format(getPercentile(99)) +
+        ", p99.9: " + format(getPercentile(99.9)) + ", max: " + format(max);
+  }
+}
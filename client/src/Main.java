@@ -16,24 +16,78 @@
  *
  */
 
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.codehaus.jackson.JsonNode;
 
 public class Main {
 
-  private static int verbose = 1;
+  //VOLATILE, setVerbose() MAY RACE WITH CLASSIFYING THREADS
+  private static volatile int verbose = 1;
+
+  private final static int STRESS_ROUNDS = 4;
+
+  private final static int DEFAULT_TEST_SLOWEST = 10;
+
+  private final static long DEFAULT_CACHE_BYTES = 64 * 1024 * 1024;
   
+  //STREAMED RESULTS ON STDOUT MOVE THE LOG TO STDERR
+  private static volatile PrintStream logStream = System.out;
+
   public static void main(String args[]) throws Exception {
+    List<String> argList = Arrays.asList(args);
+
+    if(argList.contains("-i") && !argList.contains("-o")) {
+      logStream = System.err;
+    }
+
     log("TextGlass Reference Client " + TextGlassClient.VERSION, 0);
 
     String pattern = null;
     String attribute = null;
     String patternPatch = null;
     String attributePatch = null;
+    String snapshot = null;
+    String compile = null;
+    TextGlassClient.Matcher matcher = TextGlassClient.Matcher.Ngram;
+    String cacheEntries = null;
+    String cacheBytes = null;
+    String stressThreads = null;
+    String testWorkers = null;
+    String testSlowest = null;
+    String loadWorkers = null;
+    boolean loadStreaming = false;
+    boolean lazyAttributes = false;
+    boolean compactPatterns = false;
+    boolean reload = false;
+    boolean metrics = false;
+    String streamInput = null;
+    String streamOutput = null;
+    String streamWorkers = null;
+    boolean unordered = false;
+    String accessLog = null;
+    List<String> accessLogAttributes = new ArrayList<>();
     
     List<String> tests = new ArrayList<>();
 
@@ -72,6 +126,56 @@ public class Main {
           throw new Exception("attribute patch file already defined");
         }
         attributePatch = getParam(args, ++i, "-ap file parameter missing");
+      } else if(option.equals("-s")) {
+        if(snapshot != null) {
+          throw new Exception("snapshot file already defined");
+        }
+        snapshot = getParam(args, ++i, "-s file parameter missing");
+      } else if(option.equals("-c")) {
+        if(compile != null) {
+          throw new Exception("compile file already defined");
+        }
+        compile = getParam(args, ++i, "-c file parameter missing");
+      } else if(option.equals("-m")) {
+        matcher = getMatcher(getParam(args, ++i, "-m matcher parameter missing"));
+      } else if(option.equals("-rc")) {
+        cacheEntries = getParam(args, ++i, "-rc entries missing");
+      } else if(option.equals("-rcb")) {
+        cacheBytes = getParam(args, ++i, "-rcb bytes missing");
+      } else if(option.equals("-i")) {
+        if(i + 1 < args.length && args[i + 1].equals("-")) {
+          streamInput = args[++i];
+        } else {
+          streamInput = getParam(args, ++i, "-i file parameter missing");
+        }
+      } else if(option.equals("-o")) {
+        streamOutput = getParam(args, ++i, "-o file parameter missing");
+      } else if(option.equals("-wk")) {
+        streamWorkers = getParam(args, ++i, "-wk workers missing");
+      } else if(option.equals("-al")) {
+        accessLog = getParam(args, ++i, "-al file parameter missing");
+      } else if(option.equals("-ala")) {
+        accessLogAttributes.add(getParam(args, ++i, "-ala attribute missing"));
+      } else if(option.equals("-u")) {
+        unordered = true;
+      } else if(option.equals("-rl")) {
+        reload = true;
+      } else if(option.equals("-mx")) {
+        metrics = true;
+      } else if(option.equals("-st")) {
+        stressThreads = getParam(args, ++i, "-st threads missing");
+      } else if(option.equals("-tw")) {
+        testWorkers = getParam(args, ++i, "-tw workers missing");
+      } else if(option.equals("-lw")) {
+        loadWorkers = getParam(args, ++i, "-lw workers missing");
+      } else if(option.equals("-ls")) {
+        loadStreaming = true;
+      } else if(option.equals("-la")) {
+        lazyAttributes = true;
+      } else if(option.equals("-cp")) {
+        compactPatterns = true;
+      } else if(option.equals("-tn")) {
+        testSlowest = getParam(args, ++i, "-tn count missing");
       } else if(option.equals("-t")) {
         tests.add(getParam(args, ++i, "-t file parameter missing"));
       } else if(!option.startsWith("-") && testString == null) {
@@ -90,12 +194,81 @@ public class Main {
       }
     }
 
-    if(pattern == null) {
+    if(snapshot != null && (pattern != null || patternPatch != null || attribute != null || attributePatch != null)) {
+      printHelp();
+      throw new Exception("Snapshot file cannot be combined with pattern or attribute files");
+    }
+
+    if(snapshot != null && compile != null) {
+      printHelp();
+      throw new Exception("Snapshot file cannot be compiled");
+    }
+
+    if(cacheBytes != null && cacheEntries == null) {
+      printHelp();
+      throw new Exception("Result cache byte limit requires -rc");
+    }
+
+    if(streamInput == null && accessLog == null && (streamOutput != null || streamWorkers != null)) {
+      printHelp();
+      throw new Exception("Stream options require -i or -al");
+    }
+
+    if(streamInput == null && unordered) {
+      printHelp();
+      throw new Exception("Unordered output requires -i");
+    }
+
+    if(testSlowest != null && testWorkers == null) {
+      printHelp();
+      throw new Exception("Slowest test count requires -tw");
+    }
+
+    if(accessLog == null && !accessLogAttributes.isEmpty()) {
+      printHelp();
+      throw new Exception("Access log attributes require -al");
+    }
+
+    if(streamInput != null && accessLog != null) {
+      printHelp();
+      throw new Exception("Stream input cannot be combined with an access log");
+    }
+
+    if(snapshot != null && loadWorkers != null) {
+      printHelp();
+      throw new Exception("Snapshot file cannot be loaded in parallel");
+    }
+
+    if(snapshot != null && loadStreaming) {
+      printHelp();
+      throw new Exception("Snapshot file cannot be streamed");
+    }
+
+    if(snapshot != null && lazyAttributes) {
+      printHelp();
+      throw new Exception("Snapshot attributes are always lazy");
+    }
+
+    if(snapshot != null && compactPatterns) {
+      printHelp();
+      throw new Exception("Compact patterns cannot be combined with -s");
+    }
+
+    if(loadStreaming && loadWorkers != null) {
+      printHelp();
+      throw new Exception("Streaming load cannot be combined with -lw");
+    }
+
+    if(pattern == null && snapshot == null) {
       printHelp();
       throw new Exception("Pattern file required");
     }
 
-    log("Pattern file: '" + pattern + "'", 1);
+    if(snapshot != null) {
+      log("Snapshot file: '" + snapshot + "'", 1);
+    } else {
+      log("Pattern file: '" + pattern + "'", 1);
+    }
 
     if(patternPatch != null) {
       log("Pattern patch file: '" + patternPatch + "'", 1);
@@ -109,33 +282,99 @@ public class Main {
       log("Attribute patch file: '" + attributePatch + "'", 1);
     }
 
+    LoadOptions load = new LoadOptions();
+
+    load.matcher = matcher;
+    load.parallelism = (loadWorkers == null ? 1 : getInt(loadWorkers, "Invalid load workers: "));
+    load.streaming = loadStreaming;
+    load.lazyAttributes = lazyAttributes;
+    load.compactPatterns = compactPatterns;
+    load.snapshot = snapshot;
+    load.pattern = pattern;
+    load.patternPatch = patternPatch;
+    load.attribute = attribute;
+    load.attributePatch = attributePatch;
+
     //WARMUP
     
     if(warmup != null) {
-      runWarmup(warmup, pattern, patternPatch, attribute, attributePatch, tests);
+      runWarmup(warmup, load, tests);
     }
 
     //BUILD THE TEXTGLASS CLIENT
 
     start = System.nanoTime();
 
-    TextGlassClient client = new TextGlassClient();
-
-    client.load(loadJson(pattern), loadJson(patternPatch), loadJson(attribute), loadJson(attributePatch));
+    TextGlassClient client = load.newClient();
     
     time = System.nanoTime() - start;
     log("Domain load time: " + getTime(time), 0);
 
+    if(cacheEntries != null) {
+      client.setResultCache(getInt(cacheEntries, "Invalid result cache size: "),
+          (cacheBytes == null ? DEFAULT_CACHE_BYTES : getLong(cacheBytes, "Invalid result cache byte limit: ")));
+    }
+
+    if(metrics) {
+      client.enableMetrics();
+    }
+
+    //COMPILE A SNAPSHOT
+
+    if(compile != null) {
+      start = System.nanoTime();
+
+      DomainSnapshot.compile(loadJson(pattern), loadJson(patternPatch), loadJson(attribute), loadJson(attributePatch), compile);
+
+      time = System.nanoTime() - start;
+      log("Snapshot compile time: " + getTime(time), 0);
+    }
+
+    //RELOAD THE DOMAIN IN THE BACKGROUND WHILE TESTING
+
+    DomainReloader reloader = null;
+    Future<Boolean> reloaded = null;
+
+    if(reload) {
+      reloader = new DomainReloader(client, snapshot, pattern, patternPatch, attribute, attributePatch);
+      reloaded = reloader.reload();
+    }
+
     //DO THE TESTS
 
     for(String test : tests) {
       log("Test file: '" + test + "'", 1);
-      failure |= test(client, new JsonFile(test));
+
+      if(testWorkers != null) {
+        failure |= testParallel(client, test, getInt(testWorkers, "Invalid test workers: "),
+            (testSlowest == null ? DEFAULT_TEST_SLOWEST : getInt(testSlowest, "Invalid slowest test count: ")));
+      } else {
+        failure |= test(client, new JsonFile(test));
+      }
+    }
+
+    if(stressThreads != null) {
+      failure |= stressTest(client, tests, getInt(stressThreads, "Invalid stress test threads: "));
+    }
+
+    if(streamInput != null) {
+      streamClassify(client, streamInput, streamOutput,
+          (streamWorkers == null ? Runtime.getRuntime().availableProcessors() : getInt(streamWorkers, "Invalid stream workers: ")),
+          !unordered);
+    }
+
+    if(accessLog != null) {
+      classifyAccessLog(client, accessLog, accessLogAttributes, streamOutput,
+          (streamWorkers == null ? Runtime.getRuntime().availableProcessors() : getInt(streamWorkers, "Invalid stream workers: ")));
     }
 
     if(testString != null) {
       log("Test string: '" + testString + "'", 1);
 
+      if(isLogging(2)) {
+        logExplanation(client.explain(testString));
+      }
+
       start = System.nanoTime();
 
       Map<String, String> result = client.classify(testString);
@@ -146,6 +385,28 @@ public class Main {
       log("Test time: " + getTime(time), 0);
     }
 
+    if(reloader != null) {
+      boolean success = reloaded.get();
+
+      log("Domain reload time: " + getTime(reloader.getLastDuration()), 0);
+      log(reloader.toString(), 1);
+
+      reloader.close();
+
+      if(!success) {
+        throw new Exception("Domain reload failed: " + reloader.getLastStatus());
+      }
+    }
+
+    if(client.getResultCache() != null) {
+      log(client.getResultCache().toString(), 1);
+    }
+
+    if(client.getMetrics() != null) {
+      log(client.getMetrics().toString(), 1);
+      log(client.getMetrics().getPrometheus(), 0);
+    }
+
     if(failure) {
       throw new Exception("One or more tests failed");
     }
@@ -153,11 +414,31 @@ public class Main {
 
   private static void printHelp() {
     log("Usage: " + Main.class.getName() + " [OPTIONS] [STRING]\n", 0);
-    log("  -p <file>            load TextGlass pattern file (REQUIRED)", 0);
+    log("  -p <file>            load TextGlass pattern file (REQUIRED unless -s)", 0);
     log("  -a <file>            load TextGlass attribute file", 0);
     log("  -pp <file>           load TextGlass pattern patch file", 0);
     log("  -ap <file>           load TextGlass attribute patch file", 0);
+    log("  -s <file>            load compiled TextGlass snapshot file", 0);
+    log("  -c <file>            compile the loaded domain into a snapshot file", 0);
+    log("  -lw <workers>        parse and build the domain files on a worker pool", 0);
+    log("  -ls                  stream the domain files instead of parsing them whole", 0);
+    log("  -la                  index the attributes at load, build each on first use", 0);
+    log("  -cp                  store the patterns in compact columnar arrays", 0);
+    log("  -m <matcher>         token matcher: Ngram (default), AhoCorasick or RollingHash", 0);
+    log("  -rl                  reload the domain in the background while testing", 0);
+    log("  -mx                  record classify metrics, print them in Prometheus format", 0);
+    log("  -rc <entries>        enable the result cache", 0);
+    log("  -rcb <bytes>         result cache byte limit, default: " + DEFAULT_CACHE_BYTES, 0);
     log("  -t <file>            load TextGlass test file", 0);
+    log("  -tw <workers>        stream the test files and verify them on a worker pool", 0);
+    log("  -tn <count>          slowest test inputs to print with -tw, default: " + DEFAULT_TEST_SLOWEST, 0);
+    log("  -i <file>            classify each line of a file, - for stdin, JSONL results", 0);
+    log("  -o <file>            JSONL result file, default: stdout", 0);
+    log("  -wk <workers>        stream worker threads, default: all cores", 0);
+    log("  -u                   stream results may be written out of order", 0);
+    log("  -al <file>           count the User-Agents of a combined format access log", 0);
+    log("  -ala <attribute>     also count an attribute's values for -al", 0);
+    log("  -st <threads>        classify the test files from many threads and compare", 0);
     log("  -h                   print help", 0);
     log("  -w <iterations>      run warmup", 0);
     log("  -q                   quiet", 0);
@@ -167,7 +448,7 @@ public class Main {
     log("", 0);
   }
 
-  private static String getParam(String args[], int pos, String error) throws Exception {
+  static String getParam(String args[], int pos, String error) throws Exception {
     if(pos >= args.length) {
       throw new Exception(error);
     } else if(args[pos].startsWith("-") || args[pos].isEmpty()) {
@@ -177,33 +458,31 @@ public class Main {
     }
   }
 
+  public static void setVerbose(int level) {
+    verbose = level;
+  }
+
+  public static boolean isLogging(int level) {
+    return level <= verbose;
+  }
+
   public static void log(String s, int level) {
     if(level <= verbose) {
+      PrintStream stream = logStream;
+
       for(int i = 0; i < level; i++) {
-        System.out.print("  ");
+        stream.print("  ");
       }
       
-      System.out.println(s);
+      stream.println(s);
     }
   }
 
   private static boolean test(TextGlassClient client, JsonFile tests) throws Exception {
 
     //PARSE TEST FILE JSON
-    
-    if(!tests.getType().equals("test")) {
-      throw new Exception("Unknown test type: " + tests.getType());
-    }
-
-    if(!tests.getDomain().equals(client.getDomain())) {
-      throw new Exception("Domains do not match: " + client.getDomain() + " != " + tests.getDomain());
-    }
 
-    if(!tests.getDomainVersion().equals(client.getDomainVersion())) {
-      throw new Exception("DomainVersions do not match: " + client.getDomainVersion() + " != " + tests.getDomainVersion());
-    }
-
-    log("Loading test: " + tests.getDomain() + ", version: " + tests.getDomainVersion(), 1);
+    checkTestFile(client, tests);
 
     int testCount = 0;
     int passCount = 0;
@@ -223,73 +502,371 @@ public class Main {
           }
 
           String input = test.get("input").asText();
-          String resultPatternId = null;
 
-          if(!JsonFile.get(test, "resultPatternId").isNull()) {
-            resultPatternId = JsonFile.get(test, "resultPatternId").asText();
+          //TRACE THE CLASSIFICATION, -v AND -vv
+
+          if(isLogging(2)) {
+            logExplanation(client.explain(input));
           }
 
           //PERFORM CLASSIFICATION
 
           Map<String, String> result = client.classify(input);
-          String patternId = null;
-
-          if(result != null) {
-            patternId = result.get("patternId");
-          }
 
           //CHECK IF IT PASSES
 
-          boolean pass = false;
-          int failedAttributes = 0;
+          List<String> failures = checkTest(test, result);
 
-          if(resultPatternId == null) {
-            if(patternId == null) {
-              pass = true;
+          //PRINT RESULTS
+
+          if(failures.isEmpty()) {
+            passCount++;
+            log("Passed, expected patternId: " + getResultPatternId(test), 2);
+          } else {
+            for(String failure : failures) {
+              log(failure, 2);
             }
-          } else if(resultPatternId.equals(patternId)) {
-            pass = true;
           }
 
-          if(pass && JsonFile.get(test, "resultAttributes").isObject()) {
-            for(Iterator<String> j = test.get("resultAttributes").getFieldNames(); j.hasNext();) {
-              String key = j.next();
-              String expectedValue = test.get("resultAttributes").get(key).asText();
-              String value = null;
+          testCount++;
+        }
+      }
 
-              if(result != null) {
-                value = result.get(key);
-              }
+    time = System.nanoTime() - start;
+
+    log("Test passed " + passCount + " out of " + testCount + ". " + (testCount == passCount ? "PASS" : "FAIL"), 0);
+    log("Test time: " + getTime(time), 0);
+
+    return testCount != passCount;
+  }
+
+  //STREAM THE TEST FILE AND VERIFY IT ON A WORKER POOL
+  private static boolean testParallel(TextGlassClient client, String path, int workers, int slowest) throws Exception {
+    TestRunner runner = new TestRunner(client, workers, slowest);
+
+    boolean failure = runner.run(path);
+
+    log("Test passed " + runner.getPassed() + " out of " + runner.getTests() + ". " + (failure ? "FAIL" : "PASS"), 0);
+    log("Test time: " + getTime(runner.getTime()), 0);
+    log(runner.toString(), 0);
+
+    for(TestRunner.Slow slow : runner.getSlowest()) {
+      log("Slow: " + slow, 1);
+    }
+
+    return failure;
+  }
+
+  static void checkTestFile(TextGlassClient client, JsonFile tests) throws Exception {
+    if(!tests.getType().equals("test")) {
+      throw new Exception("Unknown test type: " + tests.getType());
+    }
+
+    if(!tests.getDomain().equals(client.getDomain())) {
+      throw new Exception("Domains do not match: " + client.getDomain() + " != " + tests.getDomain());
+    }
+
+    if(!tests.getDomainVersion().equals(client.getDomainVersion())) {
+      throw new Exception("DomainVersions do not match: " + client.getDomainVersion() + " != " + tests.getDomainVersion());
+    }
+
+    log("Loading test: " + tests.getDomain() + ", version: " + tests.getDomainVersion(), 1);
+  }
 
-              if(!expectedValue.equals(value)) {
-                log("FAILED, expected attribute for " + key + ": " + expectedValue + ", found: " + value, 2);
-                failedAttributes++;
+  static String getResultPatternId(JsonNode test) throws Exception {
+    if(JsonFile.get(test, "resultPatternId").isNull()) {
+      return null;
+    }
+
+    return JsonFile.get(test, "resultPatternId").asText();
+  }
+
+  //THE FAILURES OF A TEST CASE, EMPTY IF IT PASSES
+  static List<String> checkTest(JsonNode test, Map<String, String> result) throws Exception {
+    String resultPatternId = getResultPatternId(test);
+    String patternId = null;
+
+    if(result != null) {
+      patternId = result.get("patternId");
+    }
+
+    boolean pass = false;
+    List<String> failures = new ArrayList<>();
+
+    if(resultPatternId == null) {
+      if(patternId == null) {
+        pass = true;
+      }
+    } else if(resultPatternId.equals(patternId)) {
+      pass = true;
+    }
+
+    if(!pass) {
+      failures.add("FAILED, expected patternId: " + resultPatternId + ", found: " + patternId);
+    } else if(JsonFile.get(test, "resultAttributes").isObject()) {
+      for(Iterator<String> j = test.get("resultAttributes").getFieldNames(); j.hasNext();) {
+        String key = j.next();
+        String expectedValue = test.get("resultAttributes").get(key).asText();
+        String value = null;
+
+        if(result != null) {
+          value = result.get(key);
+        }
+
+        if(!expectedValue.equals(value)) {
+          failures.add("FAILED, expected attribute for " + key + ": " + expectedValue + ", found: " + value);
+        }
+      }
+    }
+
+    return failures;
+  }
+
+  private static void streamClassify(TextGlassClient client, String input, String output,
+      int workers, boolean ordered) throws Exception
+  {
+    log("Stream input: '" + input + "', output: '" + (output == null ? "stdout" : output) + "', worker(s): " +
+        workers + (ordered ? "" : ", unordered"), 1);
+
+    StreamClassifier stream = new StreamClassifier(client, workers, ordered);
+
+    InputStream in = (input.equals("-") ? System.in : Files.newInputStream(Paths.get(input)));
+    OutputStream out = new BufferedOutputStream(output == null ? new FileOutputStream(FileDescriptor.out) :
+        Files.newOutputStream(Paths.get(output)), 1 << 20);
+
+    try {
+      stream.run(in, out);
+    } finally {
+      if(output == null) {
+        out.flush();
+      } else {
+        out.close();
+      }
+
+      if(in != System.in) {
+        in.close();
+      }
+    }
+
+    log(stream.toString(), 0);
+    log("Stream time: " + getTime(stream.getTime()), 0);
+  }
+
+  private static void classifyAccessLog(TextGlassClient client, String path, List<String> attributes,
+      String output, int workers) throws Exception
+  {
+    AccessLogClassifier accessLog = new AccessLogClassifier(client, workers, attributes);
+    OutputStream out = (output == null ? null : new BufferedOutputStream(Files.newOutputStream(Paths.get(output)), 1 << 20));
+
+    try {
+      accessLog.run(path, out);
+    } finally {
+      if(out != null) {
+        out.close();
+      }
+    }
+
+    log(accessLog.toString(), 0);
+    log("Access log time: " + getTime(accessLog.getTime()), 0);
+
+    logCounts("patternId", accessLog.getPatternCounts());
+
+    for(String attribute : attributes) {
+      logCounts(attribute, accessLog.getAttributeCounts(attribute));
+    }
+  }
+
+  private static void logExplanation(Explanation explanation) {
+    log("Classify: '" + explanation.getInput() + "'", 2);
+
+    if(!isLogging(3)) {
+      return;
+    }
+
+    log("Transformed: '" + explanation.getTransformed() + "'", 3);
+    log("Tokens: " + explanation.getTokens(), 3);
+    log("Ngrams: " + explanation.getNgrams(), 3);
+
+    for(Explanation.Hit hit : explanation.getHits()) {
+      log("Hit: " + hit, 3);
+    }
+
+    for(Explanation.Candidate candidate : explanation.getCandidates()) {
+      log("Candidate: " + candidate, 3);
+    }
+
+    log("Winner: " + explanation.getWinnerId() +
+        (explanation.isDefault() ? ", default: " + explanation.getPatternId() : ""), 3);
+
+    if(explanation.getPatternId() != null) {
+      log("Attributes: " + explanation.getPatternId() + (!explanation.isAttributesFound() ? ", not found" :
+          explanation.getParentId() != null ? ", parentId: " + explanation.getParentId() : ""), 3);
+    }
+
+    for(Explanation.AttributeTransform transform : explanation.getAttributeTransforms()) {
+      log("Attribute transformer: " + transform, 3);
+    }
+
+    log("Attribute map: " + explanation.getResult(), 3);
+  }
+
+  //MOST FREQUENT FIRST
+  private static void logCounts(String name, Map<String, long[]> counts) {
+    List<Map.Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+
+    Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+      @Override
+      public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+        int order = Long.compare(b.getValue()[0], a.getValue()[0]);
+
+        return (order != 0 ? order : a.getKey().compareTo(b.getKey()));
+      }
+    });
+
+    log("Counts by " + name + ": " + entries.size(), 0);
+
+    for(Map.Entry<String, long[]> entry : entries) {
+      log(entry.getKey() + ": " + entry.getValue()[0], 1);
+    }
+  }
+
+  //EVERY THREAD CLASSIFIES ALL THE TEST INPUTS, RESULTS MUST MATCH A SINGLE THREADED RUN
+  //EACH ROUND USES A DIFFERENT classify OVERLOAD, THE RESULTS MUST MATCH THE String API
+  private static Map<String, String> classify(TextGlassClient client, String input, int round) throws Exception {
+    switch(round % 4) {
+      case 1:
+        return client.classify(new StringBuilder(input));
+      case 2:
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+
+        return client.classify(bytes, 0, bytes.length);
+      case 3:
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(input);
+        ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining());
+
+        direct.put(buffer).flip();
+
+        return client.classify(direct);
+      default:
+        return client.classify(input);
+    }
+  }
+
+  private static boolean stressTest(final TextGlassClient client, List<String> tests, int threads) throws Exception {
+    if(threads < 1) {
+      throw new Exception("Invalid stress test threads: " + threads);
+    }
+
+    final List<String> inputs = new ArrayList<>();
+
+    for(String test : tests) {
+      JsonNode testsJson = JsonFile.get(new JsonFile(test).getJsonNode(), "tests");
+
+      for(int i = 0; i < testsJson.size(); i++) {
+        inputs.add(JsonFile.get(testsJson.get(i), "input").asText());
+      }
+    }
+
+    if(inputs.isEmpty()) {
+      throw new Exception("Stress test requires test inputs");
+    }
+
+    final List<Map<String, String>> expected = new ArrayList<>();
+
+    for(String input : inputs) {
+      expected.add(client.classify(input));
+    }
+
+    //START ALL THE THREADS TOGETHER, EACH AT A DIFFERENT OFFSET
+
+    final CountDownLatch ready = new CountDownLatch(1);
+    final AtomicLong classified = new AtomicLong();
+    final AtomicLong mismatches = new AtomicLong();
+    final AtomicReference<Exception> error = new AtomicReference<>();
+    List<Thread> workers = new ArrayList<>();
+
+    for(int t = 0; t < threads; t++) {
+      final int offset = (int)((long)t * inputs.size() / threads);
+
+      Thread worker = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ready.await();
+
+            for(int round = 0; round < STRESS_ROUNDS; round++) {
+              for(int i = 0; i < inputs.size(); i++) {
+                int pos = (offset + i) % inputs.size();
+                Map<String, String> result = classify(client, inputs.get(pos), round);
+
+                if(!Objects.equals(result, expected.get(pos))) {
+                  if(mismatches.incrementAndGet() == 1) {
+                    log("MISMATCH, input: '" + inputs.get(pos) + "', expected: " + expected.get(pos) + ", found: " + result, 1);
+                  }
+                }
+
+                classified.incrementAndGet();
               }
             }
+          } catch(Exception e) {
+            error.compareAndSet(null, e);
           }
+        }
+      }, "stress-" + t);
 
-          //PRINT RESULTS
+      workers.add(worker);
+      worker.start();
+    }
 
-          if(pass && failedAttributes == 0) {
-            passCount++;
-            log("Passed, expected patternId: " + resultPatternId, 2);
-          } else if(!pass) {
-            log("FAILED, expected patternId: " + resultPatternId + ", found: " + patternId, 2);
-          }
+    long start = System.nanoTime();
 
-          testCount++;
+    ready.countDown();
+
+    for(Thread worker : workers) {
+      worker.join();
+    }
+
+    long time = System.nanoTime() - start;
+
+    if(error.get() != null) {
+      throw error.get();
+    }
+
+    //THE SAME ROUNDS AS ONE BATCH
+
+    List<String> batch = new ArrayList<>();
+
+    for(int round = 0; round < STRESS_ROUNDS; round++) {
+      batch.addAll(inputs);
+    }
+
+    client.setBatchParallelism(threads);
+
+    start = System.nanoTime();
+
+    List<Map<String, String>> results = client.classifyAll(batch);
+
+    long batchTime = System.nanoTime() - start;
+
+    for(int i = 0; i < batch.size(); i++) {
+      if(!Objects.equals(results.get(i), expected.get(i % inputs.size()))) {
+        if(mismatches.incrementAndGet() == 1) {
+          log("BATCH MISMATCH, input: '" + batch.get(i) + "', expected: " + expected.get(i % inputs.size()) +
+              ", found: " + results.get(i), 1);
         }
       }
+    }
 
-    time = System.nanoTime() - start;
+    classified.addAndGet(batch.size());
 
-    log("Test passed " + passCount + " out of " + testCount + ". " + (testCount == passCount ? "PASS" : "FAIL"), 0);
-    log("Test time: " + getTime(time), 0);
+    log("Stress test " + threads + " thread(s), " + classified.get() + " classification(s), mismatches: " +
+        mismatches.get() + ". " + (mismatches.get() == 0 ? "PASS" : "FAIL"), 0);
+    log("Stress test time: " + getTime(time) + ", batch: " + getTime(batchTime), 0);
 
-    return testCount != passCount;
+    return mismatches.get() != 0;
   }
 
-  public static void runWarmup(String warmupStr, String p, String pp, String a, String ap, List<String> t) throws Exception {
+  public static void runWarmup(String warmupStr, LoadOptions load, List<String> t) throws Exception {
     int warmup = 0;
 
     try {
@@ -310,9 +887,7 @@ public class Main {
     long iterations = 0;
 
     while(iterations < warmup) {
-      TextGlassClient client = new TextGlassClient();
-
-      client.load(loadJson(p), loadJson(pp), loadJson(a), loadJson(ap));
+      TextGlassClient client = load.newClient();
 
       for(String test : t) {
         test(client, new JsonFile(test));
@@ -329,6 +904,72 @@ public class Main {
     log("Warmup completed", 0);
   }
 
+  //HOW TO BUILD A TextGlassClient, THE SAME FOR THE WARMUP AND THE TIMED LOAD
+  public static class LoadOptions {
+    TextGlassClient.Matcher matcher;
+    int parallelism;
+    boolean streaming;
+    boolean lazyAttributes;
+    boolean compactPatterns;
+    String snapshot;
+    String pattern;
+    String patternPatch;
+    String attribute;
+    String attributePatch;
+
+    TextGlassClient newClient() throws Exception {
+      TextGlassClient client = new TextGlassClient();
+
+      client.setMatcher(matcher);
+      client.setLoadParallelism(parallelism);
+      client.setLoadStreaming(streaming);
+      client.setLazyAttributes(lazyAttributes);
+      client.setCompactPatterns(compactPatterns);
+
+      if(snapshot != null) {
+        client.loadSnapshot(snapshot);
+      } else {
+        client.load(pattern, patternPatch, attribute, attributePatch);
+      }
+
+      return client;
+    }
+  }
+
+  static int getInt(String value, String error) throws Exception {
+    try {
+      return Integer.parseInt(value);
+    } catch(NumberFormatException e) {
+      throw new Exception(error + value);
+    }
+  }
+
+  static long getLong(String value, String error) throws Exception {
+    try {
+      return Long.parseLong(value);
+    } catch(NumberFormatException e) {
+      throw new Exception(error + value);
+    }
+  }
+
+  static double getDouble(String value, String error) throws Exception {
+    try {
+      return Double.parseDouble(value);
+    } catch(NumberFormatException e) {
+      throw new Exception(error + value);
+    }
+  }
+
+  private static TextGlassClient.Matcher getMatcher(String matcher) throws Exception {
+    for(TextGlassClient.Matcher m : TextGlassClient.Matcher.values()) {
+      if(m.name().equals(matcher)) {
+        return m;
+      }
+    }
+
+    throw new Exception("Unknown matcher: " + matcher);
+  }
+
   private static JsonFile loadJson(String path) throws Exception {
     if(path == null) {
       return null;
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.Arrays;
+
+public class MatchState {
+
+  //FIRST POSITION OF EACH TOKEN ID IN THE MATCHED TOKENS, -1 IF NOT MATCHED
+  private final int[] firstPositions;
+  private int[] matchedIds;
+  private int matchedCount;
+
+  //CANDIDATE BITSET BY PATTERN ORDINAL, CANDIDATES IN INSERTION ORDER
+  private final long[] seen;
+  private int[] candidates;
+  private int candidateCount;
+
+  public MatchState(int tokenCount, int patternCount) {
+    firstPositions = new int[tokenCount];
+    matchedIds = new int[16];
+    matchedCount = 0;
+
+    Arrays.fill(firstPositions, -1);
+
+    seen = new long[(patternCount + 63) >>> 6];
+    candidates = new int[16];
+    candidateCount = 0;
+  }
+
+  public boolean fits(int tokenCount, int patternCount) {
+    return firstPositions.length == tokenCount && seen.length == ((patternCount + 63) >>> 6);
+  }
+
+  public void addToken(int tokenId, int position) {
+    if(firstPositions[tokenId] >= 0) {
+      return;
+    }
+
+    if(matchedCount == matchedIds.length) {
+      matchedIds = Arrays.copyOf(matchedIds, matchedCount * 2);
+    }
+
+    firstPositions[tokenId] = position;
+    matchedIds[matchedCount++] = tokenId;
+  }
+
+  public void addCandidate(int ordinal) {
+    long bit = 1L << ordinal;
+
+    if((seen[ordinal >>> 6] & bit) != 0) {
+      return;
+    }
+
+    seen[ordinal >>> 6] |= bit;
+
+    if(candidateCount == candidates.length) {
+      candidates = Arrays.copyOf(candidates, candidateCount * 2);
+    }
+
+    candidates[candidateCount++] = ordinal;
+  }
+
+  public int[] getFirstPositions() {
+    return firstPositions;
+  }
+
+  public int getCandidateCount() {
+    return candidateCount;
+  }
+
+  public int getCandidate(int i) {
+    return candidates[i];
+  }
+
+  //RESET ONLY WHAT WAS TOUCHED
+  public void clear() {
+    for(int i = 0; i < matchedCount; i++) {
+      firstPositions[matchedIds[i]] = -1;
+    }
+
+    for(int i = 0; i < candidateCount; i++) {
+      seen[candidates[i] >>> 6] = 0;
+    }
+
+    matchedCount = 0;
+    candidateCount = 0;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+//PATTERN TOKENS KEYED BY String.hashCode. AN NGRAM'S HASH IS BUILT FROM ITS
+//TOKENS' HASHES, hash(a + b) = hash(a) * 31^length(b) + hash(b), SO ONLY
+//NGRAMS WHICH HIT ARE EVER COMPARED AND NO NGRAM String IS BUILT
+public class NgramHashTable {
+
+  private final int[] hashes;
+  private final String[] tokens;
+  private final int mask;
+
+  public NgramHashTable(Collection<String> patternTokens) {
+    int size = 16;
+
+    while(size < patternTokens.size() * 2) {
+      size <<= 1;
+    }
+
+    hashes = new int[size];
+    tokens = new String[size];
+    mask = size - 1;
+
+    for(String token : patternTokens) {
+      int hash = token.hashCode();
+      int slot = spread(hash) & mask;
+
+      while(tokens[slot] != null) {
+        slot = (slot + 1) & mask;
+      }
+
+      hashes[slot] = hash;
+      tokens[slot] = token;
+    }
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  //SAME RESULT AS Domain.lookup(Domain.ngram(inputTokens)): FOR EACH START
+  //POSITION THE LONGEST NGRAM FIRST, ONLY PATTERN TOKENS ARE RETURNED
+  public List<String> match(List<String> inputTokens, int ngramConcatSize) {
+    int count = inputTokens.size();
+    List<String> matched = new ArrayList<>();
+
+    //31^length OF EACH TOKEN
+
+    int[] powers = new int[count];
+
+    for(int i = 0; i < count; i++) {
+      int power = 1;
+
+      for(int j = inputTokens.get(i).length(); j > 0; j--) {
+        power *= 31;
+      }
+
+      powers[i] = power;
+    }
+
+    int[] ngramHashes = new int[ngramConcatSize];
+    int[] ngramLengths = new int[ngramConcatSize];
+
+    for(int start = 0; start < count; start++) {
+      int size = Math.min(ngramConcatSize, count - start);
+      int hash = 0;
+      int length = 0;
+
+      for(int i = 0; i < size; i++) {
+        String token = inputTokens.get(start + i);
+
+        hash = hash * powers[start + i] + token.hashCode();
+        length += token.length();
+
+        ngramHashes[i] = hash;
+        ngramLengths[i] = length;
+      }
+
+      for(int i = size - 1; i >= 0; i--) {
+        String hit = find(ngramHashes[i], ngramLengths[i], inputTokens, start, i + 1);
+
+        if(hit != null) {
+          matched.add(hit);
+        }
+      }
+    }
+
+    return matched;
+  }
+
+  private String find(int hash, int length, List<String> inputTokens, int start, int size) {
+    for(int slot = spread(hash) & mask; tokens[slot] != null; slot = (slot + 1) & mask) {
+      if(hashes[slot] == hash && tokens[slot].length() == length &&
+          matches(tokens[slot], inputTokens, start, size)) {
+        return tokens[slot];
+      }
+    }
+
+    return null;
+  }
+
+  //COMPARE AGAINST THE INPUT TOKENS IN PLACE
+  private static boolean matches(String token, List<String> inputTokens, int start, int size) {
+    int offset = 0;
+
+    for(int i = start; i < start + size; i++) {
+      String part = inputTokens.get(i);
+
+      if(!token.regionMatches(offset, part, 0, part.length())) {
+        return false;
+      }
+
+      offset += part.length();
+    }
+
+    return true;
+  }
+
+  public int getTokenCount() {
+    int count = 0;
+
+    for(String token : tokens) {
+      if(token != null) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  public int getCapacity() {
+    return tokens.length;
+  }
+}
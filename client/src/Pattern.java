@@ -18,6 +18,7 @@
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.codehaus.jackson.JsonNode;
 
@@ -26,6 +27,10 @@ public class Pattern {
   private final PatternType patternType;
   private final List<String> patternTokens;
 
+  //DENSE IDS, ASSIGNED AT LOAD
+  private final int ordinal;
+  private final int[] tokenIds;
+
   private final RankType rankType;
   private final int rankValue;
 
@@ -37,7 +42,7 @@ public class Pattern {
     Strong, Weak, None
   };
 
-  public Pattern(JsonNode json) throws Exception {
+  public Pattern(JsonNode json, int ordinal, Map<String, Integer> tokenIdMap) throws Exception {
 
     //PARSE PATTERN JSON
     
@@ -93,16 +98,47 @@ public class Pattern {
         patternType.equals(PatternType.SimpleOrderedAnd))) {
       throw new Exception("patternType " + patternType + " requires more than 1 patternToken: " + patternTokens);
     }
+
+    //TOKEN IDS, NEW TOKENS GET THE NEXT ID
+
+    this.ordinal = ordinal;
+    tokenIds = new int[patternTokens.size()];
+
+    for(int i = 0; i < tokenIds.length; i++) {
+      Integer tokenId = tokenIdMap.get(patternTokens.get(i));
+
+      if(tokenId == null) {
+        tokenId = tokenIdMap.size();
+        tokenIdMap.put(patternTokens.get(i), tokenId);
+      }
+
+      tokenIds[i] = tokenId;
+    }
+  }
+
+  //COPY OF A SHARD PATTERN WITH ITS SHARD LOCAL TOKEN IDS SWAPPED FOR DOMAIN TOKEN IDS
+  Pattern(Pattern pattern, int[] domainTokenIds) {
+    patternId = pattern.patternId;
+    patternType = pattern.patternType;
+    patternTokens = pattern.patternTokens;
+    ordinal = pattern.ordinal;
+    rankType = pattern.rankType;
+    rankValue = pattern.rankValue;
+    tokenIds = new int[pattern.tokenIds.length];
+
+    for(int i = 0; i < tokenIds.length; i++) {
+      tokenIds[i] = domainTokenIds[pattern.tokenIds[i]];
+    }
   }
 
-  //IS PATTERN VALID FOR MATCHED TOKENS
-  public boolean isValid(List<String> matchedTokens) {
+  //IS PATTERN VALID FOR MATCHED TOKEN FIRST POSITIONS, BY TOKEN ID
+  public boolean isValid(int[] firstPositions) {
     int lastFound = -1;
 
-    for(String patternToken : patternTokens) {
-      int found = matchedTokens.indexOf(patternToken);
+    for(int tokenId : tokenIds) {
+      int found = firstPositions[tokenId];
 
-      if(found == -1 && (isSimpleAnd() || isSimpleOrderedAnd())) {
+      if(found == -1 && !isSimple()) {
         return false;
       }
 
@@ -119,11 +155,7 @@ public class Pattern {
       }
     }
 
-    if(isSimple()) {
-      return false;
-    } else {
-      return true;
-    }
+    return !isSimple();
   }
 
   //RANK COMPARED TO OTHER PATTERNS
@@ -139,18 +171,16 @@ public class Pattern {
     return rank;
   }
 
-  //LENGTH OF MATCHED TOKENS, FOR RANKING
-  public long getMatchedLength(List<String> matchedTokens) {
+  //LENGTH OF MATCHED TOKENS, BY TOKEN ID
+  public long getMatchedLength(int[] firstPositions) {
     int length = 0;
 
-    for(String patternToken : patternTokens) {
-      int found = matchedTokens.indexOf(patternToken);
-
-      if(found >= 0) {
-        length += patternToken.length();
+    for(int i = 0; i < tokenIds.length; i++) {
+      if(firstPositions[tokenIds[i]] >= 0) {
+        length += patternTokens.get(i).length();
       }
     }
-    
+
     return length;
   }
 
@@ -159,10 +189,6 @@ public class Pattern {
     return patternId;
   }
 
-  public String toStringRank(List<String> matchedTokens) {
-    return patternId + "(" + getRank() + "," + getMatchedLength(matchedTokens) + ")";
-  }
-
   public String toStringFull() {
     return "patternId: " + patternId + ", patternType: " + patternType +
             patternTokens + ", rankType: " + rankType + ":" + rankValue;
@@ -176,6 +202,15 @@ public class Pattern {
     return patternTokens;
   }
 
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  //NOT COPIED, CALLERS MUST NOT MODIFY IT
+  int[] getTokenIds() {
+    return tokenIds;
+  }
+
   public boolean isStrong() {
     return rankType.equals(RankType.Strong);
   }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+//COMPACT PATTERNS: EVERY PATTERN IS AN ORDINAL INTO PARALLEL PRIMITIVE ARRAYS
+//AND EVERY TOKEN AN ID INTO AN OPEN ADDRESSING TABLE, SO THE WINNER LOOP
+//NEVER LEAVES A HANDFUL OF ARRAYS. SAME RULES AS Pattern
+public class PatternStore {
+
+  //PATTERN TYPES, SAME ORDER AS THE SNAPSHOT
+  private final static byte SIMPLE = 0;
+  private final static byte SIMPLE_AND = 1;
+  private final static byte SIMPLE_ORDERED_AND = 2;
+
+  //PATTERNS BY ORDINAL, THE RANK IS Pattern.getRank() WHICH FITS AN INT
+  private final String[] patternIds;
+  private final byte[] types;
+  private final int[] ranks;
+
+  //TOKEN IDS OF PATTERN i ARE patternTokens[patternStarts[i] .. patternStarts[i + 1]]
+  private final int[] patternStarts;
+  private final int[] patternTokens;
+
+  //TOKENS BY ID. SLOTS HOLD THE TOKEN ID + 1, 0 IS EMPTY, AND ITS HASH SO A
+  //MISSED NGRAM NEVER READS A TOKEN
+  private final String[] tokens;
+  private final int[] tokenLengths;
+  private final int[] slots;
+  private final int[] hashes;
+  private final int mask;
+
+  //PATTERN ORDINALS OF TOKEN i ARE tokenPatterns[tokenStarts[i] .. tokenStarts[i + 1]]
+  private final int[] tokenStarts;
+  private final int[] tokenPatterns;
+
+  public PatternStore(Map<String, Integer> tokenIdMap, List<List<Pattern>> tokenPatternLists, int patternCount) {
+
+    //PATTERNS BY ORDINAL, EVERY PATTERN HAS AT LEAST ONE TOKEN
+
+    Pattern[] patterns = new Pattern[patternCount];
+    int tokenRefs = 0;
+
+    for(List<Pattern> list : tokenPatternLists) {
+      for(Pattern pattern : list) {
+        patterns[pattern.getOrdinal()] = pattern;
+      }
+
+      tokenRefs += list.size();
+    }
+
+    patternIds = new String[patternCount];
+    types = new byte[patternCount];
+    ranks = new int[patternCount];
+    patternStarts = new int[patternCount + 1];
+    patternTokens = new int[tokenRefs];
+
+    int offset = 0;
+
+    for(int i = 0; i < patternCount; i++) {
+      Pattern pattern = patterns[i];
+
+      patternIds[i] = pattern.getPatternId();
+      types[i] = (pattern.isSimple() ? SIMPLE : (pattern.isSimpleAnd() ? SIMPLE_AND : SIMPLE_ORDERED_AND));
+      ranks[i] = (int)pattern.getRank();
+      patternStarts[i] = offset;
+
+      for(int tokenId : pattern.getTokenIds()) {
+        patternTokens[offset++] = tokenId;
+      }
+    }
+
+    patternStarts[patternCount] = offset;
+
+    //TOKEN TABLE
+
+    int tokenCount = tokenIdMap.size();
+    int size = 16;
+
+    while(size < tokenCount * 2) {
+      size <<= 1;
+    }
+
+    tokens = new String[tokenCount];
+    tokenLengths = new int[tokenCount];
+    slots = new int[size];
+    hashes = new int[size];
+    mask = size - 1;
+
+    for(Map.Entry<String, Integer> entry : tokenIdMap.entrySet()) {
+      int tokenId = entry.getValue();
+      int hash = entry.getKey().hashCode();
+      int slot = spread(hash) & mask;
+
+      while(slots[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+
+      slots[slot] = tokenId + 1;
+      hashes[slot] = hash;
+      tokens[tokenId] = entry.getKey();
+      tokenLengths[tokenId] = entry.getKey().length();
+    }
+
+    //TOKEN PATTERN SLICES, IN LOAD ORDER
+
+    tokenStarts = new int[tokenCount + 1];
+    tokenPatterns = new int[tokenRefs];
+    offset = 0;
+
+    for(int i = 0; i < tokenCount; i++) {
+      tokenStarts[i] = offset;
+
+      for(Pattern pattern : tokenPatternLists.get(i)) {
+        tokenPatterns[offset++] = pattern.getOrdinal();
+      }
+    }
+
+    tokenStarts[tokenCount] = offset;
+  }
+
+  private static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  //THE TOKEN ID OR -1
+  public int getTokenId(String token) {
+    int hash = token.hashCode();
+    int slot = spread(hash) & mask;
+
+    while(slots[slot] != 0) {
+      if(hashes[slot] == hash && tokens[slots[slot] - 1].equals(token)) {
+        return slots[slot] - 1;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  public void collectCandidates(List<String> matchedTokens, MatchState state) {
+    for(int i = 0; i < matchedTokens.size(); i++) {
+      int tokenId = getTokenId(matchedTokens.get(i));
+
+      state.addToken(tokenId, i);
+
+      for(int j = tokenStarts[tokenId]; j < tokenStarts[tokenId + 1]; j++) {
+        state.addCandidate(tokenPatterns[j]);
+      }
+    }
+  }
+
+  //THE WINNING PATTERN ORDINAL OR -1. A CANDIDATE RANKED BELOW THE WINNER
+  //CANNOT WIN, SO ITS TOKENS ARE NEVER READ
+  public int rank(MatchState state) {
+    int winner = -1;
+    int winnerRank = 0;
+    long winnerLength = 0;
+    int[] firstPositions = state.getFirstPositions();
+
+    for(int i = 0; i < state.getCandidateCount(); i++) {
+      int candidate = state.getCandidate(i);
+
+      if(!isValid(candidate, firstPositions)) {
+        continue;
+      }
+
+      int rank = ranks[candidate];
+
+      if(winner == -1 || rank > winnerRank) {
+        winner = candidate;
+        winnerRank = rank;
+        winnerLength = -1;
+      } else if(rank == winnerRank) {
+        if(winnerLength == -1) {
+          winnerLength = getMatchedLength(winner, firstPositions);
+        }
+
+        long length = getMatchedLength(candidate, firstPositions);
+
+        if(length > winnerLength) {
+          winner = candidate;
+          winnerLength = length;
+        }
+      }
+    }
+
+    return winner;
+  }
+
+  //SAME RULES AS Pattern.isValid
+  public boolean isValid(int pattern, int[] firstPositions) {
+    byte type = types[pattern];
+    int lastFound = -1;
+
+    for(int i = patternStarts[pattern]; i < patternStarts[pattern + 1]; i++) {
+      int found = firstPositions[patternTokens[i]];
+
+      if(found == -1 && type != SIMPLE) {
+        return false;
+      }
+
+      if(found >= 0 && type == SIMPLE) {
+        return true;
+      }
+
+      if(type == SIMPLE_ORDERED_AND) {
+        if(found <= lastFound) {
+          return false;
+        } else {
+          lastFound = found;
+        }
+      }
+    }
+
+    return type != SIMPLE;
+  }
+
+  //SAME RULES AS Pattern.getMatchedLength
+  public long getMatchedLength(int pattern, int[] firstPositions) {
+    long length = 0;
+
+    for(int i = patternStarts[pattern]; i < patternStarts[pattern + 1]; i++) {
+      if(firstPositions[patternTokens[i]] >= 0) {
+        length += tokenLengths[patternTokens[i]];
+      }
+    }
+
+    return length;
+  }
+
+  public long getRank(int pattern) {
+    return ranks[pattern];
+  }
+
+  public String getPatternId(int pattern) {
+    return patternIds[pattern];
+  }
+
+  //PATTERN IDS OF A TOKEN, IN LOAD ORDER
+  public List<String> getPatternIds(int tokenId) {
+    String[] ids = new String[tokenStarts[tokenId + 1] - tokenStarts[tokenId]];
+
+    for(int i = 0; i < ids.length; i++) {
+      ids[i] = patternIds[tokenPatterns[tokenStarts[tokenId] + i]];
+    }
+
+    return Arrays.asList(ids);
+  }
+
+  public List<String> getTokens() {
+    return Collections.unmodifiableList(Arrays.asList(tokens));
+  }
+
+  public int getTokenCount() {
+    return tokens.length;
+  }
+
+  public int getPatternCount() {
+    return patternIds.length;
+  }
+
+  @Override
+  public String toString() {
+    return "PatternStore patterns: " + patternIds.length + ", tokens: " + tokens.length +
+        ", token refs: " + patternTokens.length + ", capacity: " + slots.length;
+  }
+}
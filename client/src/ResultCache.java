@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ResultCache {
+
+  //CACHED FOR INPUTS WHICH CLASSIFY TO null
+  public final static ClassificationResult NO_RESULT = new ClassificationResult(ResultSchema.EMPTY, new String[0], null, null);
+
+  private final static int MAX_SEGMENTS = 16;
+
+  private final int maxEntries;
+  private final long maxBytes;
+
+  private final Segment[] segments;
+  private final int segmentMask;
+
+  private final AtomicLong generation;
+
+  private final LongAdder hits;
+  private final LongAdder misses;
+  private final LongAdder evictions;
+
+  public ResultCache(int maxEntries, long maxBytes) throws Exception {
+    if(maxEntries < 1) {
+      throw new Exception("Invalid cache size: " + maxEntries);
+    }
+
+    if(maxBytes < 1) {
+      throw new Exception("Invalid cache byte limit: " + maxBytes);
+    }
+
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+
+    //AT LEAST 16 ENTRIES PER SEGMENT
+
+    int count = 1;
+
+    while(count < MAX_SEGMENTS && count * 2 * 16 <= maxEntries) {
+      count *= 2;
+    }
+
+    segments = new Segment[count];
+    segmentMask = count - 1;
+
+    for(int i = 0; i < count; i++) {
+      segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0), maxBytes / count);
+    }
+
+    generation = new AtomicLong();
+
+    hits = new LongAdder();
+    misses = new LongAdder();
+    evictions = new LongAdder();
+  }
+
+  //CACHED RESULT, NO_RESULT, OR null ON A MISS
+  public ClassificationResult get(String input) {
+    ClassificationResult result = getSegment(input).get(input);
+
+    if(result == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+
+    return result;
+  }
+
+  //RESULTS COMPUTED BEFORE THE LAST CLEAR ARE DROPPED
+  public void put(String input, ClassificationResult result, long resultGeneration) {
+    getSegment(input).put(input, (result == null ? NO_RESULT : result), resultGeneration);
+  }
+
+  public long getGeneration() {
+    return generation.get();
+  }
+
+  public void clear() {
+    generation.incrementAndGet();
+
+    for(Segment segment : segments) {
+      segment.clear();
+    }
+  }
+
+  private Segment getSegment(String input) {
+    int hash = input.hashCode();
+
+    return segments[(hash ^ (hash >>> 16)) & segmentMask];
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public int getSize() {
+    int size = 0;
+
+    for(Segment segment : segments) {
+      size += segment.getSize();
+    }
+
+    return size;
+  }
+
+  public long getBytes() {
+    long bytes = 0;
+
+    for(Segment segment : segments) {
+      bytes += segment.getBytes();
+    }
+
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    long h = getHits();
+    long m = getMisses();
+
+    return "ResultCache entries: " + getSize() + "/" + maxEntries + ", bytes: " + getBytes() + "/" + maxBytes +
+        ", hits: " + h + ", misses: " + m + ", evictions: " + getEvictions() +
+        ", hit rate: " + (h + m == 0 ? 0 : (h * 1000 / (h + m)) / 10d) + "%";
+  }
+
+  //APPROXIMATE RETAINED SIZE, STATIC ATTRIBUTE MAPS ARE SHARED WITH THE DOMAIN
+  private static long weigh(String input, ClassificationResult result) {
+    return 96 + 2L * input.length() + 32L * result.size();
+  }
+
+  //LIST IDS
+
+  private final static int WINDOW = 0;
+  private final static int PROBATION = 1;
+  private final static int PROTECTED = 2;
+
+  private static class Node {
+    private final String input;
+    private final ClassificationResult result;
+    private final long weight;
+
+    private int list;
+    private Node prev;
+    private Node next;
+
+    private Node(String input, ClassificationResult result, long weight) {
+      this.input = input;
+      this.result = result;
+      this.weight = weight;
+    }
+  }
+
+  //W-TINYLFU: A SMALL LRU WINDOW IN FRONT OF A SEGMENTED LRU MAIN AREA.
+  //WINDOW EVICTEES ENTER THE MAIN AREA ONLY IF THEY ARE MORE FREQUENT THAN ITS VICTIM.
+  private class Segment {
+    private final int maxWindow;
+    private final int maxMain;
+    private final int maxProtected;
+    private final long segmentMaxBytes;
+
+    private final Map<String, Node> nodes;
+    private final Node[] heads;
+    private final int[] sizes;
+    private long bytes;
+
+    private final FrequencySketch sketch;
+
+    private Segment(int capacity, long segmentMaxBytes) {
+      maxWindow = Math.max(1, capacity / 100);
+      maxMain = Math.max(0, capacity - maxWindow);
+      maxProtected = maxMain * 8 / 10;
+      this.segmentMaxBytes = segmentMaxBytes;
+
+      nodes = new HashMap<>();
+      heads = new Node[3];
+      sizes = new int[3];
+
+      for(int i = 0; i < 3; i++) {
+        heads[i] = new Node(null, null, 0);
+        heads[i].prev = heads[i];
+        heads[i].next = heads[i];
+      }
+
+      sketch = new FrequencySketch(capacity);
+    }
+
+    private synchronized ClassificationResult get(String input) {
+      sketch.increment(input);
+
+      Node node = nodes.get(input);
+
+      if(node == null) {
+        return null;
+      }
+
+      if(node.list == PROBATION) {
+
+        //PROMOTE, DEMOTING THE OLDEST PROTECTED ENTRY IF FULL
+
+        unlink(node);
+        link(node, PROTECTED);
+
+        if(sizes[PROTECTED] > maxProtected) {
+          Node demoted = heads[PROTECTED].prev;
+
+          unlink(demoted);
+          link(demoted, PROBATION);
+        }
+      } else {
+        unlink(node);
+        link(node, node.list);
+      }
+
+      return node.result;
+    }
+
+    private synchronized void put(String input, ClassificationResult result, long resultGeneration) {
+      if(resultGeneration != generation.get() || nodes.containsKey(input)) {
+        return;
+      }
+
+      long weight = weigh(input, result);
+
+      if(weight > segmentMaxBytes) {
+        return;
+      }
+
+      Node node = new Node(input, result, weight);
+
+      nodes.put(input, node);
+      link(node, WINDOW);
+      bytes += weight;
+
+      //WINDOW OVERFLOW, CANDIDATE FOR THE MAIN AREA
+
+      if(sizes[WINDOW] > maxWindow) {
+        Node candidate = heads[WINDOW].prev;
+
+        unlink(candidate);
+
+        if(sizes[PROBATION] + sizes[PROTECTED] < maxMain) {
+          link(candidate, PROBATION);
+        } else {
+          Node victim = (sizes[PROBATION] > 0 ? heads[PROBATION].prev : heads[PROTECTED].prev);
+
+          if(victim != heads[PROTECTED] && sketch.frequency(candidate.input) > sketch.frequency(victim.input)) {
+            evict(victim);
+            link(candidate, PROBATION);
+          } else {
+            link(candidate, PROBATION);
+            evict(candidate);
+          }
+        }
+      }
+
+      //BYTE LIMIT
+
+      while(bytes > segmentMaxBytes) {
+        if(sizes[PROBATION] > 0) {
+          evict(heads[PROBATION].prev);
+        } else if(sizes[WINDOW] > 0) {
+          evict(heads[WINDOW].prev);
+        } else {
+          evict(heads[PROTECTED].prev);
+        }
+      }
+    }
+
+    private void evict(Node node) {
+      unlink(node);
+      nodes.remove(node.input);
+      bytes -= node.weight;
+      evictions.increment();
+    }
+
+    private void link(Node node, int list) {
+      Node head = heads[list];
+
+      node.list = list;
+      node.prev = head;
+      node.next = head.next;
+      head.next.prev = node;
+      head.next = node;
+
+      sizes[list]++;
+    }
+
+    private void unlink(Node node) {
+      node.prev.next = node.next;
+      node.next.prev = node.prev;
+      node.prev = null;
+      node.next = null;
+
+      sizes[node.list]--;
+    }
+
+    private synchronized void clear() {
+      nodes.clear();
+
+      for(int i = 0; i < 3; i++) {
+        heads[i].prev = heads[i];
+        heads[i].next = heads[i];
+        sizes[i] = 0;
+      }
+
+      bytes = 0;
+      sketch.clear();
+    }
+
+    private synchronized int getSize() {
+      return nodes.size();
+    }
+
+    private synchronized long getBytes() {
+      return bytes;
+    }
+  }
+
+  //COUNT-MIN SKETCH, 4 ROWS OF COUNTERS CAPPED AT 15, HALVED EVERY 10 x capacity INCREMENTS
+  private static class FrequencySketch {
+    private final byte[][] rows;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    private FrequencySketch(int capacity) {
+      int width = 16;
+
+      while(width < capacity) {
+        width <<= 1;
+      }
+
+      rows = new byte[4][width];
+      mask = width - 1;
+      sampleSize = Math.max(160, capacity * 10);
+    }
+
+    private int index(int hash, int row) {
+      int h = hash * (0x9E3779B9 + 2 * row + 1);
+
+      return (h ^ (h >>> 15)) & mask;
+    }
+
+    private void increment(String key) {
+      int hash = key.hashCode();
+      boolean added = false;
+
+      for(int row = 0; row < rows.length; row++) {
+        int i = index(hash, row);
+
+        if(rows[row][i] < 15) {
+          rows[row][i]++;
+          added = true;
+        }
+      }
+
+      if(added && ++additions >= sampleSize) {
+        for(byte[] row : rows) {
+          for(int i = 0; i < row.length; i++) {
+            row[i] >>= 1;
+          }
+        }
+
+        additions /= 2;
+      }
+    }
+
+    private int frequency(String key) {
+      int hash = key.hashCode();
+      int frequency = 15;
+
+      for(int row = 0; row < rows.length; row++) {
+        frequency = Math.min(frequency, rows[row][index(hash, row)]);
+      }
+
+      return frequency;
+    }
+
+    private void clear() {
+      for(byte[] row : rows) {
+        for(int i = 0; i < row.length; i++) {
+          row[i] = 0;
+        }
+      }
+
+      additions = 0;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+import java.util.Arrays;
+
+//THE SORTED KEYS OF A ClassificationResult. EVERY RESULT WITH THE SAME KEY SET
+//IN A DOMAIN SHARES ONE SCHEMA THROUGH THE DOMAIN'S AttributePool
+public final class ResultSchema {
+
+  public final static ResultSchema EMPTY = new ResultSchema(new String[0]);
+  public final static ResultSchema PATTERN_ID = new ResultSchema(new String[] {"patternId"});
+
+  private final String[] keys;
+
+  //KEYS MUST BE SORTED, SEE AttributePool
+  ResultSchema(String[] keys) {
+    this.keys = keys;
+  }
+
+  public int size() {
+    return keys.length;
+  }
+
+  public String getKey(int index) {
+    return keys[index];
+  }
+
+  //-1 IF THE KEY IS NOT IN THE SCHEMA
+  public int indexOf(String key) {
+    int index = Arrays.binarySearch(keys, key);
+
+    return (index < 0 ? -1 : index);
+  }
+
+  @Override
+  public String toString() {
+    return "ResultSchema keys: " + Arrays.toString(keys);
+  }
+}
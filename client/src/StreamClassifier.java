@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+//CLASSIFIES ONE INPUT PER LINE ON A WORKER POOL AND WRITES ONE JSON RESULT PER
+//LINE. THE CALLING THREAD READS, WORKERS CLASSIFY AND ENCODE WHOLE CHUNKS, A
+//WRITER THREAD WRITES THEM. A SEMAPHORE BOUNDS THE CHUNKS IN FLIGHT
+public class StreamClassifier {
+
+  private final static int CHUNK_LINES = 1024;
+  private final static int CHUNKS_PER_WORKER = 4;
+  private final static int BUFFER_SIZE = 1 << 20;
+
+  private final TextGlassClient client;
+  private final int workers;
+  private final boolean ordered;
+
+  //STATS OF THE LAST RUN
+  private long lines;
+  private long bytes;
+  private long time;
+  private final LatencyHistogram latency;
+
+  private static class Chunk {
+    final long sequence;
+    final List<String> lines;
+    byte[] output;
+
+    Chunk(long sequence, List<String> lines) {
+      this.sequence = sequence;
+      this.lines = lines;
+      this.output = null;
+    }
+  }
+
+  private final static Chunk END = new Chunk(-1, null);
+
+  public StreamClassifier(TextGlassClient client, int workers, boolean ordered) throws Exception {
+    if(workers < 1) {
+      throw new Exception("Invalid stream workers: " + workers);
+    }
+
+    this.client = client;
+    this.workers = workers;
+    this.ordered = ordered;
+
+    lines = 0;
+    bytes = 0;
+    time = 0;
+    latency = new LatencyHistogram();
+  }
+
+  public void run(InputStream in, final OutputStream out) throws Exception {
+    final BlockingQueue<Chunk> inputQueue = new ArrayBlockingQueue<>(workers * CHUNKS_PER_WORKER);
+    final BlockingQueue<Chunk> outputQueue = new ArrayBlockingQueue<>(workers * CHUNKS_PER_WORKER);
+    final Semaphore inFlight = new Semaphore(workers * CHUNKS_PER_WORKER * 2);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final LatencyHistogram[] histograms = new LatencyHistogram[workers];
+    final long[] counted = new long[1];
+
+    long start = System.nanoTime();
+
+    //WORKERS
+
+    List<Thread> threads = new ArrayList<>();
+
+    for(int w = 0; w < workers; w++) {
+      final LatencyHistogram histogram = new LatencyHistogram();
+
+      histograms[w] = histogram;
+
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          StringBuilder json = new StringBuilder();
+
+          try {
+            while(true) {
+              Chunk chunk = inputQueue.take();
+
+              if(chunk == END) {
+                outputQueue.put(END);
+                return;
+              }
+
+              json.setLength(0);
+
+              //ANY FAILURE, ERRORS INCLUDED, IS RECORDED AND THE WORKER KEEPS
+              //DRAINING SO THE READER AND WRITER STILL SEE EVERY CHUNK AND END
+              try {
+                if(error.get() == null) {
+                  for(String line : chunk.lines) {
+                    long begin = System.nanoTime();
+                    Map<String, String> result = client.classify(line);
+
+                    histogram.record(System.nanoTime() - begin);
+
+                    appendResult(json, line, result);
+                  }
+                }
+
+                chunk.output = json.toString().getBytes(StandardCharsets.UTF_8);
+              } catch(Throwable t) {
+                error.compareAndSet(null, t);
+                chunk.output = null;
+              }
+
+              outputQueue.put(chunk);
+            }
+          } catch(InterruptedException e) {
+            error.compareAndSet(null, e);
+          }
+        }
+      }, "stream-worker-" + w));
+    }
+
+    //WRITER, ORDERED OUTPUT HOLDS EARLY CHUNKS UNTIL THEIR TURN
+
+    Thread writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        Map<Long, Chunk> pending = new HashMap<>();
+        long next = 0;
+        int ended = 0;
+
+        try {
+          while(ended < workers) {
+            Chunk chunk = outputQueue.take();
+
+            if(chunk == END) {
+              ended++;
+            } else if(!ordered) {
+              write(chunk);
+            } else {
+              pending.put(chunk.sequence, chunk);
+
+              while((chunk = pending.remove(next)) != null) {
+                write(chunk);
+                next++;
+              }
+            }
+          }
+        } catch(InterruptedException e) {
+          error.compareAndSet(null, e);
+        }
+      }
+
+      private void write(Chunk chunk) {
+        try {
+          if(error.get() == null) {
+            out.write(chunk.output);
+          }
+        } catch(Throwable t) {
+          error.compareAndSet(null, t);
+        }
+
+        inFlight.release();
+      }
+    }, "stream-writer");
+
+    for(Thread thread : threads) {
+      thread.start();
+    }
+
+    writer.start();
+
+    //READ ON THIS THREAD
+
+    InputStream counting = new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+
+        if(b >= 0) {
+          counted[0]++;
+        }
+
+        return b;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+
+        if(read > 0) {
+          counted[0] += read;
+        }
+
+        return read;
+      }
+    };
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(counting, StandardCharsets.UTF_8), BUFFER_SIZE);
+    long sequence = 0;
+    long lineCount = 0;
+
+    try {
+      List<String> chunkLines = new ArrayList<>(CHUNK_LINES);
+      String line;
+
+      while(error.get() == null && (line = reader.readLine()) != null) {
+        chunkLines.add(line);
+        lineCount++;
+
+        if(chunkLines.size() == CHUNK_LINES) {
+          inFlight.acquire();
+          inputQueue.put(new Chunk(sequence++, chunkLines));
+
+          chunkLines = new ArrayList<>(CHUNK_LINES);
+        }
+      }
+
+      if(!chunkLines.isEmpty()) {
+        inFlight.acquire();
+        inputQueue.put(new Chunk(sequence++, chunkLines));
+      }
+    } catch(IOException e) {
+      error.compareAndSet(null, e);
+    } finally {
+      for(int w = 0; w < workers; w++) {
+        inputQueue.put(END);
+      }
+
+      for(Thread thread : threads) {
+        thread.join();
+      }
+
+      writer.join();
+    }
+
+    out.flush();
+
+    time = System.nanoTime() - start;
+    lines = lineCount;
+    bytes = counted[0];
+
+    for(LatencyHistogram histogram : histograms) {
+      latency.merge(histogram);
+    }
+
+    Throwable failure = error.get();
+
+    if(failure instanceof Error) {
+      throw (Error)failure;
+    } else if(failure != null) {
+      throw (Exception)failure;
+    }
+  }
+
+  //{"input":"...","patternId":"...","attributes":{...}}
+  static void appendResult(StringBuilder json, String input, Map<String, String> result) {
+    json.append("{\"input\":");
+    appendString(json, input);
+    json.append(",\"patternId\":");
+
+    if(result == null) {
+      json.append("null,\"attributes\":null}\n");
+      return;
+    }
+
+    appendString(json, result.get("patternId"));
+    json.append(",\"attributes\":{");
+
+    boolean first = true;
+
+    for(Map.Entry<String, String> entry : result.entrySet()) {
+      if(!first) {
+        json.append(',');
+      }
+
+      appendString(json, entry.getKey());
+      json.append(':');
+      appendString(json, entry.getValue());
+
+      first = false;
+    }
+
+    json.append("}}\n");
+  }
+
+  private static void appendString(StringBuilder json, String value) {
+    if(value == null) {
+      json.append("null");
+      return;
+    }
+
+    json.append('"');
+
+    for(int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+
+      switch(c) {
+        case '"':
+          json.append("\\\"");
+          break;
+        case '\\':
+          json.append("\\\\");
+          break;
+        case '\n':
+          json.append("\\n");
+          break;
+        case '\r':
+          json.append("\\r");
+          break;
+        case '\t':
+          json.append("\\t");
+          break;
+        default:
+          if(c < 0x20) {
+            json.append(String.format("\\u%04x", (int)c));
+          } else {
+            json.append(c);
+          }
+      }
+    }
+
+    json.append('"');
+  }
+
+  public long getLines() {
+    return lines;
+  }
+
+  public long getBytes() {
+    return bytes;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public String toString() {
+    double seconds = Math.max(time, 1) / (1000.0 * 1000 * 1000);
+
+    return "Stream classified " + lines + " line(s), " + String.format("%.0f", lines / seconds) + " lines/s, " +
+        String.format("%.1f", bytes / seconds / (1024 * 1024)) + " MB/s, latency " + latency;
+  }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.node.JsonNodeFactory;
+import org.codehaus.jackson.node.ObjectNode;
+
+//VERIFIES A TEST FILE ON A WORKER POOL WITHOUT LOADING IT WHOLE. THE CALLING
+//THREAD STREAMS THE TEST CASES, WORKERS CLASSIFY AND CHECK WHOLE CHUNKS. THE
+//BOUNDED QUEUE HOLDS THE READER BACK
+public class TestRunner {
+
+  private final static int CHUNK_TESTS = 1024;
+  private final static int CHUNKS_PER_WORKER = 4;
+
+  private final TextGlassClient client;
+  private final int workers;
+  private final int slowestCount;
+
+  //STATS OF THE LAST RUN
+  private long tests;
+  private long passed;
+  private long time;
+  private LatencyHistogram latency;
+  private List<Slow> slowest;
+
+  //A SLOW TEST INPUT AND THE patternId IT CLASSIFIED TO
+  public static class Slow {
+    private final String input;
+    private final String patternId;
+    private final long ns;
+
+    private Slow(String input, String patternId, long ns) {
+      this.input = input;
+      this.patternId = patternId;
+      this.ns = ns;
+    }
+
+    public String getInput() {
+      return input;
+    }
+
+    public String getPatternId() {
+      return patternId;
+    }
+
+    public long getTime() {
+      return ns;
+    }
+
+    @Override
+    public String toString() {
+      return LatencyHistogram.format(ns) + ", patternId: " + patternId + ", input: '" + input + "'";
+    }
+  }
+
+  private final static Comparator<Slow> FASTEST_FIRST = new Comparator<Slow>() {
+    @Override
+    public int compare(Slow a, Slow b) {
+      return Long.compare(a.ns, b.ns);
+    }
+  };
+
+  private final static List<JsonNode> END = new ArrayList<>();
+
+  public TestRunner(TextGlassClient client, int workers, int slowestCount) throws Exception {
+    if(workers < 1) {
+      throw new Exception("Invalid test workers: " + workers);
+    }
+
+    if(slowestCount < 0) {
+      throw new Exception("Invalid slowest test count: " + slowestCount);
+    }
+
+    this.client = client;
+    this.workers = workers;
+    this.slowestCount = slowestCount;
+
+    tests = 0;
+    passed = 0;
+    time = 0;
+    latency = new LatencyHistogram();
+    slowest = new ArrayList<>();
+  }
+
+  //RETURNS true IF ANY TEST FAILED
+  public boolean run(String path) throws Exception {
+    final BlockingQueue<List<JsonNode>> queue = new ArrayBlockingQueue<>(workers * CHUNKS_PER_WORKER);
+    final AtomicReference<Throwable> error = new AtomicReference<>();
+    final LatencyHistogram[] histograms = new LatencyHistogram[workers];
+    final List<PriorityQueue<Slow>> slowQueues = new ArrayList<>();
+    final long[] passCounts = new long[workers];
+
+    long start = System.nanoTime();
+
+    //WORKERS
+
+    List<Thread> threads = new ArrayList<>();
+
+    for(int w = 0; w < workers; w++) {
+      final LatencyHistogram histogram = new LatencyHistogram();
+      final PriorityQueue<Slow> slow = new PriorityQueue<>(Math.max(1, slowestCount), FASTEST_FIRST);
+      final int worker = w;
+
+      histograms[w] = histogram;
+      slowQueues.add(slow);
+
+      threads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            while(true) {
+              List<JsonNode> chunk = queue.take();
+
+              if(chunk == END) {
+                return;
+              }
+
+              //ANY FAILURE, ERRORS INCLUDED, IS RECORDED AND THE WORKER KEEPS
+              //DRAINING SO THE READER NEVER BLOCKS ON A FULL QUEUE
+              try {
+                if(error.get() == null) {
+                  for(JsonNode test : chunk) {
+                    check(test, histogram, slow, worker);
+                  }
+                }
+              } catch(Throwable t) {
+                error.compareAndSet(null, t);
+              }
+            }
+          } catch(InterruptedException e) {
+            error.compareAndSet(null, e);
+          }
+        }
+
+        private void check(JsonNode test, LatencyHistogram histogram, PriorityQueue<Slow> slow, int worker)
+            throws Exception
+        {
+          String input = test.get("input").asText();
+
+          long begin = System.nanoTime();
+          Map<String, String> result = client.classify(input);
+          long ns = System.nanoTime() - begin;
+
+          histogram.record(ns);
+
+          //KEEP THE SLOWEST, THE FASTEST OF THEM IS AT THE HEAD
+
+          if(slowestCount > 0 && (slow.size() < slowestCount || ns > slow.peek().ns)) {
+            if(slow.size() == slowestCount) {
+              slow.poll();
+            }
+
+            slow.add(new Slow(input, (result == null ? null : result.get("patternId")), ns));
+          }
+
+          List<String> failures = Main.checkTest(test, result);
+
+          if(failures.isEmpty()) {
+            passCounts[worker]++;
+
+            if(Main.isLogging(2)) {
+              Main.log("Passed, expected patternId: " + Main.getResultPatternId(test) + ", input: '" + input + "'", 2);
+            }
+          } else {
+            for(String failure : failures) {
+              Main.log(failure + ", input: '" + input + "'", 2);
+            }
+          }
+        }
+      }, "test-worker-" + w));
+    }
+
+    for(Thread thread : threads) {
+      thread.start();
+    }
+
+    //READ ON THIS THREAD, THE HEADER IS CHECKED BEFORE THE TESTS IF IT COMES FIRST
+
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode header = JsonNodeFactory.instance.objectNode();
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(JsonFile.open(path));
+    boolean checked = false;
+    long testCount = 0;
+
+    try {
+      if(parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new Exception("JsonFile is not an object");
+      }
+
+      while(error.get() == null && parser.nextToken() == JsonToken.FIELD_NAME) {
+        String field = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+
+        if(field.equals("tests") && token == JsonToken.START_ARRAY) {
+          if(header.has("type")) {
+            Main.checkTestFile(client, new JsonFile(header));
+            checked = true;
+          }
+
+          List<JsonNode> chunk = new ArrayList<>(CHUNK_TESTS);
+
+          while(error.get() == null && parser.nextToken() != JsonToken.END_ARRAY) {
+            JsonNode test = parser.readValueAsTree();
+
+            if(JsonFile.get(test, "input").isNull()) {
+              throw new Exception("Bad test input found, position: " + testCount);
+            }
+
+            chunk.add(test);
+            testCount++;
+
+            if(chunk.size() == CHUNK_TESTS) {
+              queue.put(chunk);
+
+              chunk = new ArrayList<>(CHUNK_TESTS);
+            }
+          }
+
+          if(!chunk.isEmpty()) {
+            queue.put(chunk);
+          }
+        } else if(token.isScalarValue()) {
+          header.put(field, parser.readValueAsTree());
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } catch(Exception e) {
+      error.compareAndSet(null, e);
+    } finally {
+      parser.close();
+
+      for(int w = 0; w < workers; w++) {
+        queue.put(END);
+      }
+
+      for(Thread thread : threads) {
+        thread.join();
+      }
+    }
+
+    Throwable failure = error.get();
+
+    if(failure instanceof Error) {
+      throw (Error)failure;
+    } else if(failure != null) {
+      throw (Exception)failure;
+    }
+
+    if(!checked) {
+      Main.checkTestFile(client, new JsonFile(header));
+    }
+
+    time = System.nanoTime() - start;
+    tests = testCount;
+    passed = 0;
+    latency = new LatencyHistogram();
+    slowest = new ArrayList<>();
+
+    for(int w = 0; w < workers; w++) {
+      passed += passCounts[w];
+      latency.merge(histograms[w]);
+      slowest.addAll(slowQueues.get(w));
+    }
+
+    Collections.sort(slowest, Collections.reverseOrder(FASTEST_FIRST));
+
+    if(slowest.size() > slowestCount) {
+      slowest.subList(slowestCount, slowest.size()).clear();
+    }
+
+    return passed != tests;
+  }
+
+  public long getTests() {
+    return tests;
+  }
+
+  public long getPassed() {
+    return passed;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  //SLOWEST FIRST
+  public List<Slow> getSlowest() {
+    return Collections.unmodifiableList(slowest);
+  }
+
+  @Override
+  public String toString() {
+    double seconds = Math.max(time, 1) / (1000.0 * 1000 * 1000);
+
+    return "Test verified " + tests + " test(s) on " + workers + " worker(s), " +
+        String.format("%.0f", tests / seconds) + " tests/s, latency " + latency;
+  }
+}
@@ -16,433 +16,531 @@
  *
  */
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.codehaus.jackson.JsonNode;
 
+//LOADING BUILDS AN IMMUTABLE Domain WHICH IS PUBLISHED THROUGH A VOLATILE
+//FIELD. classify READS IT ONCE PER CALL AND NEVER LOCKS, SO ONE CLIENT CAN BE
+//SHARED BY ANY NUMBER OF THREADS. LOADING AND CONFIGURATION ARE SYNCHRONIZED,
+//A RELOAD BUILDS THE NEW DOMAIN UNLOCKED AND ONLY SYNCHRONIZES THE SWAP
 public class TextGlassClient {
   
   public final static String VERSION = "1.0.0";
 
-  private String domain;
-  private String domainVersion;
+  //LOADED DOMAIN, NULL UNTIL load() OR loadSnapshot()
+  private volatile Domain domain;
 
-  //INPUT PARSING
-  private List<Transformer> transformers;
-  private List<String> tokenSeperators;
-  private int ngramConcatSize;
+  //OPTIONAL RESULT CACHE, CLEARED WHENEVER A DOMAIN IS LOADED
+  private volatile ResultCache cache;
 
-  //PATTERN MATCHING
-  private final Map<String, List<Pattern>> patterns;
-  private final Map<String, Attributes> attributes;
+  //TOKEN MATCHING ENGINE
+  private Matcher matcher;
 
-  private String defaultId;
+  //BATCH CLASSIFY POOL
+  private volatile ForkJoinPool batchPool;
 
-  public TextGlassClient() {
-    domain = null;
-    domainVersion = null;
+  //OPTIONAL CLASSIFY METRICS, null WHEN DISABLED
+  private volatile ClientMetrics metrics;
 
-    transformers = new ArrayList<>();
-    tokenSeperators = new ArrayList<>();
-    ngramConcatSize = 1;
+  //DOMAIN FILE LOAD PARALLELISM, 1 LOADS SEQUENTIALLY
+  private int loadParallelism;
 
-    patterns = new HashMap<>();
-    attributes = new HashMap<>();
+  //STREAM THE DOMAIN FILES INSTEAD OF PARSING THEM WHOLE
+  private boolean loadStreaming;
 
-    defaultId = null;
-  }
+  //INDEX THE ATTRIBUTES AT LOAD, BUILD EACH ON FIRST USE
+  private boolean lazyAttributes;
 
-  public void load(JsonFile patternFile, JsonFile patternPatchFile,
-      JsonFile attributeFile, JsonFile attributePatchFile) throws Exception
-  {
+  //BUILD THE PATTERNS INTO A COLUMNAR PatternStore
+  private boolean compactPatterns;
 
-    if(domain != null) {
-      throw new Exception("Client has already been initialized");
-    }
+  private final static int BATCH_THRESHOLD = 256;
+  private final static int BATCH_SIZE = 64 * 1024;
 
-    //GET THE DOMAIN
-    
-    if(!patternFile.getType().equals("pattern")) {
-      throw new Exception("Unknown pattern file type: " + patternFile.getType());
-    }
+  public enum Matcher {
+    Ngram, AhoCorasick, RollingHash
+  };
 
-    domain = patternFile.getDomain();
-    domainVersion = patternFile.getDomainVersion();
+  public TextGlassClient() {
+    domain = null;
 
-    //VALIDATE PATTERN PATCH FILE
+    cache = null;
 
-    if(patternPatchFile != null) {
-      if(!patternPatchFile.getType().equals("patternPatch")) {
-        throw new Exception("Unknown pattern patch file type: " + patternPatchFile.getType());
-      }
+    matcher = Matcher.Ngram;
 
-      if(!domain.equals(patternPatchFile.getDomain())) {
-        throw new Exception("Domains do not match: " + domain + " != " + patternPatchFile.getDomain());
-      }
+    batchPool = null;
 
-      if(!domainVersion.equals(patternPatchFile.getDomainVersion())) {
-        throw new Exception("Versions do not match: " + domainVersion + " != " + patternPatchFile.getDomainVersion());
-      }
-    }
+    metrics = null;
 
-    //VALIDATE ATTRIBUTE FILE
+    loadParallelism = 1;
 
-    if(attributeFile != null) {
-      if(!attributeFile.getType().equals("attribute")) {
-        throw new Exception("Unknown attribute file type: " + attributeFile.getType());
-      }
+    loadStreaming = false;
 
-      if(!domain.equals(attributeFile.getDomain())) {
-        throw new Exception("Domains do not match: " + domain + " != " + attributeFile.getDomain());
-      }
+    lazyAttributes = false;
 
-      if(!domainVersion.equals(attributeFile.getDomainVersion())) {
-        throw new Exception("Versions do not match: " + domainVersion + " != " + attributeFile.getDomainVersion());
-      }
-    }
+    compactPatterns = false;
+  }
 
-    //VALIDATE ATTRIBUTE PATCH FILE
+  public synchronized void setResultCache(int maxEntries, long maxBytes) throws Exception {
+    cache = new ResultCache(maxEntries, maxBytes);
+  }
 
-    if(attributePatchFile != null) {
-      if(!attributePatchFile.getType().equals("attributePatch")) {
-        throw new Exception("Unknown attribute patch file type: " + attributePatchFile.getType());
-      }
+  public ResultCache getResultCache() {
+    return cache;
+  }
 
-      if(!domain.equals(attributePatchFile.getDomain())) {
-        throw new Exception("Domains do not match: " + domain + " != " + attributePatchFile.getDomain());
-      }
+  //START RECORDING CLASSIFY METRICS AND REGISTER THEM AS AN MBEAN
+  public synchronized ClientMetrics enableMetrics() throws Exception {
+    if(metrics == null) {
+      ClientMetrics created = new ClientMetrics();
 
-      if(!domainVersion.equals(attributePatchFile.getDomainVersion())) {
-        throw new Exception("Versions do not match: " + domainVersion + " != " + attributePatchFile.getDomainVersion());
-      }
+      created.register();
+
+      metrics = created;
     }
 
-    //LOAD THE FILES
+    return metrics;
+  }
 
-    loadPatterns(patternFile, false);
+  public synchronized void disableMetrics() throws Exception {
+    if(metrics != null) {
+      metrics.unregister();
 
-    if(patternPatchFile != null) {
-      loadPatterns(patternPatchFile, true);
+      metrics = null;
     }
+  }
+
+  public ClientMetrics getMetrics() {
+    return metrics;
+  }
+
+  private static ClientMetrics.Recorder getRecorder(ClientMetrics current) {
+    return (current == null ? null : current.getRecorder());
+  }
 
-    if(attributeFile != null) {
-      loadAttributes(attributeFile);
+  public synchronized void setMatcher(Matcher matcher) throws Exception {
+    if(domain != null) {
+      domain = domain.withMatcher(matcher);
     }
 
-    if(attributePatchFile != null) {
-      loadAttributes(attributePatchFile);
+    this.matcher = matcher;
+  }
+
+  public synchronized Matcher getMatcher() {
+    return matcher;
+  }
+
+  public synchronized void setLoadParallelism(int parallelism) throws Exception {
+    if(parallelism < 1) {
+      throw new Exception("Invalid load parallelism: " + parallelism);
     }
+
+    loadParallelism = parallelism;
   }
 
-  private void loadPatterns(JsonFile patternFile, boolean patch) throws Exception {
-    Main.log("Loading pattern domain: " + patternFile.getDomain() + ", version: " +
-        patternFile.getDomainVersion() + (patch ? ", patch" : ""), 1);
+  public synchronized int getLoadParallelism() {
+    return loadParallelism;
+  }
 
-    //INPUT PARSER
+  public synchronized void setLoadStreaming(boolean streaming) {
+    loadStreaming = streaming;
+  }
 
-    if(JsonFile.get(patternFile.getJsonNode(), "inputParser").isObject()) {
-      JsonNode inputParser = patternFile.getJsonNode().get("inputParser");
+  public synchronized boolean isLoadStreaming() {
+    return loadStreaming;
+  }
 
-      //TRANSFORMERS
+  public synchronized void setLazyAttributes(boolean lazy) {
+    lazyAttributes = lazy;
+  }
 
-      if(JsonFile.get(inputParser, "transformers").isArray()) {
-        if(patch) {
-          transformers = new ArrayList<>();
-        }
+  public synchronized boolean isLazyAttributes() {
+    return lazyAttributes;
+  }
 
-        for(int i = 0; i < inputParser.get("transformers").size(); i++) {
-          JsonNode transformerNode = inputParser.get("transformers").get(i);
+  public synchronized void setCompactPatterns(boolean compact) {
+    compactPatterns = compact;
+  }
 
-          Transformer transformer = getTransformer(transformerNode);
+  public synchronized boolean isCompactPatterns() {
+    return compactPatterns;
+  }
 
-          transformers.add(transformer);
+  public synchronized void loadSnapshot(String path) throws Exception {
 
-          Main.log("Found transformer: " + transformer, 2);
-        }
-      }
+    if(domain != null) {
+      throw new Exception("Client has already been initialized");
+    }
 
-      Main.log("Found " + transformers.size() + " transformer(s)", 1);
+    publish(new DomainBuilder().setMatcher(matcher).loadSnapshot(path).build());
+  }
 
-      //TOKEN SEPERATORS
+  public synchronized void load(JsonFile patternFile, JsonFile patternPatchFile,
+      JsonFile attributeFile, JsonFile attributePatchFile) throws Exception
+  {
 
-      if(JsonFile.get(inputParser, "tokenSeperators").isArray()) {
-        if(patch) {
-          tokenSeperators = new ArrayList<>();
-        }
-        
-        for(int i = 0; i < inputParser.get("tokenSeperators").size(); i++) {
-          JsonNode tokenSeperatorNode = inputParser.get("tokenSeperators").get(i);
+    if(domain != null) {
+      throw new Exception("Client has already been initialized");
+    }
 
-          if(tokenSeperatorNode.asText().isEmpty()) {
-            throw new Exception("Empty tokenSeperator not allowed");
-          }
+    publish(new DomainBuilder().setMatcher(matcher).setCompactPatterns(compactPatterns)
+        .load(patternFile, patternPatchFile, attributeFile, attributePatchFile).build());
+  }
 
-          String tokenSeperator = tokenSeperatorNode.asText();
+  //LOAD THE DOMAIN FILES, PARSED AND BUILT ON loadParallelism THREADS OR STREAMED
+  public synchronized void load(String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
 
-          tokenSeperators.add(tokenSeperator);
+    if(domain != null) {
+      throw new Exception("Client has already been initialized");
+    }
 
-          Main.log("Found tokenSeperator: '" + tokenSeperator + "'", 2);
-        }
+    publish(new DomainBuilder().setMatcher(matcher).setParallelism(loadParallelism).setStreaming(loadStreaming)
+        .setLazyAttributes(lazyAttributes).setCompactPatterns(compactPatterns)
+        .load(patternFile, patternPatchFile, attributeFile, attributePatchFile).build());
+  }
 
-        Main.log("Found " + tokenSeperators.size() + " tokenSeperator(s)", 1);
-      }
+  //BUILD A NEW DOMAIN OFF TO THE SIDE, classify KEEPS SERVING THE CURRENT ONE
+  public void reload(JsonFile patternFile, JsonFile patternPatchFile,
+      JsonFile attributeFile, JsonFile attributePatchFile) throws Exception
+  {
+    swap(new DomainBuilder().setMatcher(getMatcher()).setParallelism(getLoadParallelism())
+        .setCompactPatterns(isCompactPatterns()).load(patternFile, patternPatchFile, attributeFile, attributePatchFile).build());
+  }
 
-      //NGRAM SIZE
+  public void reload(String patternFile, String patternPatchFile,
+      String attributeFile, String attributePatchFile) throws Exception
+  {
+    swap(new DomainBuilder().setMatcher(getMatcher()).setParallelism(getLoadParallelism())
+        .setStreaming(isLoadStreaming()).setLazyAttributes(isLazyAttributes())
+        .setCompactPatterns(isCompactPatterns()).load(patternFile, patternPatchFile, attributeFile, attributePatchFile).build());
+  }
 
-      if(inputParser.get("ngramConcatSize") != null) {
-        String ngramConcatSizeStr = inputParser.get("ngramConcatSize").asText();
-        ngramConcatSize = Integer.parseInt(ngramConcatSizeStr);
+  public void reloadSnapshot(String path) throws Exception {
+    swap(new DomainBuilder().setMatcher(getMatcher()).loadSnapshot(path).build());
+  }
 
-        if(ngramConcatSize < 1) {
-          throw new Exception("Invalid value of ngramConcatSize: " + ngramConcatSize);
-        }
+  //IN FLIGHT CALLS FINISH ON THE DOMAIN THEY ALREADY READ
+  private synchronized void swap(Domain loaded) throws Exception {
+    Domain previous = domain;
 
-        Main.log("Found ngramConcatSize: " + ngramConcatSize, 2);
-      }
+    if(!loaded.getMatcher().equals(matcher)) {
+      loaded = loaded.withMatcher(matcher);
     }
 
-    //PATTERN SET
-
-    if(JsonFile.get(patternFile.getJsonNode(), "patternSet").isObject()) {
-      JsonNode patternSet = patternFile.getJsonNode().get("patternSet");
+    publish(loaded);
 
-      if(!JsonFile.empty(patternSet, "defaultId")) {
-        defaultId = patternSet.get("defaultId").asText();
+    Main.log("Reloaded domain: " + loaded.getName() + ", version: " + loaded.getVersion() +
+        (previous == null ? "" : ", previous version: " + previous.getVersion()), 1);
+  }
 
-        Main.log("Found defaultId: " + defaultId, 2);
-      }
+  //PUBLISH FIRST, THEN CLEAR, SO A RESULT FROM THE PREVIOUS DOMAIN IS NEVER CACHED
+  private void publish(Domain loaded) {
+    domain = loaded;
 
-      //PATTERNS
+    ResultCache current = cache;
 
-      int patternCount = 0;
+    if(current != null) {
+      current.clear();
+    }
+  }
 
-      if(JsonFile.get(patternSet, "patterns").isArray()) {
-        for(int i = 0; i < patternSet.get("patterns").size(); i++) {
-          JsonNode patternNode = patternSet.get("patterns").get(i);
+  public ClassificationResult classify(String input) throws Exception {
+    if(input == null) {
+      input = "";
+    }
 
-          Pattern pattern = new Pattern(patternNode);
+    ResultCache current = cache;
+    ClientMetrics currentMetrics = metrics;
 
-          for(String patternToken : pattern.getPatternTokens()) {
-            List<Pattern> tokenPatterns = patterns.get(patternToken);
+    if(current != null) {
+      long generation = current.getGeneration();
 
-            if(tokenPatterns == null) {
-              tokenPatterns = new ArrayList<>();
-            }
+      return classify(input, getLoadedDomain(), current, generation, currentMetrics);
+    }
 
-            tokenPatterns.add(pattern);
+    return getLoadedDomain().classify(input, getRecorder(currentMetrics));
+  }
 
-            patterns.put(patternToken, tokenPatterns);
-          }
+  //TRACE A CLASSIFICATION AGAINST THE LOADED DOMAIN, BYPASSES THE RESULT CACHE AND METRICS
+  public Explanation explain(String input) throws Exception {
+    return getLoadedDomain().explain(input == null ? "" : input);
+  }
 
-          Main.log(pattern.toStringFull(), 3);
+  //CLASSIFY WITHOUT BUILDING A String UNLESS AN attributeTransformer NEEDS THE INPUT.
+  //THE RESULT CACHE IS KEYED BY String, SO WITH A CACHE THE INPUT IS MATERIALIZED
+  public ClassificationResult classify(CharSequence input) throws Exception {
+    if(input == null || input instanceof String || cache != null) {
+      return classify(input == null ? null : input.toString());
+    }
 
-          patternCount++;
-        }
-      }
+    return getLoadedDomain().classify(input, getRecorder(metrics));
+  }
 
-      if(patternCount == 0 && defaultId == null) {
-        throw new Exception("No patterns found");
-      }
+  //UTF-8 BYTES
+  public ClassificationResult classify(byte[] input, int offset, int length) throws Exception {
+    return classify(input, offset, length, StandardCharsets.UTF_8);
+  }
 
-      Main.log("Found " + patternCount + " pattern(s), total: " + patterns.size(), 1);
+  //ASCII AND LATIN-1 ARE READ IN PLACE, ANYTHING ELSE IS DECODED
+  public ClassificationResult classify(byte[] input, int offset, int length, Charset charset) throws Exception {
+    if(StandardCharsets.ISO_8859_1.equals(charset) || ByteSequence.isAscii(input, offset, length) &&
+        (StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset))) {
+      return classify(new ByteSequence(input, offset, length));
     }
 
-    //OPTIONAL ATTRIBUTES IN PATTERN FILE
-    
-    if(JsonFile.get(patternFile.getJsonNode(), "attributes").isObject()) {
-      loadAttributes(patternFile);
-    }
+    return classify(new String(input, offset, length, charset));
   }
 
-  private void loadAttributes(JsonFile attributeFile) throws Exception {
-    Main.log("Loading attributes: " + attributeFile.getDomain() +
-        ", version: " + attributeFile.getDomainVersion(), 1);
+  //UTF-8 BYTES FROM position TO limit, THE BUFFER POSITION IS NOT CHANGED
+  public ClassificationResult classify(ByteBuffer input) throws Exception {
+    if(input.hasArray()) {
+      return classify(input.array(), input.arrayOffset() + input.position(), input.remaining());
+    }
 
-    //ATTRIBUTES
+    if(ByteSequence.isAscii(input, input.position(), input.remaining())) {
+      return classify(new ByteSequence(input, input.position(), input.remaining()));
+    }
 
-    int attributeCount = 0;
+    return classify(StandardCharsets.UTF_8.decode(input.duplicate()).toString());
+  }
 
-    if(JsonFile.get(attributeFile.getJsonNode(), "attributes").isObject()) {
-      JsonNode attributesJson = attributeFile.getJsonNode().get("attributes");
-      for(Iterator<String> i = attributesJson.getFieldNames(); i.hasNext();) {
-        String patternId = i.next();
+  //THE GENERATION MUST BE READ BEFORE THE DOMAIN
+  private static ClassificationResult classify(String input, Domain loaded,
+      ResultCache current, long generation, ClientMetrics metrics) throws Exception
+  {
 
-        if(patternId.isEmpty()) {
-          throw new Exception("Empty patternId not allowed");
-        }
+    //CHECK THE RESULT CACHE
 
-        if(!JsonFile.get(attributesJson, patternId).isObject()) {
-          throw new Exception("Invalid attribute map for: " + patternId);
-        }
+    ClassificationResult cached = current.get(input);
 
-        JsonNode attributeNode = attributesJson.get(patternId);
+    if(cached != null) {
+      return (cached == ResultCache.NO_RESULT ? null : cached);
+    }
 
-        Attributes patternAttributes = new Attributes(patternId, attributeNode);
+    ClassificationResult result = loaded.classify(input, getRecorder(metrics));
 
-        Main.log(patternAttributes.toString(), 3);
+    current.put(input, result, generation);
 
-        attributes.put(patternId, patternAttributes);
+    return result;
+  }
 
-        attributeCount++;
-      }
+  //BATCH PARALLELISM, THE COMMON POOL UNLESS SET
+  public synchronized void setBatchParallelism(int parallelism) throws Exception {
+    if(parallelism < 1) {
+      throw new Exception("Invalid batch parallelism: " + parallelism);
     }
 
-    if(attributeCount == 0) {
-      throw new Exception("No attributes found");
-    }
+    ForkJoinPool previous = batchPool;
 
-    Main.log("Found " + attributeCount + " attributes(s), total: " + attributes.size(), 1);
-  }
+    batchPool = new ForkJoinPool(parallelism);
 
-  public Map<String, String> classify(String input) throws Exception {
-    if(input == null) {
-      input = "";
+    if(previous != null) {
+      previous.shutdown();
     }
+  }
 
-    Main.log("Classify: '" + input + "'", 2);
+  //CLASSIFY A BATCH ACROSS THE BATCH POOL. EACH DISTINCT INPUT IS CLASSIFIED
+  //ONCE AGAINST A SINGLE DOMAIN, RESULTS ARE IN INPUT ORDER
+  public List<Map<String, String>> classifyAll(List<String> inputs) throws Exception {
+    ResultCache current = cache;
+    long generation = (current == null ? 0 : current.getGeneration());
+    Domain loaded = getLoadedDomain();
 
-    //TRANFORM THE INPUT
+    //DEDUP THE BATCH
 
-    String transformed = input;
+    Map<String, Integer> distinctIds = new HashMap<>();
+    List<String> distinct = new ArrayList<>();
+    int[] resultIds = new int[inputs.size()];
+    int pos = 0;
 
-    for(Transformer transformer : transformers) {
-      transformed = transformer.transform(transformed);
-    }
+    for(String input : inputs) {
+      if(input == null) {
+        input = "";
+      }
 
-    Main.log("Transformed: '" + transformed + "'", 3);
+      Integer id = distinctIds.get(input);
 
-    //TOKENIZE THE INPUT
+      if(id == null) {
+        id = distinct.size();
+        distinctIds.put(input, id);
+        distinct.add(input);
+      }
 
-    List<String> tokens = split(transformed, tokenSeperators);
+      resultIds[pos++] = id;
+    }
 
-    Main.log("Tokens: " + tokens, 3);
+    Main.log("Batch: " + inputs.size() + " input(s), " + distinct.size() + " distinct", 2);
 
-    //NGRAM THE INPUT
+    //CLASSIFY THE DISTINCT INPUTS
 
-    List<String> ngramTokenStream = new ArrayList<>();
+    Map<String, String>[] distinctResults = newResults(distinct.size());
+    BatchTask task = new BatchTask(distinct, distinctResults, 0, distinct.size(), loaded, current, generation, metrics);
+    ForkJoinPool pool = batchPool;
 
-    for(int i = 0; i < tokens.size(); i++) {
-      String ngram = "";
-      List<String> ngramParts = new ArrayList<>();
+    try {
+      (pool == null ? ForkJoinPool.commonPool() : pool).invoke(task);
+    } catch(IllegalStateException e) {
 
-      for(int size = ngramConcatSize; size > 0 && i + ngramConcatSize - size < tokens.size(); size--) {
-        ngram += tokens.get(i + ngramConcatSize - size);
+      //THE POOL MAY WRAP THE WORKER'S EXCEPTION AGAIN
 
-        ngramParts.add(0, ngram);
+      Throwable cause = e;
+
+      while(cause instanceof IllegalStateException && cause.getCause() != null) {
+        cause = cause.getCause();
       }
 
-      ngramTokenStream.addAll(ngramParts);
+      if(cause instanceof Exception) {
+        throw (Exception)cause;
+      }
 
-      ngramParts.clear();
+      throw e;
     }
 
-    Main.log("Ngrams: " + ngramTokenStream, 3);
+    //EXPAND BACK TO INPUT ORDER
 
-    //MATCH THE TOKEN STREAM AGAINST THE PATTERNS
+    Map<String, String>[] results = newResults(resultIds.length);
+
+    for(int i = 0; i < resultIds.length; i++) {
+      results[i] = distinctResults[resultIds[i]];
+    }
 
-    List<String> matchedTokens = new ArrayList<>();
-    List<Pattern> candidates = new ArrayList<>();
-    Pattern winner = null;
+    return Collections.unmodifiableList(Arrays.asList(results));
+  }
 
-    for(String token : ngramTokenStream) {
-      List<Pattern> matched = patterns.get(token);
+  //CLASSIFY A STREAM IN BATCHES OF BATCH_SIZE, RESULTS ARE IN INPUT ORDER
+  public Stream<Map<String, String>> classifyAll(Stream<String> inputs) {
+    final Iterator<String> source = inputs.iterator();
 
-      if(matched != null) {
-        matchedTokens.add(token);
+    Iterator<Map<String, String>> results = new Iterator<Map<String, String>>() {
+      private List<Map<String, String>> batch = Collections.emptyList();
+      private int pos = 0;
 
-        for(Pattern match : matched) {
-          if(!candidates.contains(match)) {
-            candidates.add(match);
+      @Override
+      public boolean hasNext() {
+        while(pos == batch.size()) {
+          if(!source.hasNext()) {
+            return false;
           }
-        }
 
-        Main.log("Hit: " + token + ", candidates: " + matched, 3);
-      }
-    }
+          List<String> next = new ArrayList<>();
 
-    //FIND THE WINNER
-
-    if(winner == null) {
-      for(Pattern candidate : candidates) {
-        if(candidate.isValid(matchedTokens)) {
-          Main.log("Candidate: " + candidate.toStringRank(matchedTokens), 3);
-          
-          if(winner == null) {
-            winner = candidate;
-          } else if(candidate.getRank() > winner.getRank()) {
-            winner = candidate;
-          } else if(candidate.getRank() == winner.getRank() &&
-              candidate.getMatchedLength(matchedTokens) > winner.getMatchedLength(matchedTokens)) {
-            winner = candidate;
+          while(source.hasNext() && next.size() < BATCH_SIZE) {
+            next.add(source.next());
           }
+
+          try {
+            batch = classifyAll(next);
+          } catch(Exception e) {
+            throw new IllegalStateException("Batch classify failed: " + e.toString(), e);
+          }
+
+          pos = 0;
         }
+
+        return true;
       }
-    }
-    
-    Main.log("Winner: " + (winner == null ? "null" : winner.toStringFull()), 3);
 
-    //RETURN THE RESULT
+      @Override
+      public Map<String, String> next() {
+        if(!hasNext()) {
+          throw new NoSuchElementException();
+        }
 
-    if(winner == null) {
-      if(defaultId != null) {
-        return getPatternAttributes(defaultId, input);
-      } else {
-        return null;
+        return batch.get(pos++);
       }
-    }
-    
-    return getPatternAttributes(winner.getPatternId(), input);
+    };
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.ORDERED), false)
+        .onClose(inputs::close);
   }
 
-  private Map<String, String> getPatternAttributes(String patternId, String input) {
-    Attributes patternAttributes = attributes.get(patternId);
+  @SuppressWarnings("unchecked")
+  private static Map<String, String>[] newResults(int size) {
+    return (Map<String, String>[])new Map<?, ?>[size];
+  }
 
-    //FOUND ATTRIBUTE MAP
+  //SPLITS THE DISTINCT INPUTS DOWN TO BATCH_THRESHOLD, WORKER THREADS KEEP THEIR
+  //MatchState AND LEXER SCRATCH ACROSS TASKS AND BATCHES
+  private static class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final List<String> inputs;
+    private final Map<String, String>[] results;
+    private final int start;
+    private final int end;
+    private final Domain loaded;
+    private final ResultCache cache;
+    private final long generation;
+    private final ClientMetrics metrics;
+
+    BatchTask(List<String> inputs, Map<String, String>[] results, int start, int end,
+        Domain loaded, ResultCache cache, long generation, ClientMetrics metrics)
+    {
+      this.inputs = inputs;
+      this.results = results;
+      this.start = start;
+      this.end = end;
+      this.loaded = loaded;
+      this.cache = cache;
+      this.generation = generation;
+      this.metrics = metrics;
+    }
 
-    if(patternAttributes != null) {
-      Map<String, String> attributeMap = patternAttributes.getAttributes(input);
-      Attributes parent = patternAttributes;
+    @Override
+    protected void compute() {
+      if(end - start > BATCH_THRESHOLD) {
+        int middle = (start + end) >>> 1;
 
-      //COPY PARENT ATTRIBUTES
+        invokeAll(new BatchTask(inputs, results, start, middle, loaded, cache, generation, metrics),
+            new BatchTask(inputs, results, middle, end, loaded, cache, generation, metrics));
 
-      if(patternAttributes.getParentId() != null) {
-        attributeMap = new HashMap<>(attributeMap);
+        return;
       }
 
-      while(parent.getParentId() != null) {
-        parent = attributes.get(parent.getParentId());
+      try {
+        ClientMetrics.Recorder recorder = getRecorder(metrics);
 
-        if(parent == null) {
-          break;
-        }
-
-        Map<String, String> parentMap = parent.getAttributes(input);
-
-        for(String key : parentMap.keySet()) {
-          if(!attributeMap.containsKey(key)) {
-            attributeMap.put(key, parentMap.get(key));
+        for(int i = start; i < end; i++) {
+          if(cache != null) {
+            results[i] = classify(inputs.get(i), loaded, cache, generation, metrics);
+          } else {
+            results[i] = loaded.classify(inputs.get(i), recorder);
           }
         }
+      } catch(Exception e) {
+        throw new IllegalStateException(e);
       }
-
-      Main.log("Attribute map: " + attributeMap, 3);
-
-      return attributeMap;
     }
+  }
 
-    //NO ATTRIBUTES, RETURN MAP WITH JUST PATTERN ID
-    Map<String, String> custom = new HashMap<>();
-
-    custom.put("patternId", patternId);
+  //THE CURRENT DOMAIN, READ ONCE AND USED FOR A WHOLE CLASSIFICATION
+  Domain getLoadedDomain() throws Exception {
+    Domain loaded = domain;
 
-    Main.log("Attribute map: " + custom, 3);
+    if(loaded == null) {
+      throw new Exception("Client has not been initialized");
+    }
 
-    return Collections.unmodifiableMap(custom);
+    return loaded;
   }
 
   //SPLIT A STRING
@@ -510,11 +608,20 @@ public class TextGlassClient {
   }
 
   public String getDomain() {
-    return domain;
+    Domain loaded = domain;
+
+    return (loaded == null ? null : loaded.getName());
   }
 
   public String getDomainVersion() {
-    return domainVersion;
+    Domain loaded = domain;
+
+    return (loaded == null ? null : loaded.getVersion());
   }
 
+  public String getDefaultId() {
+    Domain loaded = domain;
+
+    return (loaded == null ? null : loaded.getDefaultId());
+  }
 }
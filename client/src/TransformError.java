@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015 TextGlass
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+
+//A FAILED attributeTransformer IN A ClassificationResult. THE _error STRING,
+//THE toString() OF THE EXCEPTION getValue WOULD THROW, IS ONLY BUILT WHEN READ
+final class TransformError {
+
+  private final AttributeTransformer source;
+  private final String input;
+
+  //RACY BUT IDEMPOTENT
+  private String message;
+
+  TransformError(AttributeTransformer source, String input) {
+    this.source = source;
+    this.input = input;
+  }
+
+  String getMessage() {
+    String built = message;
+
+    if(built == null) {
+      built = source.getError(input);
+      message = built;
+    }
+
+    return built;
+  }
+
+  @Override
+  public String toString() {
+    return getMessage();
+  }
+}
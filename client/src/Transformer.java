@@ -18,4 +18,24 @@
 
 public interface Transformer {
   public String transform(String input) throws Exception;
+
+  //NON THROWING transform FOR THE HOT PATH, null WHERE transform WOULD THROW
+  public default String tryTransform(String input) {
+    try {
+      return transform(input);
+    } catch(Exception e) {
+      return null;
+    }
+  }
+
+  //toString() OF THE EXCEPTION transform THROWS FOR THIS INPUT, null IF NONE
+  public default String getError(String input) {
+    try {
+      transform(input);
+    } catch(Exception e) {
+      return e.toString();
+    }
+
+    return null;
+  }
 }
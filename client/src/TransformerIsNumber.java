@@ -28,6 +28,134 @@ public class TransformerIsNumber implements Transformer {
     return input;
   }
 
+  @Override
+  public String tryTransform(String input) {
+    return (isNumber(input) ? input : null);
+  }
+
+  //ACCEPTS EXACTLY THE STRINGS Double.parseDouble ACCEPTS, WITHOUT THE EXCEPTION
+  static boolean isNumber(String input) {
+    int start = 0;
+    int end = input.length();
+
+    //SAME WHITESPACE AS String.trim()
+
+    while(start < end && input.charAt(start) <= ' ') {
+      start++;
+    }
+
+    while(end > start && input.charAt(end - 1) <= ' ') {
+      end--;
+    }
+
+    int i = start;
+
+    if(i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+      i++;
+    }
+
+    if(i == end) {
+      return false;
+    }
+
+    char c = input.charAt(i);
+
+    if(c == 'N') {
+      return end - i == 3 && input.startsWith("NaN", i);
+    } else if(c == 'I') {
+      return end - i == 8 && input.startsWith("Infinity", i);
+    } else if(c == '0' && i + 1 < end && (input.charAt(i + 1) == 'x' || input.charAt(i + 1) == 'X')) {
+      return isHexNumber(input, i + 2, end);
+    }
+
+    //DIGITS WITH AT MOST ONE POINT
+
+    int digits = 0;
+    boolean point = false;
+
+    for(; i < end; i++) {
+      c = input.charAt(i);
+
+      if(c >= '0' && c <= '9') {
+        digits++;
+      } else if(c == '.' && !point) {
+        point = true;
+      } else if(c == '.') {
+        return false;
+      } else {
+        break;
+      }
+    }
+
+    if(digits == 0) {
+      return false;
+    }
+
+    //EXPONENT
+
+    if(i < end && (input.charAt(i) == 'e' || input.charAt(i) == 'E')) {
+      i = skipExponent(input, i + 1, end);
+
+      if(i < 0) {
+        return false;
+      }
+    }
+
+    return isEnd(input, i, end);
+  }
+
+  //[HEX DIGITS][.HEX DIGITS] WITH AT LEAST ONE DIGIT, THEN A BINARY EXPONENT
+  private static boolean isHexNumber(String input, int i, int end) {
+    int digits = 0;
+    boolean point = false;
+
+    for(; i < end; i++) {
+      char c = input.charAt(i);
+
+      if((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+        digits++;
+      } else if(c == '.' && !point) {
+        point = true;
+      } else {
+        break;
+      }
+    }
+
+    if(digits == 0 || i == end || (input.charAt(i) != 'p' && input.charAt(i) != 'P')) {
+      return false;
+    }
+
+    i = skipExponent(input, i + 1, end);
+
+    return i >= 0 && isEnd(input, i, end);
+  }
+
+  //OPTIONALLY SIGNED DIGITS, THE POSITION AFTER THEM OR -1 IF THERE ARE NONE
+  private static int skipExponent(String input, int i, int end) {
+    if(i < end && (input.charAt(i) == '-' || input.charAt(i) == '+')) {
+      i++;
+    }
+
+    int digits = i;
+
+    while(i < end && input.charAt(i) >= '0' && input.charAt(i) <= '9') {
+      i++;
+    }
+
+    return (i == digits ? -1 : i);
+  }
+
+  //NOTHING LEFT BUT AN OPTIONAL f, F, d OR D SUFFIX
+  private static boolean isEnd(String input, int i, int end) {
+    if(i == end) {
+      return true;
+    }
+
+    char c = input.charAt(i);
+
+    return i == end - 1 && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+  }
+
   @Override
   public String toString() {
     return "TransformerIsNumber";
@@ -40,6 +40,14 @@ public class TransformerReplaceAll implements Transformer {
     return input.replace(find, replaceWith);
   }
 
+  String getFind() {
+    return find;
+  }
+
+  String getReplaceWith() {
+    return replaceWith;
+  }
+
   @Override
   public String toString() {
     return "TransformerReplaceAll  find: '" + find + "'  replaceWith: '" + replaceWith + "'";
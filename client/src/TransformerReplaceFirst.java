@@ -46,6 +46,14 @@ public class TransformerReplaceFirst implements Transformer {
     return input;
   }
 
+  String getFind() {
+    return find;
+  }
+
+  String getReplaceWith() {
+    return replaceWith;
+  }
+
   @Override
   public String toString() {
     return "TransformerReplaceFirst  find: '" + find + "'  replaceWith: '" + replaceWith + "'";
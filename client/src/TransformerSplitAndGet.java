@@ -48,11 +48,7 @@ public class TransformerSplitAndGet implements Transformer {
   public String transform(String input) throws Exception {
     List<String> parts = TextGlassClient.split(input, delimiter);
     
-    int i = get;
-
-    if(get == -1) {
-      i = parts.size() - 1;
-    }
+    int i = getIndex(parts);
 
     if(i < 0 || i >= parts.size()) {
       throw new Exception("SplitAndGet index out of range: " + i);
@@ -61,6 +57,19 @@ public class TransformerSplitAndGet implements Transformer {
     return parts.get(i);
   }
 
+  @Override
+  public String tryTransform(String input) {
+    List<String> parts = TextGlassClient.split(input, delimiter);
+
+    int i = getIndex(parts);
+
+    return (i < 0 || i >= parts.size() ? null : parts.get(i));
+  }
+
+  private int getIndex(List<String> parts) {
+    return (get == -1 ? parts.size() - 1 : get);
+  }
+
   @Override
   public String toString() {
     return "SplitAndGet  delimiter: '" + delimiter + "'  get: " + get;
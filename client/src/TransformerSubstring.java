@@ -52,6 +52,15 @@ public class TransformerSubstring implements Transformer {
       throw new Exception("start position out of range: " + start);
     }
 
+    return tryTransform(input);
+  }
+
+  @Override
+  public String tryTransform(String input) {
+    if(start >= input.length()) {
+      return null;
+    }
+
     if(maxLength >= 0 && (maxLength + start) <= input.length()) {
       return input.substring(start, maxLength + start);
     }
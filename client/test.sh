@@ -21,6 +21,9 @@ fi
 
 FAIL=
 PASS=
+SNAPSHOT=`mktemp`
+
+trap "rm -f $SNAPSHOT" EXIT
 
 for DROOT in $DOMAINS
 do
@@ -46,7 +49,7 @@ do
     AP=`find $DROOT -type f | grep attribute | grep patch | sort | sed "s/^/-ap /" | xargs echo`
     T=`find $DROOT -type f | grep test | sort | sed "s/^/-t /" | xargs echo`
 
-    CMD="`echo ./run.sh $P $PP $A $AP $T -q`"
+    CMD="`echo ./run.sh $P $PP $A $AP $T -c $SNAPSHOT -st 8 -q`"
 
     echo "CMD: $CMD"
 
@@ -55,6 +58,54 @@ do
     if [ "$?" != "0" ]
     then
         FAIL="$FAIL $DOMAIN"
+        continue
+    fi
+
+    CMD="`echo ./run.sh $P $PP $A $AP $T -ls -q`"
+
+    echo "CMD: $CMD"
+
+    $CMD
+
+    if [ "$?" != "0" ]
+    then
+        FAIL="$FAIL $DOMAIN(streaming)"
+        continue
+    fi
+
+    CMD="`echo ./run.sh $P $PP $A $AP $T $T -m AhoCorasick -rc 256 -rl -lw 4 -cp -q`"
+
+    echo "CMD: $CMD"
+
+    $CMD
+
+    if [ "$?" != "0" ]
+    then
+        FAIL="$FAIL $DOMAIN(AhoCorasick)"
+        continue
+    fi
+
+    CMD="`echo ./run.sh $P $PP $A $AP $T -m RollingHash -tw 4 -la -q`"
+
+    echo "CMD: $CMD"
+
+    $CMD
+
+    if [ "$?" != "0" ]
+    then
+        FAIL="$FAIL $DOMAIN(RollingHash)"
+        continue
+    fi
+
+    CMD="`echo ./run.sh -s $SNAPSHOT $T -st 8 -q`"
+
+    echo "CMD: $CMD"
+
+    $CMD
+
+    if [ "$?" != "0" ]
+    then
+        FAIL="$FAIL $DOMAIN(snapshot)"
     else
         PASS="$PASS $DOMAIN"
     fi